@@ -0,0 +1,88 @@
+package org.gudu0.countingbot;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Diffs two JMH JSON result files (the jmh task writes build/jmh/results-[version].json).
+ * <p>
+ * Benchmarks are matched by name + params. A result counts as a regression when it is more than
+ * {@code thresholdPercent} worse than the baseline: lower for throughput, higher for every time mode.
+ * Exits 1 if anything regressed, so CI (or a pre-deploy check) can fail on it.
+ * <p>
+ * Run: ./gradlew jmhCompare -Pbaseline=results-7.0.json [-Pcurrent=...] [-Pthreshold=10]
+ */
+public final class JmhCompare {
+
+    private record Score(String mode, double score, String unit) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: JmhCompare <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, Score> base = read(new File(args[0]));
+        Map<String, Score> cur = read(new File(args[1]));
+
+        List<String> regressions = new ArrayList<>();
+        System.out.printf(Locale.ROOT, "%-80s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Score> e : cur.entrySet()) {
+            Score c = e.getValue();
+            Score b = base.get(e.getKey());
+            if (b == null) {
+                System.out.printf(Locale.ROOT, "%-80s %14s %14s %9s%n", e.getKey(), "-", fmt(c), "new");
+                continue;
+            }
+            double change = b.score == 0 ? 0 : (c.score - b.score) / b.score * 100.0;
+            double worse = "thrpt".equals(c.mode) ? -change : change;
+            String flag = worse > threshold ? "  REGRESSION" : (worse < -threshold ? "  improved" : "");
+            if (worse > threshold) regressions.add(e.getKey());
+            System.out.printf(Locale.ROOT, "%-80s %14s %14s %+8.1f%%%s%n", e.getKey(), fmt(b), fmt(c), change, flag);
+        }
+        for (String k : base.keySet()) {
+            if (!cur.containsKey(k)) System.out.printf(Locale.ROOT, "%-80s %14s %14s %9s%n", k, fmt(base.get(k)), "-", "gone");
+        }
+
+        if (!regressions.isEmpty()) {
+            System.out.println();
+            System.out.println(regressions.size() + " benchmark(s) regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(File f) throws IOException {
+        Map<String, Score> out = new LinkedHashMap<>();
+        for (JsonNode r : new ObjectMapper().readTree(f)) {
+            StringBuilder key = new StringBuilder(shortName(r.path("benchmark").asText()));
+            JsonNode params = r.path("params");
+            if (params.isObject()) {
+                Map<String, String> sorted = new TreeMap<>();
+                params.fields().forEachRemaining(p -> sorted.put(p.getKey(), p.getValue().asText()));
+                sorted.forEach((k, v) -> key.append(' ').append(k).append('=').append(v));
+            }
+            JsonNode m = r.path("primaryMetric");
+            out.put(key.toString(), new Score(r.path("mode").asText(), m.path("score").asDouble(), m.path("scoreUnit").asText()));
+        }
+        return out;
+    }
+
+    private static String shortName(String fqcn) {
+        String prefix = "org.gudu0.countingbot.";
+        return fqcn.startsWith(prefix) ? fqcn.substring(prefix.length()) : fqcn;
+    }
+
+    private static String fmt(Score s) {
+        return String.format(Locale.ROOT, "%.3f %s", s.score, s.unit);
+    }
+}
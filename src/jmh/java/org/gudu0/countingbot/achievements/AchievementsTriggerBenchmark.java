@@ -0,0 +1,96 @@
+package org.gudu0.countingbot.achievements;
+
+import org.gudu0.countingbot.counting.StateStore;
+import org.gudu0.countingbot.stats.StatsData;
+import org.gudu0.countingbot.stats.StatsStore;
+import org.gudu0.countingbot.util.SnapshotFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link AchievementsService#onTrigger} against the full {@link AchievementsCatalog}, as the counting
+ * path calls it after every judged message.
+ * <p>
+ * - veteran:  users already hold every achievement (the pre-check answers alone)
+ * - midgame:  users hold none and sit below every threshold, so every condition is evaluated and
+ *             (almost) none unlock; the easy ones unlock during warmup, like on a live bot
+ * <p>
+ * Uses the single-guild constructor, so no GuildManager (or data/ directory) is involved.
+ * Run: ./gradlew jmh -PjmhArgs="AchievementsTrigger -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AchievementsTriggerBenchmark {
+
+    private static final long SNOWFLAKE_BASE = 733113260496126053L;
+    private static final long GUILD_ID = 1L;
+
+    @Param({"veteran", "midgame"})
+    public String users;
+
+    @Param({"VALID_COUNT", "INVALID_COUNT"})
+    public AchievementTrigger trigger;
+
+    @Param({"10000"})
+    public int population;
+
+    private Path dir;
+    private AchievementsService service;
+    private long[] ids;
+    private SplittableRandom rnd;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("achievements-bench");
+        AchievementsStore store = new AchievementsStore(dir.resolve("achievements.json"), SnapshotFormat.BINARY);
+        StatsStore stats = new StatsStore(dir.resolve("stats.json"), SnapshotFormat.BINARY);
+        StateStore state = new StateStore(dir.resolve("state.json"));
+        service = new AchievementsService(store, state, stats, null);
+
+        synchronized (state.lock) {
+            state.recordCount(57, 1, 1, System.currentTimeMillis());
+        }
+
+        SplittableRandom init = new SplittableRandom(13);
+        ids = new long[population];
+        StatsData data = stats.data();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < population; i++) {
+            ids[i] = SNOWFLAKE_BASE + init.nextLong(1L << 40);
+            long correct = 2 + init.nextLong(5);
+            data.update(ids[i], u -> {
+                u.correct = correct;
+                u.posCounts = correct;
+                u.incorrect = 1;
+            });
+            UserAchievements ua = store.state().getOrCreate(ids[i]);
+            if ("veteran".equals(users)) {
+                for (AchievementDef d : service.defs()) ua.unlock(d.id, now);
+            }
+        }
+        rnd = new SplittableRandom(17);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void onTrigger() {
+        service.onTrigger(trigger, GUILD_ID, ids[rnd.nextInt(ids.length)]);
+    }
+}
@@ -0,0 +1,109 @@
+package org.gudu0.countingbot.counting;
+
+import org.gudu0.countingbot.achievements.AchievementsState;
+import org.gudu0.countingbot.achievements.UserAchievements;
+import org.gudu0.countingbot.stats.UserStats;
+import org.gudu0.countingbot.util.LongLongMap;
+import org.gudu0.countingbot.util.LongObjectMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-user map work of one accepted count: cooldown lookup, cooldown write,
+ * stats entry update and achievements entry lookup.
+ * <p>
+ * - boxed:     HashMap<Long, ...> everywhere (the old layout)
+ * - primitive: LongLongMap / LongObjectMap (cooldown table, StatsData shards, AchievementsState)
+ * <p>
+ * User ids are snowflake-sized, so every boxed lookup allocates a Long.
+ * Run with the GC profiler to see allocation per op:
+ * ./gradlew jmh -PjmhArgs="AcceptPathMaps -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AcceptPathMapsBenchmark {
+
+    private static final long SNOWFLAKE_BASE = 733113260496126053L;
+
+    @Param({"1000", "100000"})
+    public int users;
+
+    private long[] ids;
+    private SplittableRandom rnd;
+    private long now;
+
+    // boxed
+    private Map<Long, Long> boxedCooldown;
+    private Map<Long, UserStats> boxedStats;
+    private Map<Long, UserAchievements> boxedAchievements;
+
+    // primitive
+    private LongLongMap cooldown;
+    private LongObjectMap<UserStats> stats;
+    private AchievementsState achievements;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rnd = new SplittableRandom(42);
+        ids = new long[users];
+        for (int i = 0; i < users; i++) ids[i] = SNOWFLAKE_BASE + rnd.nextLong(1L << 40);
+
+        boxedCooldown = new HashMap<>();
+        boxedStats = new HashMap<>();
+        boxedAchievements = new HashMap<>();
+        cooldown = new LongLongMap();
+        stats = new LongObjectMap<>();
+        achievements = new AchievementsState();
+
+        for (long id : ids) {
+            boxedCooldown.put(id, 0L);
+            boxedStats.put(id, new UserStats());
+            boxedAchievements.put(id, new UserAchievements());
+            cooldown.put(id, 0L);
+            stats.put(id, new UserStats());
+            achievements.getOrCreate(id);
+        }
+    }
+
+    @Benchmark
+    public long boxed() {
+        long userId = ids[rnd.nextInt(users)];
+        long t = ++now;
+
+        Long last = boxedCooldown.get(userId);
+        long gap = last != null ? t - last : Long.MAX_VALUE;
+        boxedCooldown.put(userId, t);
+
+        UserStats us = boxedStats.computeIfAbsent(userId, k -> new UserStats());
+        us.onCorrect(t);
+        us.posCounts++;
+
+        UserAchievements ua = boxedAchievements.computeIfAbsent(userId, k -> new UserAchievements());
+        return gap + ua.unlockedAtMillis.size();
+    }
+
+    @Benchmark
+    public long primitive() {
+        long userId = ids[rnd.nextInt(users)];
+        long t = ++now;
+
+        long last = cooldown.get(userId, -1);
+        long gap = last >= 0 ? t - last : Long.MAX_VALUE;
+        cooldown.put(userId, t);
+
+        UserStats us = stats.computeIfAbsent(userId, id -> new UserStats());
+        us.onCorrect(t);
+        us.posCounts++;
+
+        UserAchievements ua = achievements.getOrCreate(userId);
+        return gap + ua.unlockedAtMillis.size();
+    }
+}
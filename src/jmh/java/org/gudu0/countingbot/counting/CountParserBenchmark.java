@@ -0,0 +1,106 @@
+package org.gudu0.countingbot.counting;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strict count parsing on the inputs a counting channel actually sees.
+ * <p>
+ * - legacy: the old parseStrictCount (validate commas, then replace(",", "") + Long.parseLong)
+ * - single: {@link CountParser} (one pass, no allocation)
+ * <p>
+ * Each op parses one input from a pre-built pool of 1024, so branch history can't memorize a single string.
+ * Run: ./gradlew jmh -PjmhArgs="CountParser -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountParserBenchmark {
+
+    @Param({"short", "grouped", "garbage", "spam"})
+    public String input;
+
+    private static final int POOL = 1024;
+
+    private String[] pool;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(7);
+        pool = new String[POOL];
+        for (int i = 0; i < POOL; i++) {
+            pool[i] = switch (input) {
+                // Typical live counts
+                case "short" -> Long.toString(1 + rnd.nextLong(100_000));
+                // People who like thousands separators
+                case "grouped" -> String.format("%,d", 1_000 + rnd.nextLong(100_000_000));
+                // Chat in the counting channel
+                case "garbage" -> switch (rnd.nextInt(4)) {
+                    case 0 -> "lol";
+                    case 1 -> "1234 ";
+                    case 2 -> "who broke it again";
+                    default -> "12,34";
+                };
+                // Pasted walls of digits / text
+                default -> rnd.nextBoolean() ? "9".repeat(1500 + rnd.nextInt(500)) : "spam ".repeat(300 + rnd.nextInt(100));
+            };
+        }
+    }
+
+    private String nextInput() {
+        String s = pool[next];
+        next = (next + 1) & (POOL - 1);
+        return s;
+    }
+
+    @Benchmark
+    public long legacy() {
+        return legacyParse(nextInput());
+    }
+
+    @Benchmark
+    public long single() {
+        return CountParser.parse(nextInput());
+    }
+
+    /** The pre-CountParser implementation, verbatim apart from returning -1 instead of null. */
+    static long legacyParse(String s) {
+        if (s == null || s.isEmpty()) return -1;
+
+        int charsSinceComma = 0;
+        boolean sawComma = false;
+        for (int i = s.length() - 1; i >= 0; i--) {
+            char currentCharacter = s.charAt(i);
+            if (currentCharacter >= '0' && currentCharacter <= '9') {
+                charsSinceComma++;
+            } else if (currentCharacter == ',') {
+                sawComma = true;
+                if (charsSinceComma == 3) {
+                    charsSinceComma = 0;
+                } else {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (charsSinceComma < 1 || (sawComma && charsSinceComma > 3)) {
+            return -1;
+        }
+        if (s.charAt(0) == '0' && s.length() > 1) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(s.replace(",", ""));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.gudu0.countingbot.guild;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GuildManager#get} for a cached guild (hit) and for one that has to be loaded (miss).
+ * <p>
+ * - hit:  random guild out of {@code guilds} already loaded
+ * - miss: a fresh GuildManager per iteration loads MISS_BATCH guilds whose files already exist on disk
+ *         (config/state/goals/stats reads + store setup, handed through the guild I/O pool); the score
+ *         is per guild. The OS page cache is warm, like a guild coming back after a restart.
+ * <p>
+ * GuildContext uses the relative data/ directory: the jmh task runs in build/jmh, so that is
+ * build/jmh/data/guilds.
+ * Run: ./gradlew jmh -PjmhArgs="GuildManager"
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class GuildManagerBenchmark {
+
+    private static final int MISS_BATCH = 200;
+    private static final long MISS_BASE_ID = 900_000_000L;
+
+    @Param({"1000"})
+    public int guilds;
+
+    private GuildManager warm;
+    private GuildManager cold;
+    private SplittableRandom rnd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        warm = new GuildManager();
+        for (long g = 1; g <= guilds; g++) warm.get(g);
+        rnd = new SplittableRandom(3);
+
+        // Create the miss guilds' files once, so each miss is a load, not a first-time setup.
+        GuildManager init = new GuildManager();
+        for (long g = 0; g < MISS_BATCH; g++) init.get(MISS_BASE_ID + g);
+    }
+
+    @Setup(Level.Iteration)
+    public void freshCache() {
+        cold = new GuildManager();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public GuildContext hit() {
+        return warm.get(1 + rnd.nextInt(guilds));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    @OperationsPerInvocation(MISS_BATCH)
+    public void miss(Blackhole bh) {
+        for (long g = 0; g < MISS_BATCH; g++) bh.consume(cold.get(MISS_BASE_ID + g));
+    }
+}
@@ -0,0 +1,127 @@
+package org.gudu0.countingbot.stats;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What /leaderboard computes: top 10 fame, top 10 shame and the caller's rank in both.
+ * <p>
+ * - index:    {@link LeaderboardIndex} (what LeaderboardListener reads now)
+ * - copySort: copy every user out of StatsData and sort (the pre-index listener)
+ * <p>
+ * A background thread keeps counting (one stats update per ~10µs) so the index reads see real churn.
+ * Run: ./gradlew jmh -PjmhArgs="LeaderboardTop -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LeaderboardTopBenchmark {
+
+    private static final int TOP_N = 10;
+    private static final long SNOWFLAKE_BASE = 733113260496126053L;
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    private StatsData data;
+    private long[] ids;
+    private SplittableRandom rnd;
+    private Thread counter;
+    private volatile boolean running;
+
+    public record Result(List<LeaderboardIndex.Entry> fame, List<LeaderboardIndex.Entry> shame, long fameRank, long shameRank) {}
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = new StatsData();
+        ids = new long[users];
+        SplittableRandom init = new SplittableRandom(5);
+        for (int i = 0; i < users; i++) {
+            ids[i] = SNOWFLAKE_BASE + init.nextLong(1L << 40);
+            long correct = init.nextLong(10_000);
+            long incorrect = init.nextLong(300);
+            data.update(ids[i], u -> {
+                u.correct = correct;
+                u.incorrect = incorrect;
+            });
+        }
+        rnd = new SplittableRandom(9);
+
+        running = true;
+        counter = new Thread(() -> {
+            SplittableRandom r = new SplittableRandom(3);
+            while (running) {
+                data.update(ids[r.nextInt(ids.length)], u -> u.onCorrect(System.currentTimeMillis()));
+                java.util.concurrent.locks.LockSupport.parkNanos(10_000);
+            }
+        }, "bench-counter");
+        counter.setDaemon(true);
+        counter.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        counter.join();
+    }
+
+    @Benchmark
+    public Result index() {
+        long caller = ids[rnd.nextInt(ids.length)];
+        LeaderboardIndex idx = data.leaderboard();
+        return new Result(
+                idx.top(LeaderboardIndex.Metric.CORRECT, TOP_N),
+                idx.top(LeaderboardIndex.Metric.INCORRECT, TOP_N),
+                idx.rank(LeaderboardIndex.Metric.CORRECT, caller),
+                idx.rank(LeaderboardIndex.Metric.INCORRECT, caller));
+    }
+
+    @Benchmark
+    public Result copySort() {
+        long caller = ids[rnd.nextInt(ids.length)];
+        List<Map.Entry<Long, UserStats>> all = new ArrayList<>(data.getUsers().entrySet());
+
+        all.sort((a, b) -> Long.compare(b.getValue().correct, a.getValue().correct));
+        List<LeaderboardIndex.Entry> fame = top(all, true);
+        long fameRank = rank(all, caller, true);
+
+        all.sort((a, b) -> Long.compare(b.getValue().incorrect, a.getValue().incorrect));
+        List<LeaderboardIndex.Entry> shame = top(all, false);
+        long shameRank = rank(all, caller, false);
+
+        return new Result(fame, shame, fameRank, shameRank);
+    }
+
+    private static List<LeaderboardIndex.Entry> top(List<Map.Entry<Long, UserStats>> sorted, boolean correct) {
+        List<LeaderboardIndex.Entry> out = new ArrayList<>(TOP_N);
+        for (int i = 0; i < Math.min(TOP_N, sorted.size()); i++) {
+            Map.Entry<Long, UserStats> e = sorted.get(i);
+            out.add(new LeaderboardIndex.Entry(e.getKey(), correct ? e.getValue().correct : e.getValue().incorrect));
+        }
+        return out;
+    }
+
+    // Competition rank, like LeaderboardIndex#rank.
+    private static long rank(List<Map.Entry<Long, UserStats>> sorted, long userId, boolean correct) {
+        long prev = Long.MIN_VALUE;
+        long rank = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            UserStats u = sorted.get(i).getValue();
+            long score = correct ? u.correct : u.incorrect;
+            if (score != prev) {
+                rank = i + 1;
+                prev = score;
+            }
+            if (sorted.get(i).getKey() == userId) return rank;
+        }
+        return 0;
+    }
+}
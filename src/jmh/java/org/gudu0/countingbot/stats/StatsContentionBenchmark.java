@@ -0,0 +1,99 @@
+package org.gudu0.countingbot.stats;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-guild count throughput against global stats, with a background flusher running.
+ * <p>
+ * - global:  the old layout (one HashMap, one monitor held by counts AND by the Jackson flush)
+ * - striped: {@link StatsData} (per-shard monitors, flush serializes a detached copy)
+ * <p>
+ * Each benchmark thread plays one busy guild with its own user population.
+ * Run: ./gradlew jmh -PjmhArgs="StatsContention"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StatsContentionBenchmark {
+
+    @Param({"global", "striped"})
+    public String impl;
+
+    @Param({"20000"})
+    public int users;
+
+    private final Object globalLock = new Object();
+    private Map<Long, UserStats> globalUsers;
+    private StatsData striped;
+
+    private ScheduledExecutorService flusher;
+    private final ObjectMapper om = new ObjectMapper();
+
+    @State(Scope.Thread)
+    public static class Guild {
+        final SplittableRandom rnd = new SplittableRandom(Thread.currentThread().threadId());
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        globalUsers = new HashMap<>();
+        striped = new StatsData();
+        for (long id = 1; id <= users; id++) {
+            globalUsers.put(id, new UserStats());
+            striped.update(id, u -> { });
+        }
+
+        // Same cadence for both: a full stats.json write every 50ms.
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleAtFixedRate(this::flush, 50, 50, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flusher.shutdownNow();
+    }
+
+    private void flush() {
+        try {
+            if ("global".equals(impl)) {
+                synchronized (globalLock) {
+                    om.writeValue(OutputStream.nullOutputStream(), Map.of("users", globalUsers));
+                }
+            } else {
+                om.writeValue(OutputStream.nullOutputStream(), striped);
+            }
+        } catch (Exception ignored) {}
+    }
+
+    @Benchmark
+    public void count(Guild g) {
+        long userId = 1 + g.rnd.nextInt(users);
+        long now = System.nanoTime();
+
+        if ("global".equals(impl)) {
+            synchronized (globalLock) {
+                UserStats us = globalUsers.computeIfAbsent(userId, k -> new UserStats());
+                us.onCorrect(now);
+                us.posCounts++;
+            }
+        } else {
+            striped.update(userId, us -> {
+                us.onCorrect(now);
+                us.posCounts++;
+            });
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.gudu0.countingbot.stats;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The count path's global-stats update ({@link StatsData#update}, leaderboard index included) from many
+ * guilds at once, while /leaderboard reads the index in the background (one top+rank every ~1ms).
+ * <p>
+ * Mostly correct counts with an occasional invalid one, like a live channel. Compare runs with
+ * ./gradlew jmhCompare to check that index maintenance stays off the contended part of the count path.
+ * Run: ./gradlew jmh -PjmhArgs="StatsCountPath"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class StatsCountPathBenchmark {
+
+    private static final long SNOWFLAKE_BASE = 733113260496126053L;
+
+    @Param({"20000", "200000"})
+    public int users;
+
+    private StatsData data;
+    private long[] ids;
+    private Thread reader;
+    private volatile boolean running;
+
+    @State(Scope.Thread)
+    public static class Guild {
+        final SplittableRandom rnd = new SplittableRandom(Thread.currentThread().threadId());
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = new StatsData();
+        ids = new long[users];
+        SplittableRandom init = new SplittableRandom(5);
+        for (int i = 0; i < users; i++) {
+            ids[i] = SNOWFLAKE_BASE + init.nextLong(1L << 40);
+            long correct = init.nextLong(10_000);
+            data.update(ids[i], u -> u.correct = correct);
+        }
+
+        running = true;
+        reader = new Thread(() -> {
+            SplittableRandom r = new SplittableRandom(3);
+            while (running) {
+                LeaderboardIndex idx = data.leaderboard();
+                idx.top(LeaderboardIndex.Metric.CORRECT, 10);
+                idx.rank(LeaderboardIndex.Metric.CORRECT, ids[r.nextInt(ids.length)]);
+                LockSupport.parkNanos(1_000_000);
+            }
+        }, "bench-leaderboard");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        reader.join();
+    }
+
+    @Benchmark
+    public void count(Guild g) {
+        long userId = ids[g.rnd.nextInt(ids.length)];
+        long now = System.currentTimeMillis();
+        if (g.rnd.nextInt(20) == 0) {
+            data.update(userId, u -> u.onIncorrect(now));
+        } else {
+            data.update(userId, u -> {
+                u.onCorrect(now);
+                u.posCounts++;
+            });
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.gudu0.countingbot.stats;
+
+import org.gudu0.countingbot.util.JsonCodec;
+import org.gudu0.countingbot.util.JsonStore;
+import org.gudu0.countingbot.util.SnapshotCodec;
+import org.gudu0.countingbot.util.SnapshotFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One stats flush interval at growing user counts, in both snapshot formats: {@code active} users
+ * counted, then a flush.
+ * <p>
+ * - incremental: StatsStore.flushNow (delta log append, plus the amortized compactions it triggers)
+ * - full:        JsonStore.flushNow over the same data (encode everything + write tmp + atomic move),
+ *                which is what every stats flush did before the delta log
+ * <p>
+ * Files go to a temp dir, so the numbers include the page cache; the delta append also forces.
+ * Run: ./gradlew jmh -PjmhArgs="StatsFlush -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class StatsFlushBenchmark {
+
+    private static final long SNOWFLAKE_BASE = 733113260496126053L;
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    @Param({"100"})
+    public int active;
+
+    private Path dir;
+    private StatsStore store;
+    private JsonStore<StatsData> full;
+    private long[] ids;
+    private SplittableRandom rnd;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("stats-flush-bench");
+        store = new StatsStore(dir.resolve("stats.json"), SnapshotFormat.parse(format));
+
+        SplittableRandom init = new SplittableRandom(11);
+        StatsData data = store.data();
+        ids = new long[users];
+        for (int i = 0; i < users; i++) {
+            long correct = init.nextLong(5_000);
+            long incorrect = init.nextLong(200);
+            ids[i] = SNOWFLAKE_BASE + init.nextLong(1L << 40);
+            data.update(ids[i], u -> {
+                u.correct = correct;
+                u.incorrect = incorrect;
+                u.posCounts = correct;
+                u.currentStreak = correct % 50;
+                u.bestStreak = 50 + correct % 100;
+                u.lastCorrectAtMs = 1_700_000_000_000L + correct;
+                u.lastIncorrectAtMs = 1_700_000_000_000L + incorrect;
+            });
+        }
+        store.flushNow(); // log the initial load so each op only sees its own active users
+
+        SnapshotCodec<StatsData> codec = "binary".equals(format) ? new StatsBinaryCodec() : new JsonCodec<>(StatsData.class);
+        full = new JsonStore<>(dir.resolve("full." + format), codec, () -> data, "bench-full", null, null, null);
+        rnd = new SplittableRandom(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private void countActive() {
+        long now = System.currentTimeMillis();
+        StatsData data = store.data();
+        for (int i = 0; i < active; i++) data.update(ids[rnd.nextInt(ids.length)], u -> u.onCorrect(now));
+        store.markDirty();
+    }
+
+    @Benchmark
+    public void incremental() throws IOException {
+        countActive();
+        store.flushNow();
+    }
+
+    @Benchmark
+    public void full() throws IOException {
+        countActive();
+        full.markDirty();
+        full.flushNow();
+    }
+}
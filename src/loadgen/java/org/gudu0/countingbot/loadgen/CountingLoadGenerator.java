@@ -0,0 +1,399 @@
+package org.gudu0.countingbot.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.gudu0.countingbot.achievements.AchievementsService;
+import org.gudu0.countingbot.achievements.AchievementsStore;
+import org.gudu0.countingbot.counting.CountMessage;
+import org.gudu0.countingbot.counting.CountingEngine;
+import org.gudu0.countingbot.counting.DecisionStats;
+import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.guild.GuildManager;
+import org.gudu0.countingbot.logging.LogService;
+import org.gudu0.countingbot.stats.StatsStore;
+import org.gudu0.countingbot.util.BotPaths;
+import org.gudu0.countingbot.util.LatencyHistogram;
+import org.gudu0.countingbot.util.SnapshotFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Drives {@link CountingEngine} with synthetic or recorded counting traffic, no Discord connection.
+ * <p>
+ * The real pipeline minus JDA: messages go through GuildManager mailboxes into the engine, with real
+ * guild contexts, stores (flushing to the working directory), achievements and goal services. The
+ * transport is fake: deletes complete immediately, guild log lines are only counted.
+ * <p>
+ * Messages are sent open-loop at {@code --rate} per second; each one's latency runs from when it was
+ * due, so a backlog shows up as latency instead of a lower send rate. {@code --rate 0} sends as fast
+ * as the engine keeps up (at most {@code --in-flight} queued).
+ * <p>
+ * Reports throughput, decision latency (overall and per stage), allocation per message (all threads
+ * minus the generator's own) and GC. Run: ./gradlew loadgen -PloadgenArgs="--guilds 50 --rate 5000"
+ * <p>
+ * Options (defaults in brackets):
+ * <pre>
+ *   --guilds N        guilds [50]            --users N         user pool shared by all guilds [5000]
+ *   --rate N          messages/s, 0 = max [5000]
+ *   --seconds N       run time [30]          --messages N      stop after N messages instead
+ *   --valid P         share of valid counts [0.80]
+ *   --wrong P         wrong numbers [0.08]   --same-user P     same user twice [0.04]
+ *                     (the rest is chatter/spam)
+ *   --enforce-delete  true|false [true]      --seed N [1]      --in-flight N [20000]
+ *   --replay FILE     send a recorded stream instead: one "guildId TAB authorId TAB content" per line
+ *   --record FILE     write the synthetic stream in that format
+ *   --json FILE       also write the results as JSON (for CI baselines)
+ * </pre>
+ * Relative paths resolve against the project directory.
+ */
+public final class CountingLoadGenerator {
+
+    private static final long DISCORD_EPOCH = 1420070400000L;
+    private static final String[] CHATTER = {
+            "lol", "nice", "gg", "wait what", "who broke it", "1 2 3", " 12", "12 ", "0012", "-5", "1.5",
+            "one hundred", "https://example.com", "!count", ":)", "12a", "1,00", "99999999999999999999"
+    };
+
+    private record Msg(long messageId, String channelId, long authorId, String content) implements CountMessage {
+        @Override
+        public String authorName() {
+            return "user" + authorId;
+        }
+    }
+
+    private record Planned(long guildId, long authorId, String content) {}
+
+    /** Per-guild view the generator keeps to produce valid counts. */
+    private static final class Shadow {
+        long next = 1;
+        long lastAuthor = 0;
+    }
+
+    private final Map<String, String> opts;
+    private final Path baseDir;
+
+    private CountingLoadGenerator(Map<String, String> opts) {
+        this.opts = opts;
+        this.baseDir = Path.of(System.getProperty("loadgen.baseDir", "."));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            String key = args[i].substring(2);
+            String value = (i + 1 < args.length && !args[i + 1].startsWith("--")) ? args[++i] : "true";
+            opts.put(key, value);
+        }
+        int rc = new CountingLoadGenerator(opts).run();
+        System.exit(rc); // store flushers and services keep non-daemon threads
+    }
+
+    // ----------------------------
+    // Run
+    // ----------------------------
+
+    private int run() throws Exception {
+        int guildCount = intOpt("guilds", 50);
+        int users = intOpt("users", 5000);
+        double rate = doubleOpt("rate", 5000);
+        long seconds = longOpt("seconds", 30);
+        long maxMessages = longOpt("messages", Long.MAX_VALUE);
+        double pValid = doubleOpt("valid", 0.80);
+        double pWrong = doubleOpt("wrong", 0.08);
+        double pSame = doubleOpt("same-user", 0.04);
+        boolean enforceDelete = Boolean.parseBoolean(opts.getOrDefault("enforce-delete", "true"));
+        long seed = longOpt("seed", 1);
+        int maxInFlight = intOpt("in-flight", 20_000);
+
+        List<Planned> replay = opts.containsKey("replay") ? readReplay(resolve(opts.get("replay"))) : null;
+        if (replay != null) maxMessages = Math.min(maxMessages, replay.size());
+
+        // Same wiring as Main, minus JDA.
+        BotPaths.ensureBaseDirs();
+        StatsStore stats = new StatsStore(BotPaths.GLOBAL_DIR.resolve("stats.json"), SnapshotFormat.BINARY);
+        stats.startAutoFlush(10);
+        AchievementsStore achievementsStore = new AchievementsStore(BotPaths.GLOBAL_DIR.resolve("achievements.json"), SnapshotFormat.BINARY);
+        achievementsStore.startAutoFlush(10);
+        GuildManager guilds = new GuildManager();
+        LongAdder logLines = new LongAdder();
+        LogService logs = new LogService(guilds) {
+            @Override
+            public void log(long guildId, Kind kind, String message) {
+                logLines.increment(); // no log threads here; keeps the console readable
+            }
+        };
+        GuildGoalsServiceRegistry goalsRegistry = new GuildGoalsServiceRegistry(guilds);
+        AchievementsService achievements = new AchievementsService(achievementsStore, guilds, stats, logs);
+
+        LongAdder deletes = new LongAdder();
+        CountingEngine<Msg> engine = new CountingEngine<>(stats, goalsRegistry, achievements, new CountingEngine.Transport<>() {
+            @Override
+            public void delete(GuildContext ctx, long guildId, Msg msg, LongConsumer onDeleted) {
+                deletes.increment();
+                onDeleted.accept(System.nanoTime());
+            }
+
+            @Override
+            public void log(long guildId, LogService.Kind kind, String line) {
+                logs.log(guildId, kind, line);
+            }
+        }, 0, 0);
+
+        // Guilds: ids 1..N (plus any the replay mentions), counting channel = guildId + 1e6.
+        Map<Long, String> channels = new HashMap<>();
+        List<Long> guildIds = new ArrayList<>();
+        if (replay != null) {
+            for (Planned p : replay) if (!channels.containsKey(p.guildId)) addGuild(p.guildId, guildIds, channels);
+        } else {
+            for (long g = 1; g <= guildCount; g++) addGuild(g, guildIds, channels);
+        }
+        for (long g : guildIds) {
+            GuildContext ctx = guilds.get(g);
+            ctx.cfg.countingChannelId = channels.get(g);
+            ctx.cfg.enforceDelete = enforceDelete;
+            ctx.cfg.countingDelaySeconds = 0; // the shadow can't predict cooldowns
+            ctx.stateStore.setCooldownSeconds(0);
+        }
+
+        BufferedWriter record = opts.containsKey("record")
+                ? Files.newBufferedWriter(resolve(opts.get("record")), StandardCharsets.UTF_8) : null;
+
+        System.out.println("loadgen: " + guildIds.size() + " guild(s), " + (replay != null ? replay.size() + " recorded message(s)" : users + " users")
+                + ", rate=" + (rate > 0 ? (long) rate + "/s" : "max") + ", " + (maxMessages < Long.MAX_VALUE ? maxMessages + " message(s)" : seconds + "s"));
+
+        // ---- send ----
+        AtomicLongArray outcomes = new AtomicLongArray(CountingEngine.Outcome.values().length);
+        AtomicLong processed = new AtomicLong();
+        SplittableRandom rnd = new SplittableRandom(seed);
+        Map<Long, Shadow> shadows = new HashMap<>();
+        long nextMessageId = (System.currentTimeMillis() - DISCORD_EPOCH) << 22;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long genThread = Thread.currentThread().threadId();
+        long allocStart = totalAllocated(threads);
+        long genAllocStart = threads.getThreadAllocatedBytes(genThread);
+        long[] gcStart = gcTotals();
+
+        long intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        long sent = 0;
+
+        while (sent < maxMessages) {
+            long due;
+            if (intervalNanos > 0) {
+                due = start + sent * intervalNanos;
+                long now = System.nanoTime();
+                if (due > now) LockSupport.parkNanos(due - now);
+            } else {
+                while (sent - processed.get() >= maxInFlight) Thread.onSpinWait();
+                due = System.nanoTime();
+            }
+            if (replay == null && due >= deadline) break;
+
+            Planned p = replay != null ? replay.get((int) sent)
+                    : plan(rnd, guildIds, shadows, users, pValid, pWrong, pSame);
+            if (record != null) record.write(p.guildId + "\t" + p.authorId + "\t" + p.content + "\n");
+
+            Msg m = new Msg(nextMessageId++, channels.get(p.guildId), p.authorId, p.content);
+            long receivedNanos = due;
+            guilds.withContext(p.guildId, ctx -> {
+                CountingEngine.Outcome o = engine.handle(ctx, m, System.currentTimeMillis(), receivedNanos);
+                outcomes.incrementAndGet(o.ordinal());
+                processed.incrementAndGet();
+            });
+            sent++;
+        }
+        long sendEnd = System.nanoTime();
+        while (processed.get() < sent) LockSupport.parkNanos(100_000);
+        long end = System.nanoTime();
+
+        long genAlloc = threads.getThreadAllocatedBytes(genThread) - genAllocStart;
+        long engineAlloc = totalAllocated(threads) - allocStart - genAlloc;
+        long[] gcEnd = gcTotals();
+        if (record != null) record.close();
+
+        // ---- report ----
+        Map<String, Object> result = new LinkedHashMap<>();
+        double elapsedSec = (end - start) / 1e9;
+        result.put("guilds", guildIds.size());
+        result.put("messages", sent);
+        result.put("targetRate", rate);
+        result.put("sendSeconds", round((sendEnd - start) / 1e9));
+        result.put("elapsedSeconds", round(elapsedSec));
+        result.put("throughputPerSec", round(sent / elapsedSec));
+        Map<String, Long> byOutcome = new LinkedHashMap<>();
+        for (CountingEngine.Outcome o : CountingEngine.Outcome.values()) byOutcome.put(o.tag, outcomes.get(o.ordinal()));
+        result.put("outcomes", byOutcome);
+        result.put("deletes", deletes.sum());
+        result.put("logLines", logLines.sum());
+        result.put("allocBytesPerMessage", sent > 0 ? engineAlloc / sent : 0);
+        result.put("gcCount", gcEnd[0] - gcStart[0]);
+        result.put("gcMillis", gcEnd[1] - gcStart[1]);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        for (DecisionStats.Stage s : DecisionStats.Stage.values()) {
+            LatencyHistogram h = DecisionStats.BOT.get(s);
+            if (h.count() == 0) continue;
+            Map<String, Long> q = new LinkedHashMap<>();
+            q.put("count", h.count());
+            q.put("p50Us", h.percentile(0.50));
+            q.put("p90Us", h.percentile(0.90));
+            q.put("p99Us", h.percentile(0.99));
+            q.put("p999Us", h.percentile(0.999));
+            q.put("maxUs", h.max());
+            latency.put(s.label, q);
+        }
+        result.put("latency", latency);
+
+        printReport(result);
+        if (opts.containsKey("json")) {
+            Path out = resolve(opts.get("json"));
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(out.toFile(), result);
+            System.out.println("Results written to " + out.toAbsolutePath());
+        }
+        return 0;
+    }
+
+    private static void addGuild(long guildId, List<Long> guildIds, Map<Long, String> channels) {
+        guildIds.add(guildId);
+        channels.put(guildId, Long.toString(guildId + 1_000_000L));
+    }
+
+    // ----------------------------
+    // Traffic
+    // ----------------------------
+
+    private static Planned plan(SplittableRandom rnd, List<Long> guildIds, Map<Long, Shadow> shadows, int users,
+                                double pValid, double pWrong, double pSame) {
+        long guildId = guildIds.get(rnd.nextInt(guildIds.size()));
+        Shadow sh = shadows.computeIfAbsent(guildId, g -> new Shadow());
+        double roll = rnd.nextDouble();
+
+        if (roll < pValid) {
+            long author = otherUser(rnd, users, sh.lastAuthor);
+            String content = sh.next >= 1000 && rnd.nextInt(4) == 0 ? withCommas(sh.next) : Long.toString(sh.next);
+            sh.next++;
+            sh.lastAuthor = author;
+            return new Planned(guildId, author, content);
+        }
+        if (roll < pValid + pWrong) {
+            long off = rnd.nextInt(3) == 0 ? -1 : 1 + rnd.nextInt(3); // the last number again, or skipped ahead
+            return new Planned(guildId, otherUser(rnd, users, sh.lastAuthor), Long.toString(Math.max(0, sh.next + off)));
+        }
+        if (roll < pValid + pWrong + pSame && sh.lastAuthor != 0) {
+            return new Planned(guildId, sh.lastAuthor, Long.toString(sh.next));
+        }
+        return new Planned(guildId, 1 + rnd.nextInt(users), CHATTER[rnd.nextInt(CHATTER.length)]);
+    }
+
+    private static long otherUser(SplittableRandom rnd, int users, long not) {
+        long u;
+        do {
+            u = 1 + rnd.nextInt(users);
+        } while (u == not && users > 1);
+        return u;
+    }
+
+    private static String withCommas(long n) {
+        return String.format("%,d", n).replace(' ', ',').replace('.', ',');
+    }
+
+    private List<Planned> readReplay(Path file) throws IOException {
+        List<Planned> out = new ArrayList<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNo++;
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\t", 3);
+            if (parts.length < 3) throw new IllegalArgumentException(file + ":" + lineNo + ": expected guildId, authorId, content (tab-separated)");
+            out.add(new Planned(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+        }
+        return out;
+    }
+
+    // ----------------------------
+    // Measurement
+    // ----------------------------
+
+    private static long totalAllocated(com.sun.management.ThreadMXBean threads) {
+        long sum = 0;
+        for (long b : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (b > 0) sum += b;
+        }
+        return sum;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> r) {
+        System.out.println();
+        System.out.printf("messages     %d in %.2fs (sending took %.2fs)%n", (long) r.get("messages"),
+                (double) r.get("elapsedSeconds"), (double) r.get("sendSeconds"));
+        System.out.printf("throughput   %.0f msg/s%n", (double) r.get("throughputPerSec"));
+        System.out.println("outcomes     " + r.get("outcomes") + ", deletes=" + r.get("deletes") + ", logLines=" + r.get("logLines"));
+        System.out.println("allocation   " + r.get("allocBytesPerMessage") + " B/msg (all threads but the generator)");
+        System.out.println("gc           " + r.get("gcCount") + " collection(s), " + r.get("gcMillis") + "ms");
+        System.out.println();
+        System.out.printf("%-13s %9s %9s %9s %9s %9s %9s%n", "latency (µs)", "n", "p50", "p90", "p99", "p99.9", "max");
+        Map<String, Object> latency = (Map<String, Object>) r.get("latency");
+        for (Map.Entry<String, Object> e : latency.entrySet()) {
+            Map<String, Long> q = (Map<String, Long>) e.getValue();
+            System.out.printf("%-13s %9d %9d %9d %9d %9d %9d%n", e.getKey(), q.get("count"), q.get("p50Us"),
+                    q.get("p90Us"), q.get("p99Us"), q.get("p999Us"), q.get("maxUs"));
+        }
+    }
+
+    // ----------------------------
+    // Options
+    // ----------------------------
+
+    private Path resolve(String p) {
+        Path path = Path.of(p);
+        return path.isAbsolute() ? path : baseDir.resolve(path);
+    }
+
+    private int intOpt(String key, int def) {
+        return opts.containsKey(key) ? Integer.parseInt(opts.get(key)) : def;
+    }
+
+    private long longOpt(String key, long def) {
+        return opts.containsKey(key) ? Long.parseLong(opts.get(key)) : def;
+    }
+
+    private double doubleOpt(String key, double def) {
+        return opts.containsKey(key) ? Double.parseDouble(opts.get(key)) : def;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+}
@@ -5,6 +5,7 @@ import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import org.gudu0.countingbot.achievements.AchievementsService;
@@ -12,7 +13,9 @@ import org.gudu0.countingbot.achievements.AchievementsStore;
 import org.gudu0.countingbot.commands.*;
 import org.gudu0.countingbot.config.GlobalConfig;
 import org.gudu0.countingbot.config.TypedConfigStore;
+import org.gudu0.countingbot.counting.BootResync;
 import org.gudu0.countingbot.counting.CountingListener;
+import org.gudu0.countingbot.counting.DeletionBatcher;
 import org.gudu0.countingbot.disconnects.DisconnectDailyReporter;
 import org.gudu0.countingbot.disconnects.DisconnectStore;
 import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
@@ -20,11 +23,14 @@ import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildJoinListener;
 import org.gudu0.countingbot.guild.GuildManager;
 import org.gudu0.countingbot.logging.LogService;
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.metrics.MetricsServer;
 import org.gudu0.countingbot.stats.StatsStore;
 import org.gudu0.countingbot.suggestions.SuggestionsService;
 import org.gudu0.countingbot.suggestions.SuggestionsStore;
 import org.gudu0.countingbot.util.BotPaths;
 import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.SnapshotFormat;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
@@ -42,6 +48,7 @@ public class Main {
 
         // 3) Load global config (data/global/config.json)
         GlobalConfig globalCfg = loadOrCreateGlobalConfig();
+        ConsoleLog.setJsonLines("json".equalsIgnoreCase(globalCfg.logFormat));
         if (ConsoleLog.DEBUG) {
             ConsoleLog.debug("Main", "GlobalConfig: disconnectThreadId=" + safe(globalCfg.disconnectThreadId)
                     + " suggestionsNotifyUserId=" + safe(globalCfg.suggestionsNotifyUserId));
@@ -50,24 +57,30 @@ public class Main {
         if (ConsoleLog.DEBUG) {
             ConsoleLog.debug("Main", "Initializing GLOBAL stores (data/global/*) ...");
         }
-        StatsStore statsStore = new StatsStore(BotPaths.GLOBAL_DIR.resolve("stats.json"));
+        SnapshotFormat snapshotFormat = SnapshotFormat.parse(globalCfg.snapshotFormat);
+        StatsStore statsStore = new StatsStore(BotPaths.GLOBAL_DIR.resolve("stats.json"), snapshotFormat);
         statsStore.startAutoFlush(10);
         SuggestionsStore suggestionsStore = new SuggestionsStore(BotPaths.GLOBAL_DIR.resolve("suggestions.json"));
         suggestionsStore.startAutoFlush(10);
-        AchievementsStore achievementsStore = new AchievementsStore(BotPaths.GLOBAL_DIR.resolve("achievements.json"));
+        AchievementsStore achievementsStore = new AchievementsStore(BotPaths.GLOBAL_DIR.resolve("achievements.json"), snapshotFormat);
         achievementsStore.startAutoFlush(10);
         DisconnectStore disconnectStore = new DisconnectStore(BotPaths.GLOBAL_DIR.resolve("disconnects.json"));
         disconnectStore.startAutoFlush(30);
         // 5) Multi-guild router
-        GuildManager guilds = new GuildManager();
+        GuildManager guilds = new GuildManager(globalCfg.bootLoadConcurrency);
         // 6) Services (guild-aware where needed)
-        LogService logs = new LogService(guilds);
+        LogService logs = new LogService(guilds, globalCfg.logBatchWindowMillis, globalCfg.logQueueCapacity);
         GuildGoalsServiceRegistry goalsRegistry = new GuildGoalsServiceRegistry(guilds);
         SuggestionsService suggestionsService = new SuggestionsService(globalCfg, suggestionsStore);
         AchievementsService achievementsService = new AchievementsService(achievementsStore, guilds, statsStore, logs);
-        CountingListener countingListener = new CountingListener(guilds, statsStore, logs, goalsRegistry, achievementsService);
+        CountingListener countingListener = new CountingListener(guilds, statsStore, logs, goalsRegistry, achievementsService,
+                globalCfg.deleteBatchWindowMillis, globalCfg.slowDecisionMillis, globalCfg.slowDeleteMillis);
         DisconnectDailyReporter disconnectReporter = new DisconnectDailyReporter(globalCfg, disconnectStore);
 
+        // 6b) Metrics endpoint (counters on the hot paths register themselves; gauges are bound here)
+        bindMetrics(guilds, logs, countingListener.deletes(), goalsRegistry);
+        MetricsServer.start(globalCfg.metricsBindAddress, globalCfg.metricsPort);
+
         // 7) Build JDA
         ConsoleLog.info("Main", "Building JDA (MESSAGE_CONTENT enabled)");
         jda = JDABuilder.createDefault(token)
@@ -79,6 +92,7 @@ public class Main {
                         new LeaderboardListener(statsStore, guilds),
                         new CountDelayListener(guilds),
                         new ResyncListener(countingListener),
+                        new LatencyListener(guilds),
                         new GoalCommandListener(guilds, goalsRegistry),
                         new SuggestCommandListener(suggestionsService),
                         new AchievementsCommandListener(achievementsService),
@@ -86,6 +100,7 @@ public class Main {
                         new GuildJoinListener(guilds, (j, guild) -> registerGuildCommandsOne(guild)),
                         // Core listeners
                         countingListener,
+                        new BootResync(guilds, countingListener, goalsRegistry, globalCfg),
                         disconnectReporter
                 )
                 .build();
@@ -122,6 +137,27 @@ public class Main {
     }
 
 
+    private static void bindMetrics(GuildManager guilds, LogService logs, DeletionBatcher deletes,
+                                    GuildGoalsServiceRegistry goalsRegistry) {
+        Metrics.gauge("countingbot_guild_contexts_loaded", "Guild contexts in the GuildManager cache", guilds::cachedCount);
+        Metrics.gauge("countingbot_queue_depth", "Work waiting in an internal queue", "queue", "guild_mailbox", guilds::mailboxDepthTotal);
+        Metrics.gauge("countingbot_queue_depth", "Work waiting in an internal queue", "queue", "log_lines", logs::queueDepth);
+        Metrics.gauge("countingbot_queue_depth", "Work waiting in an internal queue", "queue", "deletes", deletes::queueDepth);
+        Metrics.gauge("countingbot_queue_depth", "Work waiting in an internal queue", "queue", "goal_wheel", goalsRegistry::pendingRenders);
+        Metrics.gauge("countingbot_goal_services", "Live per-guild goal services", goalsRegistry::size);
+
+        Metrics.histogram("countingbot_delete_latency_seconds", "Invalid-count delete, queued -> Discord confirmed",
+                null, null, 1e3, Metrics.MILLIS_BUCKETS, deletes.latency());
+        Metrics.counterFn("countingbot_delete_requests_total", "Delete REST requests", "kind", "bulk", deletes::bulkRequests);
+        Metrics.counterFn("countingbot_delete_requests_total", "Delete REST requests", "kind", "single", deletes::singleRequests);
+
+        Metrics.histogram("countingbot_log_send_latency_seconds", "Guild log message send round trip",
+                null, null, 1e3, Metrics.MILLIS_BUCKETS, logs.sendLatency());
+        Metrics.counterFn("countingbot_log_messages_sent_total", "Guild log messages sent", null, null, logs::sentMessages);
+        Metrics.counterFn("countingbot_log_lines_dropped_total", "Guild log lines only counted (buffer full)", null, null, logs::droppedCount);
+        Metrics.counterFn("countingbot_console_lines_dropped_total", "Console log lines dropped (ring full)", null, null, ConsoleLog::droppedCount);
+    }
+
     private static GlobalConfig loadOrCreateGlobalConfig() {
         try {
             Path p = BotPaths.GLOBAL_DIR.resolve("config.json");
@@ -160,12 +196,30 @@ public class Main {
                         Commands.slash("stats", "Show counting stats (fame/shame)")
                                 .addOption(OptionType.USER, "user", "User to view (defaults to you)", false),
 
-                        Commands.slash("leaderboard", "Top fame/shame + (this guild) global streak"),
+                        Commands.slash("leaderboard", "Top fame/shame + (this guild) global streak")
+                                .addOptions(new OptionData(OptionType.STRING, "scope", "global (default) or this server", false)
+                                        .addChoice("global", "global")
+                                        .addChoice("server", "server")),
 
                         Commands.slash("countdelay", "Set counting cooldown delay (seconds)")
                                 .addOption(OptionType.INTEGER, "seconds", "Cooldown between VALID counts", true),
 
-                        Commands.slash("resync", "Sync count to the counting channel history (this guild)"),
+                        Commands.slash("resync", "Sync count to the counting channel history (this guild)")
+                                .addOptions(
+                                        new OptionData(OptionType.STRING, "mode", "quick (default), deep history scan, or cancel a running scan", false)
+                                                .addChoice("quick", "quick")
+                                                .addChoice("deep", "deep")
+                                                .addChoice("cancel", "cancel"),
+                                        new OptionData(OptionType.INTEGER, "pages", "deep: max pages of 100 messages to fetch (default 50)", false)
+                                                .setRequiredRange(1, 200),
+                                        new OptionData(OptionType.INTEGER, "verify", "deep: earlier counts that must follow the found one (default 2)", false)
+                                                .setRequiredRange(0, 10)),
+
+                        Commands.slash("latency", "Count decision latency by stage (admin only)")
+                                .addOptions(new OptionData(OptionType.STRING, "scope", "this server (default) or the whole bot", false)
+                                                .addChoice("server", "server")
+                                                .addChoice("bot", "bot"),
+                                        new OptionData(OptionType.BOOLEAN, "reset", "Clear this server's numbers after showing them", false)),
 
                         Commands.slash("goal", "Manage the counting goal (this guild)")
                                 .addSubcommands(
@@ -6,6 +6,7 @@ public class AchievementContext {
     public final long userId;
     public final long nowMillis;
 
+    // Either may be null when no remaining condition for this trigger reads it (see AchievementEngine.needs).
     public final CountingSnapshot counting;
     public final UserStatsSnapshot stats;
 
@@ -0,0 +1,254 @@
+package org.gudu0.countingbot.achievements;
+
+import org.gudu0.countingbot.util.LongObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The achievement catalog compiled into per-trigger indexes.
+ * <p>
+ * Every def gets an ordinal (its catalog position). For each trigger:
+ * - userStatAtLeast / globalAtLeast: thresholds per key, sorted, each with a prefix mask of
+ *   "all ordinals at or below this threshold"; one binary search per key finds everything the
+ *   current value satisfies
+ * - globalEquals: value -> ordinal mask hash lookup (e.g. LAST_NUMBER 1000)
+ * - anything else (allOf/anyOf/custom conditions): evaluated directly, only while still locked
+ * <p>
+ * The result is masked with the user's unlocked bitset, so one evaluation costs a handful of
+ * word operations per key, independent of how many achievements the catalog has.
+ * <p>
+ * {@link #needs} answers "can anything still fire for this user, and which snapshots would it read"
+ * from the bitsets alone, so callers can skip building (and locking for) snapshots nobody reads.
+ * Immutable after construction; safe to share.
+ */
+public final class AchievementEngine {
+
+    /** {@link #needs} flags. */
+    public static final int NEEDS_COUNTING = 1;
+    public static final int NEEDS_STATS = 2;
+
+    private static final StatKey[] STAT_KEYS = StatKey.values();
+    private static final GlobalKey[] GLOBAL_KEYS = GlobalKey.values();
+
+    /** Sorted thresholds for one key, with cumulative ordinal masks. */
+    private record ThresholdIndex(long[] thresholds, long[][] masksUpTo) {
+        static final ThresholdIndex EMPTY = new ThresholdIndex(new long[0], new long[0][]);
+
+        /** Mask of every entry whose threshold is <= value, or null. */
+        long[] satisfiedBy(long value) {
+            int lo = 0, hi = thresholds.length; // first index with threshold > value
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (thresholds[mid] <= value) lo = mid + 1; else hi = mid;
+            }
+            return lo == 0 ? null : masksUpTo[lo - 1];
+        }
+    }
+
+    /** Everything compiled for one trigger. */
+    private static final class TriggerIndex {
+        final ThresholdIndex[] statAtLeast = new ThresholdIndex[STAT_KEYS.length];
+        final ThresholdIndex[] globalAtLeast = new ThresholdIndex[GLOBAL_KEYS.length];
+        @SuppressWarnings("unchecked")
+        final LongObjectMap<long[]>[] globalEquals = new LongObjectMap[GLOBAL_KEYS.length];
+        int[] fallback = new int[0]; // ordinals evaluated with Condition.matches
+
+        long[] firable;       // every ordinal this trigger can unlock
+        long[] readsCounting; // ...whose condition reads the counting snapshot
+        long[] readsStats;    // ...whose condition reads the user stats snapshot
+    }
+
+    private final List<AchievementDef> defs;
+    private final int words;
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+    private final TriggerIndex[] byTrigger = new TriggerIndex[AchievementTrigger.values().length];
+
+    public AchievementEngine(List<AchievementDef> defs) {
+        this.defs = List.copyOf(defs);
+        this.words = Math.max(1, (this.defs.size() + 63) >>> 6);
+
+        for (int i = 0; i < this.defs.size(); i++) ordinalById.putIfAbsent(this.defs.get(i).id, i);
+        for (AchievementTrigger t : AchievementTrigger.values()) byTrigger[t.ordinal()] = compile(t);
+    }
+
+    public int size() {
+        return defs.size();
+    }
+
+    public AchievementDef def(int ordinal) {
+        return defs.get(ordinal);
+    }
+
+    /** Ordinal of an achievement id, or -1 if it is not in the catalog. */
+    public int ordinalOf(String id) {
+        Integer o = ordinalById.get(id);
+        return o != null ? o : -1;
+    }
+
+    /**
+     * Which snapshots evaluating {@code trigger} for this user would read: 0 if every achievement the
+     * trigger can unlock is already unlocked, else a mix of {@link #NEEDS_COUNTING} / {@link #NEEDS_STATS}.
+     */
+    public int needs(AchievementTrigger trigger, UserAchievements ua) {
+        TriggerIndex ti = byTrigger[trigger.ordinal()];
+        long[] unlocked = bitsOf(ua);
+
+        int flags = 0;
+        for (int w = 0; w < words; w++) {
+            long locked = ti.firable[w] & ~unlocked[w];
+            if (locked == 0) continue;
+            if ((locked & ti.readsCounting[w]) != 0) flags |= NEEDS_COUNTING;
+            if ((locked & ti.readsStats[w]) != 0) flags |= NEEDS_STATS;
+        }
+        return flags;
+    }
+
+    /** Scratch mask for {@link #evaluate}. */
+    public long[] newMask() {
+        return new long[words];
+    }
+
+    /**
+     * Computes the achievements this event newly satisfies (matched and not yet unlocked) into {@code out}.
+     * A snapshot left null in {@code ctx} is skipped; only do that when {@link #needs} said it isn't read.
+     *
+     * @return true if {@code out} has any bit set
+     */
+    public boolean evaluate(AchievementTrigger trigger, AchievementContext ctx, UserAchievements ua, long[] out) {
+        Arrays.fill(out, 0);
+        TriggerIndex ti = byTrigger[trigger.ordinal()];
+
+        for (int k = 0; ctx.stats != null && k < STAT_KEYS.length; k++) {
+            ThresholdIndex idx = ti.statAtLeast[k];
+            if (idx.thresholds.length == 0) continue;
+            or(out, idx.satisfiedBy(Conditions.stat(STAT_KEYS[k], ctx)));
+        }
+        for (int k = 0; ctx.counting != null && k < GLOBAL_KEYS.length; k++) {
+            ThresholdIndex idx = ti.globalAtLeast[k];
+            LongObjectMap<long[]> eq = ti.globalEquals[k];
+            if (idx.thresholds.length == 0 && eq.isEmpty()) continue;
+
+            long v = Conditions.global(GLOBAL_KEYS[k], ctx);
+            if (idx.thresholds.length != 0) or(out, idx.satisfiedBy(v));
+            if (!eq.isEmpty()) or(out, eq.get(v));
+        }
+
+        long[] unlocked = bitsOf(ua);
+        for (int ord : ti.fallback) {
+            if (isSet(unlocked, ord)) continue;
+            if (defs.get(ord).condition.matches(ctx)) out[ord >>> 6] |= 1L << (ord & 63);
+        }
+
+        boolean any = false;
+        for (int w = 0; w < words; w++) {
+            out[w] &= ~unlocked[w];
+            any |= out[w] != 0;
+        }
+        return any;
+    }
+
+    public boolean isUnlocked(UserAchievements ua, int ordinal) {
+        return isSet(bitsOf(ua), ordinal);
+    }
+
+    /** The user's unlocks as an ordinal bitset (cached on the object; ids outside the catalog are ignored). */
+    long[] bitsOf(UserAchievements ua) {
+        long[] b = ua.bits;
+        if (b != null && b.length == words) return b;
+
+        b = new long[words];
+        for (String id : ua.unlockedAtMillis.keySet()) {
+            int ord = ordinalOf(id);
+            if (ord >= 0) b[ord >>> 6] |= 1L << (ord & 63);
+        }
+        ua.bits = b;
+        return b;
+    }
+
+    // ----------------------------
+    // Compilation
+    // ----------------------------
+
+    private TriggerIndex compile(AchievementTrigger trigger) {
+        List<List<long[]>> stat = new ArrayList<>();   // per key: {threshold, ordinal}
+        List<List<long[]>> global = new ArrayList<>();
+        for (int i = 0; i < STAT_KEYS.length; i++) stat.add(new ArrayList<>());
+        for (int i = 0; i < GLOBAL_KEYS.length; i++) global.add(new ArrayList<>());
+
+        TriggerIndex ti = new TriggerIndex();
+        for (int k = 0; k < GLOBAL_KEYS.length; k++) ti.globalEquals[k] = new LongObjectMap<>();
+        ti.firable = new long[words];
+        ti.readsCounting = new long[words];
+        ti.readsStats = new long[words];
+        List<Integer> fallback = new ArrayList<>();
+
+        for (int ord = 0; ord < defs.size(); ord++) {
+            AchievementDef def = defs.get(ord);
+            if (!def.triggers.contains(trigger)) continue;
+            if (def.condition instanceof Conditions.Never) continue; // manual-only
+
+            long bit = 1L << (ord & 63);
+            ti.firable[ord >>> 6] |= bit;
+
+            switch (def.condition) {
+                case Conditions.UserStatAtLeast c -> {
+                    stat.get(c.key().ordinal()).add(new long[]{c.value(), ord});
+                    ti.readsStats[ord >>> 6] |= bit;
+                }
+                case Conditions.GlobalAtLeast c -> {
+                    global.get(c.key().ordinal()).add(new long[]{c.value(), ord});
+                    ti.readsCounting[ord >>> 6] |= bit;
+                }
+                case Conditions.GlobalEquals c -> {
+                    long[] mask = ti.globalEquals[c.key().ordinal()].computeIfAbsent(c.value(), v -> new long[words]);
+                    mask[ord >>> 6] |= bit;
+                    ti.readsCounting[ord >>> 6] |= bit;
+                }
+                default -> {
+                    // Opaque (allOf/anyOf/custom): assume it reads everything.
+                    fallback.add(ord);
+                    ti.readsCounting[ord >>> 6] |= bit;
+                    ti.readsStats[ord >>> 6] |= bit;
+                }
+            }
+        }
+
+        for (int k = 0; k < STAT_KEYS.length; k++) ti.statAtLeast[k] = thresholds(stat.get(k));
+        for (int k = 0; k < GLOBAL_KEYS.length; k++) ti.globalAtLeast[k] = thresholds(global.get(k));
+        ti.fallback = fallback.stream().mapToInt(Integer::intValue).toArray();
+        return ti;
+    }
+
+    private ThresholdIndex thresholds(List<long[]> entries) {
+        if (entries.isEmpty()) return ThresholdIndex.EMPTY;
+        entries.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        long[] thresholds = new long[entries.size()];
+        long[][] masks = new long[entries.size()][];
+        long[] running = new long[words];
+        for (int i = 0; i < entries.size(); i++) {
+            int ord = (int) entries.get(i)[1];
+            running[ord >>> 6] |= 1L << (ord & 63);
+            thresholds[i] = entries.get(i)[0];
+            masks[i] = running.clone();
+        }
+        return new ThresholdIndex(thresholds, masks);
+    }
+
+    // ----------------------------
+    // Bits
+    // ----------------------------
+
+    private static void or(long[] into, long[] mask) {
+        if (mask == null) return;
+        for (int w = 0; w < into.length; w++) into[w] |= mask[w];
+    }
+
+    private static boolean isSet(long[] bits, int ord) {
+        return (bits[ord >>> 6] & (1L << (ord & 63))) != 0;
+    }
+}
@@ -0,0 +1,135 @@
+package org.gudu0.countingbot.achievements;
+
+import org.gudu0.countingbot.util.LongObjectMap;
+import org.gudu0.countingbot.util.SnapshotCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.gudu0.countingbot.util.VarInts.readVarInt;
+import static org.gudu0.countingbot.util.VarInts.readVarLong;
+import static org.gudu0.countingbot.util.VarInts.writeVarLong;
+
+/**
+ * Compact encoding of {@link AchievementsState} (achievements.bin).
+ * <p>
+ * Layout:
+ * magic "CBAC", version(2), deltaSeq(varint),
+ * dictionary: idCount(varint) + UTF ids (catalog order first, then any unknown ids found in the data),
+ * userCount(varint), userIds (sorted, delta varints),
+ * per user: ceil(idCount/64) int64 bitset words (bit i = dictionary[i] unlocked),
+ * per user: one int64 unlock time per set bit, ascending bit order.
+ * <p>
+ * The dictionary is stored in the file, so catalog reordering never remaps old unlocks.
+ * Version 1 files (no deltaSeq) still load.
+ */
+public final class AchievementsBinaryCodec implements SnapshotCodec<AchievementsState> {
+
+    private static final int MAGIC = 0x43424143; // "CBAC"
+    private static final byte VERSION = 2;
+
+    @Override
+    public void write(OutputStream os, AchievementsState state) throws IOException {
+        // Dictionary: catalog ids first, then extras (keeps bit positions stable across saves).
+        Map<String, Integer> dict = new LinkedHashMap<>();
+        for (AchievementDef d : AchievementsCatalog.all()) dict.putIfAbsent(d.id, dict.size());
+        state.users.forEach((uid, ua) -> {
+            for (String id : ua.unlockedAtMillis.keySet()) dict.putIfAbsent(id, dict.size());
+        });
+        int words = (dict.size() + 63) >>> 6;
+
+        long[] ids = state.users.keys();
+        int n = ids.length;
+        Arrays.sort(ids);
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(out, state.deltaSeq);
+
+        writeVarLong(out, dict.size());
+        for (String id : dict.keySet()) out.writeUTF(id);
+
+        writeVarLong(out, n);
+        long prev = 0;
+        for (long id : ids) {
+            writeVarLong(out, id - prev);
+            prev = id;
+        }
+
+        long[][] bits = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            for (String aid : state.users.get(ids[i]).unlockedAtMillis.keySet()) {
+                int bit = dict.get(aid);
+                bits[i][bit >>> 6] |= 1L << (bit & 63);
+            }
+            for (long w : bits[i]) out.writeLong(w);
+        }
+
+        String[] byBit = dict.keySet().toArray(new String[0]);
+        for (int i = 0; i < n; i++) {
+            Map<String, Long> times = state.users.get(ids[i]).unlockedAtMillis;
+            for (int w = 0; w < words; w++) {
+                long word = bits[i][w];
+                while (word != 0) {
+                    int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                    out.writeLong(times.get(byBit[bit]));
+                    word &= word - 1;
+                }
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public AchievementsState read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("Not an achievements snapshot (bad magic)");
+        byte version = in.readByte();
+        if (version != 1 && version != VERSION) throw new IOException("Unsupported achievements snapshot version " + version);
+        long deltaSeq = version >= 2 ? readVarLong(in) : 0;
+
+        int dictSize = readVarInt(in);
+        List<String> dict = new ArrayList<>(dictSize);
+        for (int i = 0; i < dictSize; i++) dict.add(in.readUTF());
+        int words = (dictSize + 63) >>> 6;
+
+        int n = readVarInt(in);
+        long[] ids = new long[n];
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            prev += readVarLong(in);
+            ids[i] = prev;
+        }
+
+        long[][] bits = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            for (int w = 0; w < words; w++) bits[i][w] = in.readLong();
+        }
+
+        AchievementsState state = new AchievementsState();
+        state.deltaSeq = deltaSeq;
+        state.users = new LongObjectMap<>(n);
+        for (int i = 0; i < n; i++) {
+            UserAchievements ua = new UserAchievements();
+            for (int w = 0; w < words; w++) {
+                long word = bits[i][w];
+                while (word != 0) {
+                    int bit = (w << 6) + Long.numberOfTrailingZeros(word);
+                    ua.unlockedAtMillis.put(dict.get(bit), in.readLong());
+                    word &= word - 1;
+                }
+            }
+            state.users.put(ids[i], ua);
+        }
+        return state;
+    }
+}
@@ -6,7 +6,6 @@ import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildManager;
 import org.gudu0.countingbot.logging.LogService;
 import org.gudu0.countingbot.stats.StatsStore;
-import org.gudu0.countingbot.stats.UserStats;
 import org.gudu0.countingbot.util.ConsoleLog;
 
 import java.util.List;
@@ -26,6 +25,12 @@ public class AchievementsService {
     @SuppressWarnings("SpellCheckingInspection")
     private final List<AchievementDef> defs = AchievementsCatalog.all();
 
+    // Catalog compiled into per-trigger indexes (see AchievementEngine).
+    private final AchievementEngine engine = new AchievementEngine(defs);
+
+    // Guarded by store.lock.
+    private final long[] matched = engine.newMask();
+
     /**
      * Multi-guild constructor.
      * Achievements are global (stored under data/global/achievements.json), but
@@ -72,33 +77,43 @@ public class AchievementsService {
     public void onTrigger(AchievementTrigger trigger, long guildId, long userId) {
         long now = System.currentTimeMillis();
 
-        // Build snapshots under locks (short + safe)
-        AchievementContext.CountingSnapshot cs;
-        StateStore ss = stateStoreFor(guildId);
-        if (ss == null) {
-            // Should not happen unless constructed wrong.
-            cs = new AchievementContext.CountingSnapshot(-1, 0, 0);
-        } else {
-            synchronized (ss.lock) {
-                CountingState s = ss.state();
-                cs = new AchievementContext.CountingSnapshot(
-                        s.lastNumber,
-                        s.globalStreakCurrent,
-                        s.globalStreakBest
-                );
+        // Cheap pre-check from the unlock bitset: veterans usually have nothing left to unlock for this
+        // trigger, and then no snapshot (and no state/stats lock) is needed at all.
+        int needs;
+        synchronized (store.lock) {
+            needs = engine.needs(trigger, store.state().getOrCreate(userId));
+        }
+        if (needs == 0) return;
+
+        // Build only the snapshots the remaining conditions read (short + safe)
+        AchievementContext.CountingSnapshot cs = null;
+        if ((needs & AchievementEngine.NEEDS_COUNTING) != 0) {
+            StateStore ss = stateStoreFor(guildId);
+            if (ss == null) {
+                // Should not happen unless constructed wrong.
+                cs = new AchievementContext.CountingSnapshot(-1, 0, 0);
+            } else {
+                synchronized (ss.lock) {
+                    CountingState s = ss.state();
+                    cs = new AchievementContext.CountingSnapshot(
+                            s.lastNumber,
+                            s.globalStreakCurrent,
+                            s.globalStreakBest
+                    );
+                }
             }
         }
 
-        AchievementContext.UserStatsSnapshot us;
-        synchronized (statsStore.lock) {
-            UserStats u = statsStore.data().getOrCreate(userId);
-            us = new AchievementContext.UserStatsSnapshot(
-                    u.correct,
-                    u.incorrect,
-                    u.currentStreak,
-                    u.bestStreak,
-                    u.posCounts
-            );
+        AchievementContext.UserStatsSnapshot us = null;
+        if ((needs & AchievementEngine.NEEDS_STATS) != 0) {
+            us = statsStore.data().read(userId, u ->
+                    new AchievementContext.UserStatsSnapshot(
+                            u.correct,
+                            u.incorrect,
+                            u.currentStreak,
+                            u.bestStreak,
+                            u.posCounts
+                    ));
         }
 
         AchievementContext ctx = new AchievementContext(guildId, userId, now, cs, us);
@@ -108,44 +123,47 @@ public class AchievementsService {
         synchronized (store.lock) {
             UserAchievements ua = store.state().getOrCreate(userId);
 
-            for (AchievementDef def : defs) {
-                if (!def.triggers.contains(trigger)) continue;
-                if (ua.isUnlocked(def.id)) continue;
+            // Only achievements this event newly satisfies come back; usually none.
+            if (!engine.evaluate(trigger, ctx, ua, matched)) return;
+
+            for (int w = 0; w < matched.length; w++) {
+                long word = matched[w];
+                while (word != 0) {
+                    AchievementDef def = engine.def((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                    if (ua.isUnlocked(def.id)) continue;
 
-                if (def.condition.matches(ctx)) {
                     ua.unlock(def.id, now);
                     unlockedAny = true;
 
                     if (def.logOnUnlock && logs != null) {
                         // No mention ping in logs; keep it plain.
-                        logs.log(guildId, "Achievement unlocked: " + def.title + ", by <@" + userId + ">!");
+                        logs.log(guildId, LogService.Kind.ACHIEVEMENT, "Achievement unlocked: " + def.title + ", by <@" + userId + ">!");
                         ConsoleLog.info("Achievements", "Unlocked id=" + def.id + " title=\"" + def.title + "\" userId=" + userId + " guildId=" + guildId);
                     }
                 }
             }
 
-            if (unlockedAny) store.markDirty();
+            if (unlockedAny) store.markDirty(userId);
         }
     }
 
     public void unlockById(long guildId, long userId, String achievementId) {
         long now = System.currentTimeMillis();
 
-        AchievementDef def = null;
-        for (AchievementDef d : defs) {
-            if (d.id.equals(achievementId)) { def = d; break; }
-        }
-        if (def == null) return;
+        int ord = engine.ordinalOf(achievementId);
+        if (ord < 0) return;
+        AchievementDef def = engine.def(ord);
 
         synchronized (store.lock) {
             UserAchievements ua = store.state().getOrCreate(userId);
             if (ua.isUnlocked(def.id)) return;
 
             ua.unlock(def.id, now);
-            store.markDirty();
+            store.markDirty(userId);
 
             if (def.logOnUnlock && logs != null) {
-                logs.log(guildId, "Achievement unlocked: " + def.title + ", by <@" + userId + ">!");
+                logs.log(guildId, LogService.Kind.ACHIEVEMENT, "Achievement unlocked: " + def.title + ", by <@" + userId + ">!");
             }
         }
     }
@@ -1,13 +1,92 @@
 package org.gudu0.countingbot.achievements;
 
-import java.util.HashMap;
+import org.gudu0.countingbot.util.IncrementalStore;
+import org.gudu0.countingbot.util.LongObjectMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
-public class AchievementsState {
+import static org.gudu0.countingbot.util.VarInts.readVarInt;
+import static org.gudu0.countingbot.util.VarInts.writeVarLong;
+
+/**
+ * Everything here is guarded by {@link AchievementsStore#lock}.
+ */
+public class AchievementsState implements IncrementalStore.Tracked {
     @SuppressWarnings("CanBeFinal")
-    public Map<Long, UserAchievements> users = new HashMap<>();
+    public LongObjectMap<UserAchievements> users = new LongObjectMap<>();
+
+    public long deltaSeq = 0;
+
+    // Users changed since the last delta write; each listed once (see UserAchievements#dirty).
+    private long[] dirty = new long[16];
+    private int dirtyCount;
 
     public UserAchievements getOrCreate(long userId) {
-        return users.computeIfAbsent(userId, k -> new UserAchievements());
+        return users.computeIfAbsent(userId, id -> new UserAchievements());
+    }
+
+    /** Lists the user for the next delta write. */
+    public void markChanged(long userId) {
+        UserAchievements ua = users.get(userId);
+        if (ua == null || ua.dirty) return;
+        ua.dirty = true;
+        if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        dirty[dirtyCount++] = userId;
+    }
+
+    // ----------------------------
+    // Incremental flushing
+    // ----------------------------
+
+    @Override
+    public long getDeltaSeq() {
+        return deltaSeq;
+    }
+
+    @Override
+    public void setDeltaSeq(long seq) {
+        this.deltaSeq = seq;
+    }
+
+    /** Payload: count(varint), then per user: userId(int64), unlocks(varint), (UTF id, int64 atMillis) each. */
+    @Override
+    public int writeDirty(DataOutput out) throws IOException {
+        if (dirtyCount == 0) return 0;
+        writeVarLong(out, dirtyCount);
+        for (int k = 0; k < dirtyCount; k++) {
+            UserAchievements ua = users.get(dirty[k]);
+            ua.dirty = false;
+            out.writeLong(dirty[k]);
+            writeVarLong(out, ua.unlockedAtMillis.size());
+            for (Map.Entry<String, Long> e : ua.unlockedAtMillis.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+        }
+        int n = dirtyCount;
+        dirtyCount = 0;
+        return n;
+    }
+
+    @Override
+    public void clearDirty() {
+        for (int k = 0; k < dirtyCount; k++) users.get(dirty[k]).dirty = false;
+        dirtyCount = 0;
+    }
+
+    @Override
+    public void applyDelta(DataInput in) throws IOException {
+        int n = readVarInt(in);
+        for (int k = 0; k < n; k++) {
+            long userId = in.readLong();
+            int unlocks = readVarInt(in);
+            UserAchievements ua = new UserAchievements();
+            for (int i = 0; i < unlocks; i++) ua.unlockedAtMillis.put(in.readUTF(), in.readLong());
+            users.put(userId, ua);
+        }
     }
 }
@@ -1,19 +1,54 @@
 package org.gudu0.countingbot.achievements;
 
+import org.gudu0.countingbot.util.IncrementalStore;
+import org.gudu0.countingbot.util.JsonCodec;
 import org.gudu0.countingbot.util.JsonStore;
+import org.gudu0.countingbot.util.SnapshotFormat;
 
 import java.nio.file.Path;
 
+/**
+ * Global achievements (data/global/achievements.json or achievements.bin, plus the achievements.log delta log).
+ * <p>
+ * Mutate under {@link #lock} and report the user with {@link #markDirty(long)}: a flush then appends
+ * only those users to the log (see {@link IncrementalStore}).
+ */
 public class AchievementsStore {
     public final Object lock;
-    private final JsonStore<AchievementsState> store;
+    private final IncrementalStore<AchievementsState> store;
 
     public AchievementsStore(Path path) {
-        this.store = new JsonStore<>(path, AchievementsState.class, AchievementsState::new, "achievements.json");
+        this.store = new IncrementalStore<>(
+                new JsonStore<>(path, AchievementsState.class, AchievementsState::new, "achievements.json"),
+                path.resolveSibling("achievements.log"), "achievements.log");
+        this.lock = store.lock;
+    }
+
+    /**
+     * @param jsonPath the achievements.json path; the binary snapshot lives next to it as achievements.bin.
+     *                 The other format's file is migrated from if it is newer, then renamed to *.migrated.
+     */
+    public AchievementsStore(Path jsonPath, SnapshotFormat format) {
+        Path binPath = jsonPath.resolveSibling("achievements." + SnapshotFormat.BINARY.extension);
+        JsonCodec<AchievementsState> json = new JsonCodec<>(AchievementsState.class);
+        AchievementsBinaryCodec bin = new AchievementsBinaryCodec();
+
+        JsonStore<AchievementsState> snapshot = format == SnapshotFormat.BINARY
+                ? new JsonStore<>(binPath, bin, AchievementsState::new, "achievements.bin", jsonPath, json, AchievementsState::getDeltaSeq)
+                : new JsonStore<>(jsonPath, json, AchievementsState::new, "achievements.json", binPath, bin, AchievementsState::getDeltaSeq);
+        this.store = new IncrementalStore<>(snapshot, jsonPath.resolveSibling("achievements.log"), "achievements.log");
         this.lock = store.lock;
     }
 
     public AchievementsState state() { return store.get(); }
-    public void markDirty() { store.markDirty(); }
+
+    /** One user's achievements changed (caller holds lock). */
+    public void markDirty(long userId) {
+        store.get().markChanged(userId);
+        store.markDirty();
+    }
+
+    /** Anything may have changed: the next flush rewrites the full snapshot. */
+    public void markDirty() { store.requestCompaction(); }
     public void startAutoFlush(long periodSeconds) { store.startAutoFlush(periodSeconds); }
 }
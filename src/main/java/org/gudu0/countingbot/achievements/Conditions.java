@@ -20,7 +20,7 @@ public final class Conditions {
 
     // For “manual-only” achievements (unlocked via code, not via triggers)
     public static Condition never() {
-        return ctx -> false;
+        return Never.INSTANCE;
     }
 
 
@@ -32,28 +32,48 @@ public final class Conditions {
         return new AnyOf(List.of(any));
     }
 
-    private record UserStatAtLeast(StatKey key, long value) implements Condition {
+    // ----------------------------
+    // Leaf values (shared with AchievementEngine)
+    // ----------------------------
+
+    static long stat(StatKey key, AchievementContext ctx) {
+        return switch (key) {
+            case CORRECT -> ctx.stats.correct();
+            case INCORRECT -> ctx.stats.incorrect();
+            case CURRENT_STREAK -> ctx.stats.currentStreak();
+            case BEST_STREAK -> ctx.stats.bestStreak();
+            case POS_COUNTS -> ctx.stats.posCounts();
+        };
+    }
+
+    static long global(GlobalKey key, AchievementContext ctx) {
+        return switch (key) {
+            case LAST_NUMBER -> ctx.counting.lastNumber();
+            case GLOBAL_STREAK_CURRENT -> ctx.counting.globalStreakCurrent();
+            case GLOBAL_STREAK_BEST -> ctx.counting.globalStreakBest();
+        };
+    }
+
+    // Package-private so AchievementEngine can index the simple shapes.
+
+    record Never() implements Condition {
+        static final Never INSTANCE = new Never();
+
+        @Override public boolean matches(AchievementContext ctx) {
+            return false;
+        }
+    }
+
+    record UserStatAtLeast(StatKey key, long value) implements Condition {
         @Override public boolean matches(AchievementContext ctx) {
-            long v = switch (key) {
-                case CORRECT -> ctx.stats.correct();
-                case INCORRECT -> ctx.stats.incorrect();
-                case CURRENT_STREAK -> ctx.stats.currentStreak();
-                case BEST_STREAK -> ctx.stats.bestStreak();
-                case POS_COUNTS -> ctx.stats.posCounts();
-            };
-            return v >= value;
+            return stat(key, ctx) >= value;
         }
     }
 
     @SuppressWarnings("unused")
-    private record GlobalAtLeast(GlobalKey key, long value) implements Condition {
+    record GlobalAtLeast(GlobalKey key, long value) implements Condition {
         @Override public boolean matches(AchievementContext ctx) {
-            long v = switch (key) {
-                case LAST_NUMBER -> ctx.counting.lastNumber();
-                case GLOBAL_STREAK_CURRENT -> ctx.counting.globalStreakCurrent();
-                case GLOBAL_STREAK_BEST -> ctx.counting.globalStreakBest();
-            };
-            return v >= value;
+            return global(key, ctx) >= value;
         }
     }
 
@@ -73,14 +93,9 @@ public final class Conditions {
         }
     }
 
-    private record GlobalEquals(GlobalKey key, long value) implements Condition {
+    record GlobalEquals(GlobalKey key, long value) implements Condition {
         @Override public boolean matches(AchievementContext ctx) {
-            long v = switch (key) {
-                case LAST_NUMBER -> ctx.counting.lastNumber();
-                case GLOBAL_STREAK_CURRENT -> ctx.counting.globalStreakCurrent();
-                case GLOBAL_STREAK_BEST -> ctx.counting.globalStreakBest();
-            };
-            return v == value;
+            return global(key, ctx) == value;
         }
     }
 
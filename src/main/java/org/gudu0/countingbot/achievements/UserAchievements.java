@@ -1,5 +1,7 @@
 package org.gudu0.countingbot.achievements;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,11 +9,19 @@ public class UserAchievements {
     @SuppressWarnings("CanBeFinal")
     public Map<String, Long> unlockedAtMillis = new HashMap<>();
 
+    // AchievementEngine ordinal bitset; derived from unlockedAtMillis, rebuilt lazily after any change.
+    @JsonIgnore
+    long[] bits;
+
+    // Listed in AchievementsState's dirty set; guarded by the store lock.
+    @JsonIgnore
+    boolean dirty;
+
     public boolean isUnlocked(String id) {
         return unlockedAtMillis.containsKey(id);
     }
 
     public void unlock(String id, long atMillis) {
-        unlockedAtMillis.putIfAbsent(id, atMillis);
+        if (unlockedAtMillis.putIfAbsent(id, atMillis) == null) bits = null;
     }
 }
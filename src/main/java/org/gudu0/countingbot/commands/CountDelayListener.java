@@ -51,6 +51,7 @@ public class CountDelayListener extends ListenerAdapter {
         GuildContext ctx = guilds.get(guildId);
 
         ctx.cfg.countingDelaySeconds = seconds;
+        ctx.stateStore.setCooldownSeconds(seconds);
 
         try {
             ctx.configStore.save();
@@ -0,0 +1,80 @@
+package org.gudu0.countingbot.commands;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import org.gudu0.countingbot.counting.DecisionStats;
+import org.gudu0.countingbot.guild.GuildManager;
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.util.LatencyHistogram;
+
+/**
+ * /latency (admin only)
+ * <p>
+ * Count decision latency per stage since the guild was loaded (or last reset): from the gateway
+ * receiving a counting message, through the rules, to the decision being committed, and for invalid
+ * counts to Discord confirming the delete.
+ * <p>
+ * - scope:server (default): this guild; reset:true clears its numbers after showing them
+ * - scope:bot: all guilds together (since start)
+ */
+public class LatencyListener extends ListenerAdapter implements CommandGuards {
+
+    private final GuildManager guilds;
+
+    public LatencyListener(GuildManager guilds) {
+        this.guilds = guilds;
+    }
+
+    @Override
+    public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        if (!"latency".equals(event.getName())) return;
+
+        Guild g = requireGuild(event);
+        if (g == null) return;
+        if (!requireAdmin(event)) return;
+
+        boolean bot = "bot".equals(event.getOption("scope", "server", OptionMapping::getAsString));
+        boolean reset = event.getOption("reset", false, OptionMapping::getAsBoolean);
+
+        DecisionStats stats = bot ? DecisionStats.BOT : guilds.get(g.getIdLong()).decisionStats();
+        String title = bot ? "Count decision latency (all servers)" : "Count decision latency (this server)";
+        if (stats.decisions() == 0) {
+            event.reply(title + ": no counting messages judged yet.").setEphemeral(true).queue();
+            return;
+        }
+
+        String text = render(title, stats);
+        if (reset && !bot) {
+            stats.reset();
+            text += "\nNumbers for this server were reset.";
+        }
+        event.reply(text).setEphemeral(true).queue();
+    }
+
+    private static String render(String title, DecisionStats stats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("**").append(title).append("**, ").append(stats.decisions()).append(" message(s)\n```\n");
+        sb.append(String.format("%-12s %7s %9s %9s %9s %9s%n", "stage", "n", "p50", "p90", "p99", "max"));
+        for (DecisionStats.Stage s : DecisionStats.Stage.values()) {
+            LatencyHistogram h = stats.get(s);
+            if (h.count() == 0) continue;
+            sb.append(String.format("%-12s %7d %9s %9s %9s %9s%n", s.label, h.count(),
+                    ms(h.percentile(0.50)), ms(h.percentile(0.90)), ms(h.percentile(0.99)), ms(h.max())));
+        }
+        sb.append("```\n");
+        sb.append("Per-stage rows are sampled (1 in ").append(Metrics.SAMPLE_EVERY)
+                .append(" messages); decision and delete rows cover every message.\n");
+        for (DecisionStats.Stage s : DecisionStats.Stage.values()) {
+            if (stats.get(s).count() == 0) continue;
+            sb.append("`").append(s.label).append("` ").append(s.description).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Histograms are in µs.
+    private static String ms(long micros) {
+        return micros < 10_000 ? String.format("%.2fms", micros / 1000.0) : (micros / 1000) + "ms";
+    }
+}
@@ -5,18 +5,21 @@ import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.gudu0.countingbot.counting.CountingState;
 import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildManager;
+import org.gudu0.countingbot.stats.LeaderboardIndex;
 import org.gudu0.countingbot.stats.StatsStore;
-import org.gudu0.countingbot.stats.UserStats;
 
-import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 
 /**
- * Global leaderboard for user stats (fame/shame), plus guild-scoped streak summary.
+ * Leaderboard for user stats (fame/shame), global or per server, plus guild-scoped streak summary.
+ * <p>
+ * Reads come from the incrementally maintained {@link LeaderboardIndex}; no copy/sort of all users.
  */
 public class LeaderboardListener extends ListenerAdapter {
 
+    private static final int TOP_N = 10;
+
     private final StatsStore stats;
     private final GuildManager guilds;
 
@@ -35,6 +38,7 @@ public class LeaderboardListener extends ListenerAdapter {
         }
 
         long guildId = event.getGuild().getIdLong();
+        long callerId = event.getUser().getIdLong();
 
         // Guild streak snapshot (per guild)
         long last;
@@ -48,24 +52,15 @@ public class LeaderboardListener extends ListenerAdapter {
             best = s.globalStreakBest;
         }
 
-        // Global leaderboards (across all guilds)
-        List<Map.Entry<Long, UserStats>> entries;
-        synchronized (stats.lock) {
-            entries = List.copyOf(stats.data().users.entrySet());
-        }
-
-        // Top 10 fame (global)
-        List<Map.Entry<Long, UserStats>> topFame = entries.stream()
-                .sorted(Comparator.comparingLong((Map.Entry<Long, UserStats> e) -> e.getValue().correct).reversed())
-                .limit(10)
-                .toList();
-
-        // Top 10 shame (global)
-        List<Map.Entry<Long, UserStats>> topShame = entries.stream()
-                .sorted(Comparator.comparingLong((Map.Entry<Long, UserStats> e) -> e.getValue().incorrect).reversed())
-                .limit(10)
-                .toList();
+        boolean serverScope = event.getOption("scope") != null
+                && "server".equals(Objects.requireNonNull(event.getOption("scope")).getAsString());
+        LeaderboardIndex index = serverScope
+                ? ctx.statsStore.data().leaderboard()
+                : stats.data().leaderboard();
+        String scopeLabel = serverScope ? "this server" : "global";
 
+        List<LeaderboardIndex.Entry> topFame = index.top(LeaderboardIndex.Metric.CORRECT, TOP_N);
+        List<LeaderboardIndex.Entry> topShame = index.top(LeaderboardIndex.Metric.INCORRECT, TOP_N);
 
         StringBuilder sb = new StringBuilder();
         sb.append("**Guild Streak (this server)**\n");
@@ -73,28 +68,30 @@ public class LeaderboardListener extends ListenerAdapter {
         sb.append("Current streak: ").append(streak).append("\n");
         sb.append("Best streak: ").append(best).append("\n\n");
 
-        sb.append("**Top Fame (global)**\n");
-        if (topFame.isEmpty()) {
-            sb.append("(no data yet)\n");
-        } else {
-            for (int i = 0; i < topFame.size(); i++) {
-                long userId = topFame.get(i).getKey();
-                UserStats u = topFame.get(i).getValue();
-                sb.append(i + 1).append(". <@").append(userId).append("> — ").append(u.correct).append("\n");
-            }
-        }
+        sb.append("**Top Fame (").append(scopeLabel).append(")**\n");
+        appendTop(sb, topFame);
 
-        sb.append("\n**Top Shame (global)**\n");
-        if (topShame.isEmpty()) {
-            sb.append("(no data yet)\n");
-        } else {
-            for (int i = 0; i < topShame.size(); i++) {
-                long userId = topShame.get(i).getKey();
-                UserStats u = topShame.get(i).getValue();
-                sb.append(i + 1).append(". <@").append(userId).append("> — ").append(u.incorrect    ).append("\n");
-            }
+        sb.append("\n**Top Shame (").append(scopeLabel).append(")**\n");
+        appendTop(sb, topShame);
+
+        long fameRank = index.rank(LeaderboardIndex.Metric.CORRECT, callerId);
+        long shameRank = index.rank(LeaderboardIndex.Metric.INCORRECT, callerId);
+        if (fameRank > 0) {
+            sb.append("\nYour rank: #").append(fameRank).append(" fame, #").append(shameRank)
+                    .append(" shame (of ").append(index.size()).append(")\n");
         }
 
         event.reply(sb.toString()).setEphemeral(true).queue();
     }
+
+    private static void appendTop(StringBuilder sb, List<LeaderboardIndex.Entry> top) {
+        if (top.isEmpty()) {
+            sb.append("(no data yet)\n");
+            return;
+        }
+        for (int i = 0; i < top.size(); i++) {
+            LeaderboardIndex.Entry e = top.get(i);
+            sb.append(i + 1).append(". <@").append(e.userId()).append("> — ").append(e.score()).append("\n");
+        }
+    }
 }
@@ -3,13 +3,27 @@ package org.gudu0.countingbot.commands;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import org.gudu0.countingbot.counting.CountingListener;
+import org.gudu0.countingbot.counting.HistoryScan;
 
 /**
  * /resync (per guild)
+ * <p>
+ * - mode:quick (default): look at the last few messages (scans deeper if they hold no count)
+ * - mode:deep: page back through history (pages = REST call cap, verify = chain depth to confirm),
+ *   editing the reply with progress as it goes
+ * - mode:cancel: stop a running deep resync
  */
 public class ResyncListener extends ListenerAdapter {
 
+    private static final int DEFAULT_PAGES = 50;
+    private static final int MAX_PAGES = 200;
+    private static final int DEFAULT_VERIFY = 2;
+    private static final int MAX_VERIFY = 10;
+    private static final long PROGRESS_EVERY_MS = 2_000;
+
     private final CountingListener counting;
 
     public ResyncListener(CountingListener counting) {
@@ -31,12 +45,29 @@ public class ResyncListener extends ListenerAdapter {
         }
 
         long guildId = event.getGuild().getIdLong();
+        String mode = event.getOption("mode", "quick", OptionMapping::getAsString);
+
+        switch (mode) {
+            case "deep" -> deep(event, guildId);
+            case "cancel" -> {
+                boolean cancelled = counting.cancelDeepResync(guildId);
+                event.reply(cancelled ? "Cancelling deep resync..." : "No deep resync is running.").setEphemeral(true).queue();
+            }
+            default -> quick(event, guildId);
+        }
+    }
+
+    private void quick(SlashCommandInteractionEvent event, long guildId) {
+        if (counting.isDeepResyncRunning(guildId)) {
+            event.reply("A deep resync is already running. Use `/resync mode:cancel` to stop it.").setEphemeral(true).queue();
+            return;
+        }
 
         event.reply("Resyncing...").setEphemeral(true).queue();
 
         counting.resyncNow(event.getJDA(), guildId, r -> {
             if (!r.found()) {
-                event.getHook().editOriginal("Resync complete: no valid count found in last 10 messages.").queue();
+                event.getHook().editOriginal("Resync complete: no valid count found in recent messages. Try `/resync mode:deep`.").queue();
             } else {
                 event.getHook().editOriginal(
                         "Resync complete: last valid = **" + r.number() + "** (user <@" + r.userId() + ">)."
@@ -44,4 +75,48 @@ public class ResyncListener extends ListenerAdapter {
             }
         });
     }
+
+    private void deep(SlashCommandInteractionEvent event, long guildId) {
+        if (counting.isDeepResyncRunning(guildId)) {
+            event.reply("A deep resync is already running. Use `/resync mode:cancel` to stop it.").setEphemeral(true).queue();
+            return;
+        }
+
+        int pages = clamp(event.getOption("pages", DEFAULT_PAGES, OptionMapping::getAsInt), 1, MAX_PAGES);
+        int verify = clamp(event.getOption("verify", DEFAULT_VERIFY, OptionMapping::getAsInt), 0, MAX_VERIFY);
+
+        event.reply("Deep resync: scanning up to " + pages + " page(s) of " + HistoryScan.PAGE_SIZE + " messages...")
+                .setEphemeral(true).queue();
+        InteractionHook hook = event.getHook();
+
+        long[] lastProgressAt = {System.currentTimeMillis()};
+        counting.deepResync(event.getJDA(), guildId, new HistoryScan.Options(pages, verify),
+                p -> {
+                    // Page callbacks are sequential; throttle edits so a fast scan doesn't spam the hook.
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgressAt[0] < PROGRESS_EVERY_MS) return;
+                    lastProgressAt[0] = now;
+                    hook.editOriginal("Deep resync: page " + p.pages() + "/" + p.maxPages()
+                            + ", " + p.messages() + " messages scanned, " + p.counts() + " counts seen...").queue();
+                },
+                r -> hook.editOriginal(describe(r)).queue());
+    }
+
+    private static String describe(HistoryScan.Result r) {
+        String scanned = " (" + r.pages() + " page(s), " + r.messages() + " messages)";
+        return switch (r.status()) {
+            case FOUND -> "Deep resync complete: last valid = **" + r.number() + "** (user <@" + r.userId() + ">), "
+                    + r.verified() + " earlier count(s) confirmed" + scanned + ".";
+            case NOT_FOUND -> "Deep resync complete: no valid count in the whole channel" + scanned + ". Counting restarts at 1.";
+            case CAPPED -> "Deep resync stopped at the page cap without finding a count" + scanned + ". State unchanged.";
+            case CANCELLED -> "Deep resync cancelled" + scanned + ". State unchanged.";
+            case SUPERSEDED -> "Deep resync found **" + r.number() + "**, but a new count was accepted meanwhile; kept the live count.";
+            case BUSY -> "Another resync is already running for this server. State unchanged.";
+            case FAILED -> "Deep resync failed (counting channel missing or history not readable). State unchanged.";
+        };
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
 }
@@ -101,6 +101,7 @@ public class SetupListener extends ListenerAdapter {
                 }
 
                 ctx.cfg.countingDelaySeconds = (int) seconds;
+                ctx.stateStore.setCooldownSeconds(ctx.cfg.countingDelaySeconds);
                 saveGuildConfig(ctx, "setdelay", "countingDelaySeconds=" + ctx.cfg.countingDelaySeconds);
 
                 event.reply("Cooldown delay set to " + ctx.cfg.countingDelaySeconds + " seconds.")
@@ -19,16 +19,12 @@ public class StatsListener extends ListenerAdapter {
     @Override
     public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
         if (!event.getName().equals("stats")) return;
-        ConsoleLog.info("Command", "Stats Command Used");
-        if (ConsoleLog.DEBUG) {
-            ConsoleLog.debug("Command - " + this.getClass().getSimpleName(),
-                    "/" + event.getName()
-                            + (event.getSubcommandName() != null ? " " + event.getSubcommandName() : "")
-                            + " by userId=" + event.getUser().getId()
-                            + " name=" + event.getUser().getName()
-                            + " guildId=" + (event.getGuild() != null ? event.getGuild().getId() : "DM")
-                            + " channelId=" + event.getChannel().getId());
-        }
+        ConsoleLog.at(ConsoleLog.Level.INFO, "Command")
+                .kv("command", "stats")
+                .kv("userId", event.getUser().getIdLong())
+                .kv("guildId", event.getGuild() != null ? event.getGuild().getIdLong() : 0)
+                .kv("channelId", event.getChannel().getIdLong())
+                .log("Stats Command Used");
 
         User target = event.getOption("user") != null
                 ? Objects.requireNonNull(event.getOption("user")).getAsUser()
@@ -36,16 +32,12 @@ public class StatsListener extends ListenerAdapter {
 
         long id = target.getIdLong();
 
-        long correct, incorrect, curStreak, bestStreak;
-        // Read stats without creating a new entry
-        synchronized (stats.lock) {
-            UserStats s = stats.data().users.get(id);
-            if (s == null) s = new UserStats(); // or your helper default
-            correct = s.correct;
-            incorrect = s.incorrect;
-            curStreak = s.currentStreak;
-            bestStreak = s.bestStreak;
-        }
+        // Read stats without creating a new entry (detached copy)
+        UserStats s = stats.data().getOrDefault(id);
+        long correct = s.correct;
+        long incorrect = s.incorrect;
+        long curStreak = s.currentStreak;
+        long bestStreak = s.bestStreak;
 
         String msg =
                 "**Stats for " + target.getName() + "**\n" +
@@ -11,4 +11,39 @@ public class GlobalConfig {
     /** Suggestions thread and DM target are global by your design. */
     public String suggestionsThreadId = "0";
     public String suggestionsNotifyUserId = "0";
+
+    /** Max guild contexts loaded from disk in parallel (size of the guild I/O pool). */
+    public int bootLoadConcurrency = 8;
+
+    /** Max boot resync history fetches in flight at once (keeps us clear of the global REST bucket). */
+    public int bootHistoryConcurrency = 4;
+
+    /**
+     * Snapshot format for the big global stores (stats, achievements): "json" (readable, default) or
+     * "binary" (compact, opt-in). Switching migrates the other format on next boot and renames the old
+     * file to *.migrated.
+     */
+    public String snapshotFormat = "json";
+
+    /** Guild log threads: lines are coalesced into one message per window (ms). */
+    public long logBatchWindowMillis = 2000;
+
+    /** Guild log threads: max buffered lines per guild; beyond that lines are only counted ("+N more"). */
+    public int logQueueCapacity = 50;
+
+    /** Invalid-count deletes are collected per channel for this long (ms), then bulk deleted. */
+    public long deleteBatchWindowMillis = 250;
+
+    /** Count decisions slower than this (gateway receive -> committed, ms) are logged with a per-stage breakdown; 0 = off. */
+    public long slowDecisionMillis = 250;
+
+    /** Invalid counts still not deleted this long after receive (ms) are logged; 0 = off. */
+    public long slowDeleteMillis = 2000;
+
+    /** Console log format: "text" (colored lines, default) or "json" (one JSON object per line, for log shippers). */
+    public String logFormat = "text";
+
+    /** Prometheus-style metrics at http://metricsBindAddress:metricsPort/metrics; port 0 disables it. */
+    public int metricsPort = 9464;
+    public String metricsBindAddress = "127.0.0.1";
 }
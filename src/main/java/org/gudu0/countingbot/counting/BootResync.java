@@ -0,0 +1,227 @@
+package org.gudu0.countingbot.counting;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.gudu0.countingbot.config.GlobalConfig;
+import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.guild.GuildManager;
+import org.gudu0.countingbot.util.BotPaths;
+import org.gudu0.countingbot.util.ConsoleLog;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Boot resync pipeline (runs on ReadyEvent).
+ * <p>
+ * Phases:
+ * 1) dir scan:      list data/guilds/<id>/ (only guilds that already have data are resynced)
+ * 2) config/state:  all contexts load in parallel on the guild I/O pool (capped by bootLoadConcurrency)
+ * 3) history fetch: offline catch-up (replay messages sent while we were down; resync on first run or a
+ *                   huge gap) goes through a small queue with at most bootHistoryConcurrency guilds in
+ *                   flight, so a big bot doesn't dump hundreds of REST calls into JDA's global bucket at once
+ * 4) goal render:   goal service create/attach + first render request, per resynced guild
+ * <p>
+ * Nothing here blocks the JDA event thread; a timing summary is logged when the last guild finishes.
+ */
+public class BootResync extends ListenerAdapter {
+
+    private final GuildManager guilds;
+    private final CountingListener counting;
+    private final GuildGoalsServiceRegistry goalsRegistry;
+    private final int historyConcurrency;
+
+    public BootResync(GuildManager guilds, CountingListener counting, GuildGoalsServiceRegistry goalsRegistry, GlobalConfig cfg) {
+        this.guilds = guilds;
+        this.counting = counting;
+        this.goalsRegistry = goalsRegistry;
+        this.historyConcurrency = Math.max(1, cfg.bootHistoryConcurrency);
+    }
+
+    @Override
+    public void onReady(@NotNull ReadyEvent event) {
+        new Run(event.getJDA()).start();
+    }
+
+    /** One boot pass: owns the fetch queue and the timing counters. */
+    private final class Run {
+        private final JDA jda;
+
+        private final long startNanos = System.nanoTime();
+        private long dirScanNanos;
+        private final AtomicLong loadDoneNanos = new AtomicLong();
+        private final AtomicLong configNanosSum = new AtomicLong();
+        private final AtomicLong stateNanosSum = new AtomicLong();
+        private final AtomicLong historyNanosSum = new AtomicLong();
+        private final AtomicLong historyNanosMax = new AtomicLong();
+        private final AtomicLong goalNanosSum = new AtomicLong();
+        private final AtomicInteger found = new AtomicInteger();
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private int total;
+
+        // History fetch queue
+        private final ConcurrentLinkedQueue<Long> fetchQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        Run(JDA jda) {
+            this.jda = jda;
+        }
+
+        void start() {
+            List<Long> configured = listGuildDirsOnDisk();
+            dirScanNanos = System.nanoTime() - startNanos;
+
+            if (configured.isEmpty()) {
+                ConsoleLog.warn("Resync", "No configured guild folders found in " + BotPaths.GUILDS_DIR + " — skipping boot resync.");
+                return;
+            }
+
+            List<Long> present = new ArrayList<>(configured.size());
+            for (long guildId : configured) {
+                if (jda.getGuildById(guildId) == null) {
+                    ConsoleLog.warn("Resync", "Guild folder exists but bot is not in guildId=" + guildId + " — skipping.");
+                    continue;
+                }
+                present.add(guildId);
+            }
+
+            total = present.size();
+            remaining.set(total);
+            ConsoleLog.info("Resync", "Boot resync for configuredGuilds=" + total
+                    + " (historyConcurrency=" + historyConcurrency + ")");
+            if (total == 0) return;
+
+            // Phase 2: load every context in parallel (the guild I/O pool caps concurrency).
+            for (long guildId : present) {
+                guilds.load(guildId).whenComplete((ctx, err) -> onLoaded(guildId, ctx, err));
+            }
+        }
+
+        private void onLoaded(long guildId, GuildContext ctx, Throwable err) {
+            loadDoneNanos.accumulateAndGet(System.nanoTime() - startNanos, Math::max);
+
+            if (err != null) {
+                ConsoleLog.error("Resync", "guildId=" + guildId + " context load failed: " + err.getMessage(), err);
+                finishOne();
+                return;
+            }
+
+            configNanosSum.addAndGet(ctx.configLoadNanos);
+            stateNanosSum.addAndGet(ctx.stateLoadNanos);
+
+            if (ctx.cfg.countingChannelId == null || ctx.cfg.countingChannelId.isBlank()) {
+                ConsoleLog.warn("Resync", "guildId=" + guildId + " has no countingChannelId configured — skipping.");
+                finishOne();
+                return;
+            }
+
+            fetchQueue.add(guildId);
+            pump();
+        }
+
+        // Phase 3: start queued fetches while under the in-flight cap.
+        private void pump() {
+            while (true) {
+                int n = inFlight.get();
+                if (n >= historyConcurrency) return;
+                if (fetchQueue.isEmpty()) return;
+                if (!inFlight.compareAndSet(n, n + 1)) continue;
+
+                Long guildId = fetchQueue.poll();
+                if (guildId == null) {
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                fetch(guildId);
+            }
+        }
+
+        private void fetch(long guildId) {
+            long t0 = System.nanoTime();
+            counting.catchUpOrResync(jda, guildId, r -> {
+                long took = System.nanoTime() - t0;
+                historyNanosSum.addAndGet(took);
+                historyNanosMax.accumulateAndGet(took, Math::max);
+
+                inFlight.decrementAndGet();
+                pump();
+
+                if (r.found()) {
+                    found.incrementAndGet();
+                    if (ConsoleLog.DEBUG) {
+                        ConsoleLog.debug("Resync", "guildId=" + guildId + " init: last=" + r.number() + " user=" + r.userId());
+                    }
+
+                    // Phase 4: goal service + first render request
+                    long g0 = System.nanoTime();
+                    try {
+                        goalsRegistry.markDirtyOrCreate(guildId);
+                    } catch (Exception e) {
+                        ConsoleLog.error("Resync", "guildId=" + guildId + " goal render failed: " + e.getMessage(), e);
+                    }
+                    goalNanosSum.addAndGet(System.nanoTime() - g0);
+                } else {
+                    ConsoleLog.warn("Resync", "guildId=" + guildId + " init: no valid count found");
+                }
+
+                finishOne();
+            });
+        }
+
+        private void finishOne() {
+            if (remaining.decrementAndGet() == 0) report();
+        }
+
+        private void report() {
+            long totalNanos = System.nanoTime() - startNanos;
+            ConsoleLog.info("Resync",
+                    "Boot timing: guilds=" + total + " found=" + found.get()
+                            + " | dirScan=" + ms(dirScanNanos)
+                            + " | load(wall)=" + ms(loadDoneNanos.get())
+                            + " [config Σ=" + ms(configNanosSum.get())
+                            + ", state Σ=" + ms(stateNanosSum.get()) + "]"
+                            + " | history Σ=" + ms(historyNanosSum.get())
+                            + " max=" + ms(historyNanosMax.get())
+                            + " | goals Σ=" + ms(goalNanosSum.get())
+                            + " | total=" + ms(totalNanos));
+        }
+    }
+
+    private static String ms(long nanos) {
+        return (nanos / 1_000_000) + "ms";
+    }
+
+    // ----------------------------
+    // Disk discovery (configured guilds)
+    // ----------------------------
+
+    private static List<Long> listGuildDirsOnDisk() {
+        Path base = BotPaths.GUILDS_DIR;
+        if (!Files.isDirectory(base)) return List.of();
+
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> s = Files.list(base)) {
+            s.filter(Files::isDirectory).forEach(p -> {
+                String name = p.getFileName().toString();
+                try {
+                    out.add(Long.parseLong(name));
+                } catch (Exception ignored) {
+                    // ignore non-numeric folders
+                }
+            });
+        } catch (Exception e) {
+            ConsoleLog.error("Resync", "Failed listing guild dirs: " + e.getMessage(), e);
+        }
+        return out;
+    }
+}
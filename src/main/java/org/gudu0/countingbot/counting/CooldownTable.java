@@ -0,0 +1,173 @@
+package org.gudu0.countingbot.counting;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.gudu0.countingbot.util.LongLongMap;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * userId -> time of their last VALID count, kept only while it can still block a count.
+ * <p>
+ * Entries live for the guild's counting delay (the TTL). Expiry is a FIFO of (userId, atMillis) in
+ * record order: anything at the head older than the TTL is dropped, unless the user counted again
+ * since (the map then holds a newer time). So the table holds the users who counted in the last
+ * countingDelaySeconds, not everyone who ever counted.
+ * <p>
+ * Serialized as the old {@code {"<userId>": atMillis}} object, minus expired entries; a restart only
+ * forgets cooldowns that had already lapsed.
+ * <p>
+ * Not thread-safe: guarded by the StateStore lock like the rest of {@link CountingState}.
+ */
+@JsonSerialize(using = CooldownTable.Serializer.class)
+@JsonDeserialize(using = CooldownTable.Deserializer.class)
+public final class CooldownTable {
+
+    private static final long DEFAULT_TTL_MS = 2000; // GuildConfig default delay
+
+    private final LongLongMap lastAt = new LongLongMap();
+
+    // FIFO ring of (userId, atMillis), oldest at head.
+    private long[] fifoUser = new long[64];
+    private long[] fifoAt = new long[64];
+    private int head = 0;
+    private int queued = 0;
+
+    private long ttlMs = DEFAULT_TTL_MS;
+
+    /** Sets the cooldown length (the guild's countingDelaySeconds). */
+    public void setTtlMillis(long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    public long ttlMillis() {
+        return ttlMs;
+    }
+
+    /** Records a valid count. */
+    public void record(long userId, long atMillis) {
+        lastAt.put(userId, atMillis);
+        push(userId, atMillis);
+        evict(atMillis);
+    }
+
+    /** Time of the user's last valid count if it is still inside the cooldown window, otherwise -1. */
+    public long lastValidAt(long userId, long nowMillis) {
+        evict(nowMillis);
+        long at = lastAt.get(userId, -1);
+        if (at < 0 || nowMillis - at >= ttlMs) return -1;
+        return at;
+    }
+
+    /** Live (not yet evicted) entries. */
+    public int size() {
+        return lastAt.size();
+    }
+
+    /** Drops every entry whose cooldown has lapsed at {@code nowMillis}. */
+    public void evict(long nowMillis) {
+        while (queued > 0) {
+            long at = fifoAt[head];
+            if (nowMillis - at < ttlMs) return;
+
+            long userId = fifoUser[head];
+            // Only remove if this is still the user's latest count (a newer one sits further back).
+            if (lastAt.get(userId, -1) == at) lastAt.remove(userId);
+
+            head = (head + 1) & (fifoAt.length - 1);
+            queued--;
+        }
+    }
+
+    // ----------------------------
+    // FIFO
+    // ----------------------------
+
+    private void push(long userId, long atMillis) {
+        if (queued == fifoAt.length) grow();
+        int tail = (head + queued) & (fifoAt.length - 1);
+        fifoUser[tail] = userId;
+        fifoAt[tail] = atMillis;
+        queued++;
+    }
+
+    private void grow() {
+        int cap = fifoAt.length;
+        long[] users = new long[cap << 1];
+        long[] ats = new long[cap << 1];
+        for (int i = 0; i < queued; i++) {
+            int j = (head + i) & (cap - 1);
+            users[i] = fifoUser[j];
+            ats[i] = fifoAt[j];
+        }
+        fifoUser = users;
+        fifoAt = ats;
+        head = 0;
+    }
+
+    // ----------------------------
+    // Jackson (same JSON as the old Map<Long, Long>)
+    // ----------------------------
+
+    public static final class Serializer extends JsonSerializer<CooldownTable> {
+        @Override
+        public void serialize(CooldownTable t, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            long now = System.currentTimeMillis();
+            t.evict(now);
+
+            gen.writeStartObject();
+            IOException[] failed = new IOException[1];
+            t.lastAt.forEach((userId, at) -> {
+                if (failed[0] != null || now - at >= t.ttlMs) return;
+                try {
+                    gen.writeFieldName(Long.toString(userId));
+                    gen.writeNumber(at);
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            });
+            if (failed[0] != null) throw failed[0];
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Loads entries as-is; the TTL is applied once the guild config sets it, and on every lookup.
+     * Old state.json files may hold every user ever seen: the FIFO is rebuilt in time order, so
+     * those all drain on the first eviction pass.
+     */
+    public static final class Deserializer extends JsonDeserializer<CooldownTable> {
+        @Override
+        public CooldownTable deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            LongLongMap loaded = new LongLongMap();
+            JsonToken tok = p.currentToken();
+            if (tok == JsonToken.START_OBJECT) tok = p.nextToken();
+            for (; tok == JsonToken.FIELD_NAME; tok = p.nextToken()) {
+                long userId = Long.parseLong(p.currentName());
+                p.nextToken();
+                loaded.put(userId, p.getValueAsLong());
+            }
+
+            // Oldest first, so the FIFO invariant holds.
+            long[][] rows = new long[loaded.size()][];
+            int[] n = {0};
+            loaded.forEach((userId, at) -> rows[n[0]++] = new long[]{at, userId});
+            Arrays.sort(rows, (a, b) -> Long.compare(a[0], b[0]));
+
+            CooldownTable t = new CooldownTable();
+            for (long[] r : rows) {
+                t.lastAt.put(r[1], r[0]);
+                t.push(r[1], r[0]);
+            }
+            return t;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.gudu0.countingbot.counting;
+
+import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.JournalCommitter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log for {@link CountingState} (data/guilds/<id>/state.journal).
+ * <p>
+ * Every state mutation is appended as a fixed-size record and committed by the shared
+ * {@link JournalCommitter}, so an accepted count is on disk within milliseconds instead of
+ * waiting for the next full state.json rewrite.
+ * <p>
+ * Record layout (45 bytes, big endian):
+ * type(1) seq(8) number(8) userId(8) messageId(8) atMillis(8) crc32(4)
+ * <p>
+ * state.json stores the last folded seq ({@link CountingState#journalSeq}); replay skips anything at or
+ * below it, so a crash between "snapshot written" and "journal truncated" is harmless.
+ */
+public final class CountJournal implements JournalCommitter.Committable {
+
+    public static final byte COUNT = 'C';
+    public static final byte STREAK_RESET = 'Z';
+    public static final byte RESYNC = 'R';
+
+    static final int RECORD_BYTES = 1 + 8 * 5 + 4;
+
+    private final Path path;
+    private final String nameForLogs;
+
+    // Guarded by "this": records appended but not yet handed to the committer.
+    private ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 64);
+
+    // Guarded by ioLock: the file itself.
+    private final Object ioLock = new Object();
+    private FileChannel channel;
+
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+
+    public CountJournal(Path path, String nameForLogs) {
+        this.path = path;
+        this.nameForLogs = nameForLogs;
+    }
+
+    // ----------------------------
+    // Replay
+    // ----------------------------
+
+    /**
+     * Applies every record newer than {@code st.journalSeq} to the given state.
+     * Stops at the first torn/corrupt record (a crash mid-write only ever loses the tail) and cuts the
+     * file back to the last good record, so later appends are not hidden behind the garbage.
+     *
+     * @return number of records applied
+     */
+    public int replayInto(CountingState st) {
+        if (!Files.exists(path)) return 0;
+
+        int applied = 0;
+        int good = 0;
+        try {
+            byte[] all = Files.readAllBytes(path);
+            ByteBuffer in = ByteBuffer.wrap(all);
+            CRC32 crc = new CRC32();
+
+            while (in.remaining() >= RECORD_BYTES) {
+                int start = in.position();
+                byte type = in.get();
+                long seq = in.getLong();
+                long number = in.getLong();
+                long userId = in.getLong();
+                long messageId = in.getLong();
+                long atMillis = in.getLong();
+                int storedCrc = in.getInt();
+
+                crc.reset();
+                crc.update(all, start, RECORD_BYTES - 4);
+                if ((int) crc.getValue() != storedCrc) {
+                    ConsoleLog.warn("CountJournal", nameForLogs + " corrupt record at offset " + start + "; ignoring tail.");
+                    break;
+                }
+                good = in.position();
+
+                if (seq <= st.journalSeq) continue;
+
+                switch (type) {
+                    case COUNT -> st.applyCount(number, userId, messageId, atMillis);
+                    case STREAK_RESET -> st.resetStreak(messageId);
+                    case RESYNC -> st.applyResync(number, userId, messageId);
+                    default -> {
+                        ConsoleLog.warn("CountJournal", nameForLogs + " unknown record type " + type + " at offset " + start);
+                        continue;
+                    }
+                }
+                st.journalSeq = seq;
+                applied++;
+            }
+
+            if (good < all.length) {
+                ConsoleLog.warn("CountJournal", nameForLogs + " dropping " + (all.length - good) + " byte(s) of torn tail");
+                synchronized (ioLock) {
+                    openChannel().truncate(good);
+                }
+            }
+        } catch (Exception e) {
+            ConsoleLog.error("CountJournal", "Failed to replay " + nameForLogs + ": " + e.getMessage(), e);
+        }
+        return applied;
+    }
+
+    // ----------------------------
+    // Append (caller holds the StateStore lock)
+    // ----------------------------
+
+    public void append(byte type, long seq, long number, long userId, long messageId, long atMillis) {
+        synchronized (this) {
+            if (buffer.remaining() < RECORD_BYTES) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+
+            int start = buffer.position();
+            buffer.put(type);
+            buffer.putLong(seq);
+            buffer.putLong(number);
+            buffer.putLong(userId);
+            buffer.putLong(messageId);
+            buffer.putLong(atMillis);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, RECORD_BYTES - 4);
+            buffer.putInt((int) crc.getValue());
+        }
+        JournalCommitter.get().requestCommit(this);
+    }
+
+    // ----------------------------
+    // Group commit (committer thread)
+    // ----------------------------
+
+    @Override
+    public void commit() {
+        ByteBuffer toWrite;
+        synchronized (this) {
+            if (buffer.position() == 0) return;
+            toWrite = buffer;
+            toWrite.flip();
+            buffer = ByteBuffer.allocate(toWrite.capacity());
+        }
+
+        synchronized (ioLock) {
+            try {
+                FileChannel ch = openChannel();
+                while (toWrite.hasRemaining()) ch.write(toWrite);
+                ch.force(false);
+            } catch (IOException e) {
+                ConsoleLog.error("CountJournal", nameForLogs + " append failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean markQueued() {
+        return queued.compareAndSet(false, true);
+    }
+
+    @Override
+    public void clearQueued() {
+        queued.set(false);
+    }
+
+    // ----------------------------
+    // Compaction (caller holds the StateStore lock, right after state.json was written)
+    // ----------------------------
+
+    /**
+     * Drops everything journaled so far. Only call once a snapshot containing those records is on disk.
+     * Records written concurrently by the committer are at or below the snapshot seq, so replay skips them.
+     */
+    public void truncate() {
+        synchronized (this) {
+            buffer.clear();
+        }
+        synchronized (ioLock) {
+            try {
+                if (channel == null && !Files.exists(path)) return;
+                FileChannel ch = openChannel();
+                ch.truncate(0);
+                ch.force(false);
+            } catch (IOException e) {
+                ConsoleLog.error("CountJournal", nameForLogs + " truncate failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
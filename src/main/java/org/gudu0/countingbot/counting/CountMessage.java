@@ -0,0 +1,21 @@
+package org.gudu0.countingbot.counting;
+
+/**
+ * What {@link CountingEngine} needs from a counting-channel message, whatever it came from
+ * (a JDA Message, a catch-up page, a recorded or synthetic stream).
+ */
+public interface CountMessage {
+
+    /** Snowflake; ids only grow within a channel (the engine skips anything at or below its cursor). */
+    long messageId();
+
+    /** Compared against the guild's configured countingChannelId. */
+    String channelId();
+
+    long authorId();
+
+    String authorName();
+
+    /** Raw content; never trimmed (whitespace makes a count invalid). */
+    String content();
+}
@@ -0,0 +1,61 @@
+package org.gudu0.countingbot.counting;
+
+/**
+ * Strict count syntax, parsed in one pass with no allocation.
+ * <p>
+ * Valid: a non-negative integer written with plain digits ("1234") or with comma thousands
+ * separators ("1,234"); no whitespace, signs or leading zeros (except "0" itself).
+ * When commas are used, the first group has 1-3 digits and every later group exactly 3.
+ * <p>
+ * Returns the value, {@link #INVALID} for anything that is not count syntax, or {@link #OVERFLOW}
+ * for well-formed numbers past Long.MAX_VALUE (so callers can tell "not a count" from "too big").
+ */
+public final class CountParser {
+
+    public static final long INVALID = -1;
+    public static final long OVERFLOW = -2;
+
+    private static final long MAX_DIV_10 = Long.MAX_VALUE / 10;
+    private static final int MAX_LAST_DIGIT = (int) (Long.MAX_VALUE % 10);
+
+    private CountParser() {}
+
+    public static long parse(CharSequence s) {
+        if (s == null) return INVALID;
+        int len = s.length();
+        if (len == 0) return INVALID;
+        if (s.charAt(0) == '0' && len > 1) return INVALID; // no leading zeros unless the whole content is "0"
+
+        long value = 0;
+        boolean overflow = false;
+        boolean sawComma = false;
+        int run = 0; // digits since the start or the last comma
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                run++;
+                if (sawComma && run > 3) return INVALID;
+
+                if (!overflow) {
+                    int d = c - '0';
+                    if (value > MAX_DIV_10 || (value == MAX_DIV_10 && d > MAX_LAST_DIGIT)) {
+                        overflow = true; // keep validating: syntax errors still win over "too big"
+                    } else {
+                        value = value * 10 + d;
+                    }
+                }
+            } else if (c == ',') {
+                // First group 1-3 digits, later groups exactly 3.
+                if (run == 0 || run > 3 || (sawComma && run != 3)) return INVALID;
+                sawComma = true;
+                run = 0;
+            } else {
+                return INVALID; // anything not a digit or comma
+            }
+        }
+
+        if (run == 0 || (sawComma && run != 3)) return INVALID;
+        return overflow ? OVERFLOW : value;
+    }
+}
@@ -0,0 +1,311 @@
+package org.gudu0.countingbot.counting;
+
+import org.gudu0.countingbot.achievements.AchievementTrigger;
+import org.gudu0.countingbot.achievements.AchievementsService;
+import org.gudu0.countingbot.counting.DecisionStats.Stage;
+import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.logging.LogService;
+import org.gudu0.countingbot.metrics.Counter;
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.stats.StatsStore;
+import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.LatencyHistogram;
+
+import java.util.function.LongConsumer;
+
+/**
+ * The counting rules, independent of Discord.
+ * <p>
+ * Judges one {@link CountMessage} against the guild's state: parse, state snapshot, rule checks, then
+ * commit (state, stats, achievements, goal dirtying). Everything that has to reach the outside world
+ * (deleting an invalid count, a line in the guild's log thread) goes through its {@link Transport}.
+ * CountingListener runs it with a JDA transport; the load generator (src/loadgen) with a fake one.
+ * <p>
+ * Must be called on the guild's mailbox (see GuildManager#withContext), like everything else that
+ * reads-then-writes guild state.
+ */
+public final class CountingEngine<M extends CountMessage> {
+
+    /** Pass as {@code receivedNanos} for messages that weren't just received live (catch-up replay). */
+    public static final long UNTRACED = Long.MIN_VALUE;
+
+    /** Side effects outside the bot's own state. */
+    public interface Transport<M extends CountMessage> {
+        /** Removes an invalid count; {@code onDeleted} gets the System.nanoTime() Discord confirmed it at. */
+        void delete(GuildContext ctx, long guildId, M msg, LongConsumer onDeleted);
+
+        /** One line for the guild's log thread. */
+        void log(long guildId, LogService.Kind kind, String line);
+    }
+
+    public enum Outcome {
+        SKIPPED("skipped"),   // not the counting channel, already processed, or an ignored command
+        ACCEPTED("accept"),
+        NOT_INTEGER("not_integer"),
+        TOO_LARGE("too_large"),
+        WRONG_NUMBER("wrong_number"),
+        SAME_USER("same_user"),
+        COOLDOWN("cooldown");
+
+        public final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private static final long GUDU_ID = 733113260496126053L;
+
+    // Metrics (see Metrics); looked up once, hot path only increments.
+    private static final Counter SEEN = Metrics.counter("countingbot_messages_seen_total",
+            "Counting-channel messages judged (live and catch-up replay)");
+    private static final Counter[] BY_OUTCOME = new Counter[Outcome.values().length];
+    private static final LatencyHistogram STATE_LOCK_WAIT = Metrics.histogram("countingbot_lock_wait_seconds",
+            "Time spent waiting to enter a lock on the counting path (sampled)", "lock", "state", 1e9, Metrics.NANOS_BUCKETS);
+
+    static {
+        for (Outcome o : Outcome.values()) {
+            if (o == Outcome.SKIPPED) continue;
+            BY_OUTCOME[o.ordinal()] = o == Outcome.ACCEPTED
+                    ? Metrics.counter("countingbot_counts_accepted_total", "Valid counts accepted")
+                    : Metrics.counter("countingbot_counts_rejected_total", "Counting-channel messages rejected, by reason", "reason", o.tag);
+        }
+    }
+
+    private final StatsStore stats;
+    private final GuildGoalsServiceRegistry goalsRegistry;
+    private final AchievementsService achievements;
+    private final Transport<M> transport;
+    private final DecisionTrace.SlowLog slowLog;
+
+    // handle() is never re-entered on a thread, so each mailbox thread reuses one trace.
+    private static final ThreadLocal<DecisionTrace> TRACE = ThreadLocal.withInitial(DecisionTrace::new);
+
+    /**
+     * @param stats              bot-wide stats (the guild's own StatsStore comes from its context)
+     * @param slowDecisionMillis log decisions slower than this (receive -> committed); 0 = off
+     * @param slowDeleteMillis   log invalid counts still visible this long after receive; 0 = off
+     */
+    public CountingEngine(StatsStore stats,
+                          GuildGoalsServiceRegistry goalsRegistry,
+                          AchievementsService achievements,
+                          Transport<M> transport,
+                          long slowDecisionMillis,
+                          long slowDeleteMillis) {
+        this.stats = stats;
+        this.goalsRegistry = goalsRegistry;
+        this.achievements = achievements;
+        this.transport = transport;
+        this.slowLog = DecisionTrace.SlowLog.ofMillis(slowDecisionMillis, slowDeleteMillis);
+    }
+
+    public static boolean isCountingChannel(GuildContext ctx, CountMessage msg) {
+        String countingChannelId = ctx.cfg.countingChannelId;
+        return countingChannelId != null && !countingChannelId.isBlank() && msg.channelId().equals(countingChannelId);
+    }
+
+    /**
+     * The counting rules for one message. {@code atMillis} is when it counts as sent: now for live
+     * messages, the message timestamp for catch-up replay (so cooldowns and stats match what happened).
+     * {@code receivedNanos} is the System.nanoTime() the transport received it at (decision latency is
+     * traced from there), or {@link #UNTRACED}.
+     * Messages at or before the guild's last processed id are skipped, so a replay never judges a
+     * message twice.
+     */
+    public Outcome handle(GuildContext ctx, M msg, long atMillis, long receivedNanos) {
+        // Only active if this guild configured a counting channel
+        if (!isCountingChannel(ctx, msg)) return Outcome.SKIPPED;
+
+        synchronized (ctx.stateStore.lock) {
+            if (msg.messageId() <= ctx.stateStore.state().lastProcessedMessageId) return Outcome.SKIPPED;
+            ctx.stateStore.markProcessed(msg.messageId());
+        }
+
+        //Gudu Check
+        if (msg.authorId() == GUDU_ID) {
+            //Special Check
+            if (msg.content().startsWith("!")) {
+                return Outcome.SKIPPED;
+            }
+        }
+
+        SEEN.inc();
+        DecisionTrace t = receivedNanos == UNTRACED
+                ? TRACE.get().begin(System.nanoTime(), null)
+                : TRACE.get().begin(receivedNanos, slowLog);
+        t.start(ctx, ctx.guildId, msg.messageId());
+        Outcome o = decide(ctx, ctx.guildId, msg, atMillis, t);
+        BY_OUTCOME[o.ordinal()].inc();
+        t.decided(o.tag);
+        return o;
+    }
+
+    private Outcome decide(GuildContext ctx, long guildId, M msg, long atMillis, DecisionTrace t) {
+        long number = CountParser.parse(msg.content()); // DO NOT trim; whitespace is invalid
+        t.mark(Stage.PARSE);
+
+        if (number < 0) {
+            boolean tooLarge = number == CountParser.OVERFLOW;
+            // Not a strict number (or past Long.MAX_VALUE) -> invalid (delete if enforced)
+            logDecision(guildId, tooLarge ? "INVALID (number too large)" : "INVALID (not strict integer)", msg);
+            markIncorrect(ctx, guildId, msg, atMillis, t);
+            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg, t);
+            return tooLarge ? Outcome.TOO_LARGE : Outcome.NOT_INTEGER;
+        }
+        long authorId = msg.authorId();
+
+        // Pull state under lock (we need a consistent snapshot for rules)
+        long expected;
+        long lastNumber;
+        long lastUserId;
+        long lastTime;
+
+        long waitStart = Metrics.sampled() ? System.nanoTime() : 0; // 0: not timed
+        synchronized (ctx.stateStore.lock) {
+            if (waitStart != 0) STATE_LOCK_WAIT.record(System.nanoTime() - waitStart);
+            CountingState st = ctx.stateStore.state();
+            lastNumber = st.lastNumber;
+            lastUserId = st.lastUserId;
+            expected = st.lastNumber + 1;
+            lastTime = st.userLastValidCountAt.lastValidAt(authorId, atMillis); // -1 = no active cooldown
+        }
+        t.mark(Stage.SNAPSHOT);
+
+        // init start behavior
+        if (lastNumber == -1) {
+            t.mark(Stage.RULES);
+            accept(ctx, guildId, number, msg, atMillis, "ACCEPT (init start)", t);
+            return Outcome.ACCEPTED;
+        }
+
+        // Wrong number
+        if (number != expected) {
+            logDecision(guildId, "INVALID (expected " + expected + ", got " + number + ")", msg);
+            t.mark(Stage.RULES);
+
+            // Saboteur hook: someone caused someone else to fail (same as before)
+            if (number == lastNumber && lastUserId != 0 && authorId != lastUserId) {
+                achievements.unlockById(guildId, lastUserId, "cause_fail");
+                t.mark(Stage.ACHIEVEMENTS);
+            }
+
+            markIncorrect(ctx, guildId, msg, atMillis, t);
+            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg, t);
+            return Outcome.WRONG_NUMBER;
+        }
+
+        // Same user twice
+        if (authorId == lastUserId) {
+            logDecision(guildId, "INVALID (same user twice)", msg);
+            t.mark(Stage.RULES);
+            markIncorrect(ctx, guildId, msg, atMillis, t);
+            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg, t);
+            return Outcome.SAME_USER;
+        }
+
+        // Cooldown (only between VALID counts)
+        if (lastTime >= 0) {
+            long minGapMs = ctx.cfg.countingDelaySeconds * 1000L;
+            if (atMillis - lastTime < minGapMs) {
+                logDecision(guildId, "INVALID (cooldown " + ctx.cfg.countingDelaySeconds + "s)", msg);
+                t.mark(Stage.RULES);
+
+                // Not shaming cooldown violations (by design)
+                if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg, t);
+                return Outcome.COOLDOWN;
+            }
+        }
+
+        t.mark(Stage.RULES);
+        accept(ctx, guildId, number, msg, atMillis, "ACCEPT", t);
+        return Outcome.ACCEPTED;
+    }
+
+    // ----------------------------
+    // Core actions
+    // ----------------------------
+
+    private void accept(GuildContext ctx, long guildId, long number, M msg, long now, String reason, DecisionTrace t) {
+        long authorId = msg.authorId();
+
+        // Update counting state (guild-local)
+        synchronized (ctx.stateStore.lock) {
+            ctx.stateStore.recordCount(number, authorId, msg.messageId(), now);
+        }
+
+        // Update stats (bot-wide + this guild, per-user striped lock)
+        recordCorrect(stats, authorId, now);
+        recordCorrect(ctx.statsStore, authorId, now);
+        t.mark(Stage.COMMIT);
+
+        achievements.onTrigger(AchievementTrigger.VALID_COUNT, guildId, authorId);
+
+        // Goal winner check (guild-local goal)
+        synchronized (ctx.goalsStore.lock) {
+            if (ctx.goalsStore.state().active && number == ctx.goalsStore.state().target) {
+                achievements.unlockById(guildId, authorId, "goal_winner");
+            }
+        }
+        t.mark(Stage.ACHIEVEMENTS);
+
+        goalsRegistry.markDirtyOrCreate(guildId);
+        t.mark(Stage.GOALS);
+
+        logDecision(guildId, reason, msg);
+    }
+
+    private void markIncorrect(GuildContext ctx, long guildId, M msg, long now, DecisionTrace t) {
+        recordIncorrect(stats, msg.authorId(), now);
+        recordIncorrect(ctx.statsStore, msg.authorId(), now);
+
+        synchronized (ctx.stateStore.lock) {
+            ctx.stateStore.recordStreakReset(msg.messageId());
+        }
+        t.mark(Stage.COMMIT);
+
+        achievements.onTrigger(AchievementTrigger.INVALID_COUNT, guildId, msg.authorId());
+        t.mark(Stage.ACHIEVEMENTS);
+        goalsRegistry.markDirtyIfExists(guildId);
+        t.mark(Stage.GOALS);
+    }
+
+    private static void recordCorrect(StatsStore s, long userId, long now) {
+        s.data().update(userId, us -> {
+            us.onCorrect(now);
+            us.posCounts++;
+        });
+        s.markDirty();
+    }
+
+    private static void recordIncorrect(StatsStore s, long userId, long now) {
+        s.data().update(userId, us -> us.onIncorrect(now));
+        s.markDirty();
+    }
+
+    private void delete(GuildContext ctx, long guildId, M msg, DecisionTrace t) {
+        transport.delete(ctx, guildId, msg, t.deleteQueued());
+
+        transport.log(guildId, LogService.Kind.DELETION, "Deleted invalid count by " + msg.authorName() + ": " + parseDeleteMessage(msg.content()));
+    }
+
+    private static String parseDeleteMessage(String msg) {
+        if (msg == null) return "";
+
+        return msg
+            .replaceAll("https?://\\S+", "<>")
+            .replaceAll("www\\.\\S+", "<>")
+            .replaceAll("\\s{2,}", "<>")
+            .trim();
+    }
+
+    private static void logDecision(long guildId, String reason, CountMessage msg) {
+        ConsoleLog.at(ConsoleLog.Level.DEBUG, "Counting")
+                .kv("guildId", guildId)
+                .kv("userId", msg.authorId())
+                .kv("decision", reason)
+                .kv("name", msg.authorName())
+                .kv("content", msg.content())
+                .log(reason);
+    }
+}
@@ -1,92 +1,104 @@
 package org.gudu0.countingbot.counting;
 
 import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
-import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.events.session.SessionRecreateEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
-import org.gudu0.countingbot.achievements.AchievementTrigger;
 import org.gudu0.countingbot.achievements.AchievementsService;
 import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
 import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildManager;
 import org.gudu0.countingbot.logging.LogService;
 import org.gudu0.countingbot.stats.StatsStore;
-import org.gudu0.countingbot.stats.UserStats;
-import org.gudu0.countingbot.util.BotPaths;
 import org.gudu0.countingbot.util.ConsoleLog;
 import org.jetbrains.annotations.NotNull;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
+import java.util.function.LongConsumer;
 
+/**
+ * JDA side of counting: routes counting-channel messages to the guild's mailbox and into
+ * {@link CountingEngine} (which holds the rules), and owns resync, offline catch-up and deletes.
+ */
 public class CountingListener extends ListenerAdapter {
 
     private static final int RESYNC_HISTORY = 3;
-    private static final long EVE_ID = 1466175543564304596L;
-    private static final long BEACON_ID = 1468028192517259385L;
+    // When the last RESYNC_HISTORY messages hold no count, scan deeper before resetting to -1.
+    private static final HistoryScan.Options RESYNC_FALLBACK = new HistoryScan.Options(10, 0);
+    // Offline catch-up replays at most this many pages of 100; a bigger gap falls back to resync.
+    private static final int CATCH_UP_MAX_PAGES = 50;
+    private static final long DEFAULT_DELETE_BATCH_WINDOW_MS = 250;
+    private static final long DEFAULT_SLOW_DECISION_MS = 250;
+    private static final long DEFAULT_SLOW_DELETE_MS = 2_000;
 
     private final GuildManager guilds;
-    private final StatsStore stats;
     private final LogService logs;
     private final GuildGoalsServiceRegistry goalsRegistry;
-    private final AchievementsService achievements;
+    private final DeletionBatcher deletes;
+    private final CountingEngine<JdaMessage> engine;
+
+    // guildId -> running deep resync (at most one per guild)
+    private final ConcurrentHashMap<Long, HistoryScan> scans = new ConcurrentHashMap<>();
+    // guildId -> running offline catch-up; live counting messages wait in it until the gap is replayed
+    private final ConcurrentHashMap<Long, CatchUpState> catchUps = new ConcurrentHashMap<>();
+    // Guilds caught up since the current gateway session started (cleared on session recreate)
+    private final Set<Long> caughtUp = ConcurrentHashMap.newKeySet();
+
+    /** Mailbox-confined once registered. */
+    private static final class CatchUpState {
+        final List<Held> held = new ArrayList<>();
+        final List<Consumer<ResyncResult>> waiters = new ArrayList<>();
+    }
 
     public CountingListener(GuildManager guilds,
                             StatsStore stats,
                             LogService logs,
                             GuildGoalsServiceRegistry goalsRegistry,
                             AchievementsService achievements) {
+        this(guilds, stats, logs, goalsRegistry, achievements, DEFAULT_DELETE_BATCH_WINDOW_MS,
+                DEFAULT_SLOW_DECISION_MS, DEFAULT_SLOW_DELETE_MS);
+    }
+
+    /**
+     * @param slowDecisionMillis log decisions slower than this (gateway receive -> committed); 0 = off
+     * @param slowDeleteMillis   log invalid counts still visible this long after receive; 0 = off
+     */
+    public CountingListener(GuildManager guilds,
+                            StatsStore stats,
+                            LogService logs,
+                            GuildGoalsServiceRegistry goalsRegistry,
+                            AchievementsService achievements,
+                            long deleteBatchWindowMillis,
+                            long slowDecisionMillis,
+                            long slowDeleteMillis) {
         this.guilds = guilds;
-        this.stats = stats;
         this.logs = logs;
         this.goalsRegistry = goalsRegistry;
-        this.achievements = achievements;
-    }
-
-    @Override
-    public void onReady(@NotNull ReadyEvent event) {
-        // On boot: resync ONLY guilds that already have data/guilds/<id>/ on disk.
-        // (This avoids creating folders for every guild automatically.)
-        List<Long> configured = listGuildDirsOnDisk();
-
-        if (configured.isEmpty()) {
-            ConsoleLog.warn("Resync", "No configured guild folders found in " + BotPaths.GUILDS_DIR + " — skipping boot resync.");
-            return;
-        }
-
-        ConsoleLog.info("Resync", "Boot resync for configuredGuilds=" + configured.size());
-
-        for (long guildId : configured) {
-            if (event.getJDA().getGuildById(guildId) == null) {
-                ConsoleLog.warn("Resync", "Guild folder exists but bot is not in guildId=" + guildId + " — skipping.");
-                continue;
+        this.deletes = new DeletionBatcher(deleteBatchWindowMillis, CountingListener::onDeleteFailed);
+        this.engine = new CountingEngine<>(stats, goalsRegistry, achievements, new CountingEngine.Transport<>() {
+            @Override
+            public void delete(GuildContext ctx, long guildId, JdaMessage m, LongConsumer onDeleted) {
+                // Batched per channel (bulk delete during bursts); failures come back through onDeleteFailed.
+                deletes.delete(ctx, guildId, m.msg, onDeleted);
             }
 
-            GuildContext ctx = guilds.get(guildId);
-            if (ctx.cfg.countingChannelId == null || ctx.cfg.countingChannelId.isBlank()) {
-                ConsoleLog.warn("Resync", "guildId=" + guildId + " has no countingChannelId configured — skipping.");
-                continue;
+            @Override
+            public void log(long guildId, LogService.Kind kind, String line) {
+                logs.log(guildId, kind, line);
             }
+        }, slowDecisionMillis, slowDeleteMillis);
+    }
 
-            resyncNow(event.getJDA(), guildId, r -> {
-                if (r.found()) {
-
-                    if (ConsoleLog.DEBUG) {
-                        ConsoleLog.debug("Resync", "guildId=" + guildId + " init: last=" + r.number() + " user=" + r.userId());
-                    }
-
-                } else {
-                    ConsoleLog.warn("Resync", "guildId=" + guildId + " init: no valid count found");
-                }
-            });
-        }
+    public DeletionBatcher deletes() {
+        return deletes;
     }
 
     @Override
@@ -94,100 +106,50 @@ public class CountingListener extends ListenerAdapter {
         if (!event.isFromGuild()) return;
 
         long guildId = event.getGuild().getIdLong();
-        GuildContext ctx = guilds.get(guildId);
-
-        // Only active if this guild configured a counting channel
-        String countingChannelId = ctx.cfg.countingChannelId;
-        if (countingChannelId == null || countingChannelId.isBlank()) return;
-        if (!event.getChannel().getId().equals(countingChannelId)) return;
+        long receivedNanos = System.nanoTime();
 
+        // Runs on the guild's mailbox: never blocks the gateway thread, and the check-then-accept below
+        // can't interleave with another message (or delete/resync) for the same guild.
         Message msg = event.getMessage();
-
-        //Gudu Check
-        if (msg.getAuthor().getIdLong() == 733113260496126053L){
-            //Special Check
-            String gudumsg = msg.getContentRaw();
-            if (gudumsg.startsWith("!")){
-                return;
-            }
-        }
-
-        Parsed parsed = parseStrictCount(msg);
-
-        if (parsed == null) {
-            // Not a strict number -> invalid (delete if enforced)
-            logDecision(guildId, "INVALID (not strict integer)", msg);
-            markIncorrect(ctx, guildId, msg);
-            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg);
-            return;
-        }
-
-        // Pull state under lock (we need a consistent snapshot for rules)
-        long expected;
-        long lastNumber;
-        long lastUserId;
-        Long lastTime;
-
-        synchronized (ctx.stateStore.lock) {
-            CountingState st = ctx.stateStore.state();
-            lastNumber = st.lastNumber;
-            lastUserId = st.lastUserId;
-            expected = st.lastNumber + 1;
-            lastTime = st.userLastValidCountAt.get(parsed.authorId);
-        }
-
-        // init start behavior
-        if (lastNumber == -1) {
-            accept(ctx, guildId, parsed, msg, "ACCEPT (init start)");
-            return;
-        }
-
-        // Wrong number
-        if (parsed.number != expected) {
-
-            logDecision(guildId, "INVALID (expected " + expected + ", got " + parsed.number + ")", msg);
-
-            // Saboteur hook: someone caused someone else to fail (same as before)
-            if (parsed.number == lastNumber && lastUserId != 0 && parsed.authorId != lastUserId) {
-                achievements.unlockById(guildId, lastUserId, "cause_fail");
+        guilds.withContext(guildId, ctx -> {
+            JdaMessage m = new JdaMessage(msg);
+            if (CountingEngine.isCountingChannel(ctx, m) && !caughtUp.contains(guildId)) {
+                // First count since (re)connect: replay the gap first, judge this one after it, in order.
+                startCatchUp(event.getJDA(), ctx, guildId, null);
+                CatchUpState st = catchUps.get(guildId);
+                if (st != null) {
+                    st.held.add(new Held(m, receivedNanos));
+                    return;
+                }
             }
+            engine.handle(ctx, m, System.currentTimeMillis(), receivedNanos);
+        });
+    }
 
-            markIncorrect(ctx, guildId, msg);
-            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg);
-            return;
-        }
-
-        // Same user twice
-        if (parsed.authorId == lastUserId) {
-            logDecision(guildId, "INVALID (same user twice)", msg);
-            markIncorrect(ctx, guildId, msg);
-            if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg);
-            return;
-        }
-
-        // Cooldown (only between VALID counts)
-        if (lastTime != null) {
-            long now = System.currentTimeMillis();
-            long minGapMs = ctx.cfg.countingDelaySeconds * 1000L;
-            if (now - lastTime < minGapMs) {
-                logDecision(guildId, "INVALID (cooldown " + ctx.cfg.countingDelaySeconds + "s)", msg);
-
-                // Not shaming cooldown violations (by design)
-                if (ctx.cfg.enforceDelete) delete(ctx, guildId, msg);
-                return;
-            }
+    @Override
+    public void onSessionRecreate(@NotNull SessionRecreateEvent event) {
+        // Events between the old and new session are gone for good; every guild has to catch up again.
+        caughtUp.clear();
+        int started = 0;
+        for (Guild g : event.getJDA().getGuildCache()) {
+            long guildId = g.getIdLong();
+            GuildContext ctx = guilds.getIfLoaded(guildId);
+            if (ctx == null || ctx.cfg.countingChannelId == null || ctx.cfg.countingChannelId.isBlank()) continue;
+            guilds.withContext(guildId, c -> startCatchUp(event.getJDA(), c, guildId, null));
+            started++;
         }
-
-        accept(ctx, guildId, parsed, msg, "ACCEPT");
+        ConsoleLog.info("CatchUp", "Gateway session recreated; catching up " + started + " guild(s)");
     }
 
     @Override
     public void onMessageDelete(MessageDeleteEvent event) {
-        if (event.getGuild() == null) return;
+        if (!event.isFromGuild()) return;
 
         long guildId = event.getGuild().getIdLong();
-        GuildContext ctx = guilds.get(guildId);
+        guilds.withContext(guildId, ctx -> handleDelete(ctx, guildId, event));
+    }
 
+    private void handleDelete(GuildContext ctx, long guildId, MessageDeleteEvent event) {
         String countingChannelId = ctx.cfg.countingChannelId;
         if (countingChannelId == null || countingChannelId.isBlank()) return;
 
@@ -204,11 +166,10 @@ public class CountingListener extends ListenerAdapter {
         if (!shouldResync) return;
 
         ConsoleLog.warn("Counting", "guildId=" + guildId + " last count message deleted (or unknown). Resyncing...");
-        logs.log(guildId, "Last accepted count was deleted; global streak reset and resync triggered.");
+        logs.log(guildId, LogService.Kind.RESYNC, "Last accepted count was deleted; global streak reset and resync triggered.");
 
         synchronized (ctx.stateStore.lock) {
-            ctx.stateStore.state().globalStreakCurrent = 0;
-            ctx.stateStore.markDirty();
+            ctx.stateStore.recordStreakReset();
         }
 
         goalsRegistry.markDirtyIfExists(guildId);
@@ -225,259 +186,330 @@ public class CountingListener extends ListenerAdapter {
     }
 
     // ----------------------------
-    // Core actions
+    // Deletes
     // ----------------------------
 
-    private void accept(GuildContext ctx, long guildId, Parsed parsed, Message msg, String reason) {
-        long now = System.currentTimeMillis();
+    private static void onDeleteFailed(GuildContext ctx, long guildId, Throwable err) {
+        // If deletion is enabled but now failing, permanently disable it.
+        synchronized (ctx) {
+            if (ctx.cfg.enforceDelete) {
+                ctx.cfg.enforceDelete = false;
+                try {
+                    ctx.configStore.save();
+                    ConsoleLog.warn("Counting",
+                            "Auto-disabled enforceDelete for guildId=" + guildId +
+                                    " due to delete failure: " + err.getMessage());
+                } catch (Exception e) {
+                    ConsoleLog.error("Counting",
+                            "Failed to save config after auto-disabling enforceDelete guildId=" + guildId +
+                                    ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
 
-        // Update counting state (guild-local)
-        synchronized (ctx.stateStore.lock) {
-            CountingState st = ctx.stateStore.state();
-            st.lastNumber = parsed.number;
-            st.lastUserId = parsed.authorId;
-            st.lastMessageId = msg.getIdLong();
-            st.userLastValidCountAt.put(parsed.authorId, now);
+    // ----------------------------
+    // Resync (guild-specific)
+    // ----------------------------
 
-            st.globalStreakCurrent++;
-            if (st.globalStreakCurrent > st.globalStreakBest) st.globalStreakBest = st.globalStreakCurrent;
+    public void resyncNow(JDA jda, long guildId, Consumer<ResyncResult> cb) {
+        resyncState(jda, guildId, r -> {
+            if (r.found()) goalsRegistry.markDirtyOrCreate(guildId);
+            cb.accept(r);
+        });
+    }
+
+    /**
+     * Same as {@link #resyncNow} but only rebuilds counting state (no goal render).
+     * Boot uses this so the goal step can be timed on its own.
+     */
+    public void resyncState(JDA jda, long guildId, Consumer<ResyncResult> cb) {
+        GuildContext ctx = guilds.get(guildId);
 
-            ctx.stateStore.markDirty();
+        TextChannel ch = countingChannel(jda, guildId, ctx);
+        if (ch == null) {
+            cb.accept(new ResyncResult(false, -1, 0, 0));
+            return;
         }
 
-        // Update global stats (bot-wide)
-        synchronized (stats.lock) {
-            UserStats us = stats.data().getOrCreate(parsed.authorId);
-            us.onCorrect(now);
-            us.posCounts++;
-            stats.markDirty();
+        if (ConsoleLog.DEBUG) {
+            ConsoleLog.debug("Resync", "guildId=" + guildId + " Starting resync (retrievePast=" + RESYNC_HISTORY + ") channelId=" + ch.getId());
         }
 
-        achievements.onTrigger(AchievementTrigger.VALID_COUNT, guildId, parsed.authorId);
+        // The result is applied on the guild's mailbox so it can't interleave with a count decision.
+        ch.getHistory().retrievePast(RESYNC_HISTORY).queue(history -> guilds.withContext(guildId, c -> {
+            Parsed found = null;
+            Message foundMsg = null;
 
-        // Goal winner check (guild-local goal)
-        synchronized (ctx.goalsStore.lock) {
-            if (ctx.goalsStore.state().active && parsed.number == ctx.goalsStore.state().target) {
-                achievements.unlockById(guildId, parsed.authorId, "goal_winner");
+            for (Message m : history) {
+                long n = CountParser.parse(m.getContentRaw());
+                if (n >= 0) {
+                    found = new Parsed(n, m.getAuthor().getIdLong());
+                    foundMsg = m;
+                    if (ConsoleLog.DEBUG) {
+                        ConsoleLog.debug("Resync", "guildId=" + guildId + " Found last valid: n=" + found.number + " userId=" + found.authorId + " msgId=" + foundMsg.getId());
+                    }
+                    break;
+                }
             }
-        }
 
-        goalsRegistry.markDirtyOrCreate(guildId);
+            if (found == null && history.size() >= RESYNC_HISTORY) {
+                // Only chatter up top (or counts deleted while we were down): look further back first.
+                long atStart = lastMessageId(ctx);
+                startScan(ch, guildId, ctx, atStart, RESYNC_FALLBACK, null,
+                        r -> cb.accept(new ResyncResult(r.found(), r.number(), r.userId(), r.messageId())));
+                return;
+            }
 
-        logDecision(guildId, reason, msg);
-    }
+            if (found == null) {
+                synchronized (ctx.stateStore.lock) {
+                    ctx.stateStore.recordResync(-1, 0, 0);
+                }
+                ConsoleLog.warn("Resync", "guildId=" + guildId + " No valid count found in recent history");
+                cb.accept(new ResyncResult(false, -1, 0, 0));
+                return;
+            }
 
-    private void markIncorrect(GuildContext ctx, long guildId, Message msg) {
-        long now = System.currentTimeMillis();
+            synchronized (ctx.stateStore.lock) {
+                ctx.stateStore.recordResync(found.number, found.authorId, foundMsg.getIdLong());
+            }
 
-        synchronized (stats.lock) {
-            stats.data().getOrCreate(msg.getAuthor().getIdLong()).onIncorrect(now);
-            stats.markDirty();
-        }
+            cb.accept(new ResyncResult(true, found.number, found.authorId, foundMsg.getIdLong()));
+        }), err -> {
+            ConsoleLog.error("Resync", "guildId=" + guildId + " History fetch failed: " + err.getMessage(), err);
+            cb.accept(new ResyncResult(false, -1, 0, 0));
+        });
+    }
 
-        synchronized (ctx.stateStore.lock) {
-            ctx.stateStore.state().globalStreakCurrent = 0;
-            ctx.stateStore.markDirty();
+    /**
+     * Deep resync: pages backward through the counting channel (see {@link HistoryScan}) and applies
+     * the result on the guild's mailbox. Only one scan runs per guild: while one is running (deep, or the
+     * quick resync's fallback) this reports {@link HistoryScan.Status#BUSY} and starts nothing.
+     * <p>
+     * State is only reset to "no count" when the scan reached the start of the channel; a capped,
+     * cancelled or failed scan leaves it alone. If a count is accepted while the scan runs, live state
+     * wins and the scan result is dropped (reported as {@link HistoryScan.Status#SUPERSEDED}).
+     *
+     * @return the running scan, or null if nothing was started ({@code cb} got FAILED or BUSY)
+     */
+    public HistoryScan deepResync(JDA jda, long guildId, HistoryScan.Options opts,
+                                  Consumer<HistoryScan.Progress> progress, Consumer<HistoryScan.Result> cb) {
+        GuildContext ctx = guilds.get(guildId);
+        TextChannel ch = countingChannel(jda, guildId, ctx);
+        if (ch == null) {
+            cb.accept(new HistoryScan.Result(HistoryScan.Status.FAILED, -1, 0, 0, 0, 0, 0));
+            return null;
         }
 
-        achievements.onTrigger(AchievementTrigger.INVALID_COUNT, guildId, msg.getAuthor().getIdLong());
-        goalsRegistry.markDirtyIfExists(guildId);
+        return startScan(ch, guildId, ctx, lastMessageId(ctx), opts, progress, r -> {
+            if (r.found()) goalsRegistry.markDirtyOrCreate(guildId);
+            cb.accept(r);
+        });
     }
 
-    private void delete(GuildContext ctx, long guildId, Message msg) {
-        msg.delete().queue(
-                ok -> { },
-                err -> {
-                    ConsoleLog.error("Counting", "guildId=" + guildId + " delete failed: " + err.getMessage(), err);
-
-                    // If deletion is enabled but now failing, permanently disable it.
-                    synchronized (ctx) {
-                        if (ctx.cfg.enforceDelete) {
-                            ctx.cfg.enforceDelete = false;
-                            try {
-                                ctx.configStore.save();
-                                ConsoleLog.warn("Counting",
-                                        "Auto-disabled enforceDelete for guildId=" + guildId +
-                                                " due to delete failure: " + err.getMessage());
-                            } catch (Exception e) {
-                                ConsoleLog.error("Counting",
-                                        "Failed to save config after auto-disabling enforceDelete guildId=" + guildId +
-                                                ": " + e.getMessage(), e);
-                            }
-                        }
-                    }
-                }
-        );
-
-        logs.log(guildId, "Deleted invalid count by " + msg.getAuthor().getName() + ": " + parseDeleteMessage(msg.getContentRaw()));
+    /** Cancels the guild's running deep resync, if any. */
+    public boolean cancelDeepResync(long guildId) {
+        HistoryScan scan = scans.get(guildId);
+        if (scan == null) return false;
+        scan.cancel();
+        return true;
     }
 
-
-    private String parseDeleteMessage(String msg) {
-        if (msg == null) return "";
-
-        return msg
-            .replaceAll("https?://\\S+", "<>")
-            .replaceAll("www\\.\\S+", "<>")
-            .replaceAll("\\s{2,}", "<>")
-            .trim();
+    public boolean isDeepResyncRunning(long guildId) {
+        return scans.containsKey(guildId);
     }
 
-    private void logDecision(long guildId, String reason, Message msg) {
+    private HistoryScan startScan(TextChannel ch, long guildId, GuildContext ctx, long atStartMessageId,
+                                  HistoryScan.Options opts, Consumer<HistoryScan.Progress> progress,
+                                  Consumer<HistoryScan.Result> cb) {
         if (ConsoleLog.DEBUG) {
-            ConsoleLog.debug("Counting",
-                    "guildId=" + guildId + " " + reason
-                            + " | author=" + msg.getAuthor().getId()
-                            + " name=" + msg.getAuthor().getName()
-                            + " content=\"" + msg.getContentRaw() + "\"");
+            ConsoleLog.debug("Resync", "guildId=" + guildId + " Starting deep resync (maxPages=" + opts.maxPages()
+                    + " verify=" + opts.verifyDepth() + ") channelId=" + ch.getId());
+        }
+
+        HistoryScan[] self = new HistoryScan[1];
+        HistoryScan scan = new HistoryScan(guildId, ch, opts, progress, r -> guilds.withContext(guildId, c -> {
+            scans.remove(guildId, self[0]);
+            cb.accept(applyScan(ctx, guildId, atStartMessageId, r));
+        }));
+        self[0] = scan;
+        // Registered before start so a fast finish still unregisters it. Two scans must never write
+        // state concurrently, so a second one is refused rather than replacing the registration.
+        if (scans.putIfAbsent(guildId, scan) != null) {
+            ConsoleLog.warn("Resync", "guildId=" + guildId + " History scan already running; not starting another");
+            cb.accept(new HistoryScan.Result(HistoryScan.Status.BUSY, -1, 0, 0, 0, 0, 0));
+            return null;
         }
+        scan.start();
+        return scan;
     }
 
-    /**
-     * Strict integer parse (matches your rules):
-     * - entire content must be digits ONLY, with optional comma thousands-separators in valid positions
-     * - no negatives
-     * - no leading zeros unless "0"
-     */
-    private Parsed parseStrictCount(Message msg) {
-        String s = msg.getContentRaw(); // DO NOT trim; whitespace is invalid
-        if (s == null || s.isEmpty()) return null;
-
-        int charsSinceComma = 0;
-        boolean sawComma = false;
-        for (int i = s.length() - 1; i >= 0; i--) {
-            char currentCharacter = s.charAt(i);
-            if (currentCharacter >= '0' && currentCharacter <= '9') {
-                charsSinceComma++;
-            } else if (currentCharacter == ',') {
-                sawComma = true;
-                if (charsSinceComma == 3) {
-                    charsSinceComma = 0;
-                } else {
-                    return null;
-                }
-            } else {
-                return null; //anything not a number or comma is invalid.
+    // Runs on the guild mailbox.
+    private HistoryScan.Result applyScan(GuildContext ctx, long guildId, long atStartMessageId, HistoryScan.Result r) {
+        boolean applies = r.status() == HistoryScan.Status.FOUND || r.status() == HistoryScan.Status.NOT_FOUND;
+        synchronized (ctx.stateStore.lock) {
+            if (applies && ctx.stateStore.state().lastMessageId != atStartMessageId) {
+                ConsoleLog.info("Resync", "guildId=" + guildId + " deep resync superseded by a live count; result dropped");
+                return new HistoryScan.Result(HistoryScan.Status.SUPERSEDED, r.number(), r.userId(), r.messageId(),
+                        r.verified(), r.pages(), r.messages());
             }
+            if (r.found()) ctx.stateStore.recordResync(r.number(), r.userId(), r.messageId());
+            else if (applies) ctx.stateStore.recordResync(-1, 0, 0);
         }
-        // Leftmost group: 1-3 digits if commas were used, any length (>=1) if not.
-        if (charsSinceComma < 1 || (sawComma && charsSinceComma > 3)) {
-            return null;
+
+        switch (r.status()) {
+            case FOUND -> ConsoleLog.info("Resync", "guildId=" + guildId + " deep resync: last=" + r.number()
+                    + " verified=" + r.verified() + " pages=" + r.pages() + " messages=" + r.messages());
+            case NOT_FOUND -> ConsoleLog.warn("Resync", "guildId=" + guildId + " deep resync: no valid count in the whole channel ("
+                    + r.messages() + " messages)");
+            default -> ConsoleLog.warn("Resync", "guildId=" + guildId + " deep resync " + r.status()
+                    + " after " + r.pages() + " page(s); state unchanged");
         }
-        if (s.charAt(0) == '0' && s.length() > 1) {
-            return null; // no leading zeros unless the whole content is "0"
+        return r;
+    }
+
+    private static long lastMessageId(GuildContext ctx) {
+        synchronized (ctx.stateStore.lock) {
+            return ctx.stateStore.state().lastMessageId;
         }
+    }
+
+    private static TextChannel countingChannel(JDA jda, long guildId, GuildContext ctx) {
+        String channelIdStr = ctx.cfg.countingChannelId;
+        if (channelIdStr == null || channelIdStr.isBlank()) return null;
 
+        TextChannel ch;
         try {
-            long n = Long.parseLong(s.replace(",", ""));
-            return new Parsed(n, msg.getAuthor().getIdLong());
-        } catch (NumberFormatException e) {
+            ch = jda.getTextChannelById(Long.parseLong(channelIdStr));
+        } catch (Exception e) {
+            ConsoleLog.warn("Resync", "guildId=" + guildId + " invalid countingChannelId=" + channelIdStr);
             return null;
         }
+        if (ch == null) {
+            ConsoleLog.warn("Resync", "guildId=" + guildId + " counting channel not found / not visible.");
+        }
+        return ch;
     }
 
-
     // ----------------------------
-    // Resync (guild-specific)
+    // Offline catch-up
     // ----------------------------
 
-    public void resyncNow(JDA jda, long guildId, Consumer<ResyncResult> cb) {
-        GuildContext ctx = guilds.get(guildId);
+    /**
+     * Boot entry point: replays the counting messages sent since the guild's last processed message
+     * (bot downtime) through the normal rules, then reports the resulting position. Falls back to
+     * {@link #resyncState} when there is no cursor yet (first run) or the gap is more than
+     * CATCH_UP_MAX_PAGES pages. Does nothing extra if the guild already caught up this session.
+     */
+    public void catchUpOrResync(JDA jda, long guildId, Consumer<ResyncResult> cb) {
+        guilds.withContext(guildId, ctx -> startCatchUp(jda, ctx, guildId, cb));
+    }
 
-        String channelIdStr = ctx.cfg.countingChannelId;
-        if (channelIdStr == null || channelIdStr.isBlank()) {
-            cb.accept(new ResyncResult(false, -1, 0, 0));
+    // Runs on the guild mailbox. cb (nullable) gets the position once the guild is caught up.
+    private void startCatchUp(JDA jda, GuildContext ctx, long guildId, Consumer<ResyncResult> cb) {
+        if (caughtUp.contains(guildId)) {
+            if (cb != null) cb.accept(position(ctx));
             return;
         }
-
-        TextChannel ch;
-        try {
-            long channelId = Long.parseLong(channelIdStr);
-            ch = jda.getTextChannelById(channelId);
-        } catch (Exception e) {
-            ConsoleLog.warn("Resync", "guildId=" + guildId + " invalid countingChannelId=" + channelIdStr);
-            cb.accept(new ResyncResult(false, -1, 0, 0));
+        CatchUpState running = catchUps.get(guildId);
+        if (running != null) {
+            if (cb != null) running.waiters.add(cb);
             return;
         }
 
-        if (ch == null) {
-            ConsoleLog.warn("Resync", "guildId=" + guildId + " counting channel not found / not visible.");
-            cb.accept(new ResyncResult(false, -1, 0, 0));
+        CatchUpState st = new CatchUpState();
+        if (cb != null) st.waiters.add(cb);
+        catchUps.put(guildId, st);
+
+        long cursor;
+        synchronized (ctx.stateStore.lock) {
+            cursor = ctx.stateStore.state().lastProcessedMessageId;
+        }
+        TextChannel ch = countingChannel(jda, guildId, ctx);
+        if (ch == null || cursor == 0) {
+            resyncState(jda, guildId, r -> guilds.withContext(guildId, c -> finishCatchUp(c, guildId)));
             return;
         }
 
         if (ConsoleLog.DEBUG) {
-            ConsoleLog.debug("Resync", "guildId=" + guildId + " Starting resync (retrievePast=" + RESYNC_HISTORY + ") channelId=" + channelIdStr);
+            ConsoleLog.debug("CatchUp", "guildId=" + guildId + " replaying after msgId=" + cursor);
         }
+        OfflineCatchUp catchUp = new OfflineCatchUp(guilds, guildId, ch, CATCH_UP_MAX_PAGES,
+                (c, m) -> engine.handle(c, new JdaMessage(m), m.getTimeCreated().toInstant().toEpochMilli(), CountingEngine.UNTRACED),
+                r -> {
+                    if (r.replayed() > 0 || r.status() != OfflineCatchUp.Status.DONE) {
+                        ConsoleLog.info("CatchUp", "guildId=" + guildId + " " + r.status() + ": replayed "
+                                + r.replayed() + " message(s) in " + r.pages() + " page(s)");
+                    }
+                    if (r.status() == OfflineCatchUp.Status.DONE) {
+                        finishCatchUp(ctx, guildId);
+                    } else {
+                        // Gap too big (or unreadable): jump to the latest count like a plain resync.
+                        resyncState(jda, guildId, x -> guilds.withContext(guildId, c -> finishCatchUp(c, guildId)));
+                    }
+                });
+        catchUp.start(cursor);
+    }
 
-        ch.getHistory().retrievePast(RESYNC_HISTORY).queue(history -> {
-            Parsed found = null;
-            Message foundMsg = null;
+    // Runs on the guild mailbox.
+    private void finishCatchUp(GuildContext ctx, long guildId) {
+        CatchUpState st = catchUps.remove(guildId);
+        caughtUp.add(guildId);
+        if (st == null) return;
 
-            for (Message m : history) {
-                Parsed p = parseStrictCount(m);
-                if (p != null) {
-                    found = p;
-                    foundMsg = m;
-                    if (ConsoleLog.DEBUG) {
-                        ConsoleLog.debug("Resync", "guildId=" + guildId + " Found last valid: n=" + found.number + " userId=" + found.authorId + " msgId=" + foundMsg.getId());
-                    }
-                    break;
-                }
-            }
+        // Live messages that arrived meanwhile, in order; anything the replay already covered is skipped.
+        // Traced from gateway receive: the catch-up wait is latency users saw.
+        for (Held h : st.held) {
+            engine.handle(ctx, h.msg, h.msg.msg.getTimeCreated().toInstant().toEpochMilli(), h.receivedNanos);
+        }
+        goalsRegistry.markDirtyIfExists(guildId);
 
-            if (found == null) {
-                synchronized (ctx.stateStore.lock) {
-                    ctx.stateStore.state().lastNumber = -1;
-                    ctx.stateStore.state().lastUserId = 0;
-                    ctx.stateStore.state().lastMessageId = 0;
-                    ctx.stateStore.markDirty();
-                }
-                ConsoleLog.warn("Resync", "guildId=" + guildId + " No valid count found in recent history");
-                cb.accept(new ResyncResult(false, -1, 0, 0));
-                return;
+        ResyncResult pos = position(ctx);
+        for (Consumer<ResyncResult> w : st.waiters) {
+            try {
+                w.accept(pos);
+            } catch (Exception e) {
+                ConsoleLog.error("CatchUp", "guildId=" + guildId + " catch-up callback failed: " + e.getMessage(), e);
             }
+        }
+    }
 
-            synchronized (ctx.stateStore.lock) {
-                ctx.stateStore.state().lastNumber = found.number;
-                ctx.stateStore.state().lastUserId = found.authorId;
-                ctx.stateStore.state().lastMessageId = foundMsg.getIdLong();
-                ctx.stateStore.markDirty();
-            }
+    private static ResyncResult position(GuildContext ctx) {
+        synchronized (ctx.stateStore.lock) {
+            CountingState s = ctx.stateStore.state();
+            return new ResyncResult(s.lastNumber >= 0, s.lastNumber, s.lastUserId, s.lastMessageId);
+        }
+    }
 
-            goalsRegistry.markDirtyOrCreate(guildId);
+    private record Parsed(long number, long authorId) {}
+    private record Held(JdaMessage msg, long receivedNanos) {}
 
-            cb.accept(new ResyncResult(true, found.number, found.authorId, foundMsg.getIdLong()));
-        }, err -> {
-            ConsoleLog.error("Resync", "guildId=" + guildId + " History fetch failed: " + err.getMessage(), err);
-            cb.accept(new ResyncResult(false, -1, 0, 0));
-        });
-    }
+    /** A JDA message as the engine sees it. */
+    private record JdaMessage(Message msg) implements CountMessage {
+        @Override
+        public long messageId() {
+            return msg.getIdLong();
+        }
 
-    // ----------------------------
-    // Disk discovery (configured guilds)
-    // ----------------------------
+        @Override
+        public String channelId() {
+            return msg.getChannel().getId();
+        }
 
-    private static List<Long> listGuildDirsOnDisk() {
-        Path base = BotPaths.GUILDS_DIR;
-        if (!Files.isDirectory(base)) return List.of();
+        @Override
+        public long authorId() {
+            return msg.getAuthor().getIdLong();
+        }
 
-        List<Long> out = new ArrayList<>();
-        try (Stream<Path> s = Files.list(base)) {
-            s.filter(Files::isDirectory).forEach(p -> {
-                String name = p.getFileName().toString();
-                try {
-                    out.add(Long.parseLong(name));
-                } catch (Exception ignored) {
-                    // ignore non-numeric folders
-                }
-            });
-        } catch (Exception e) {
-            ConsoleLog.error("Resync", "Failed listing guild dirs: " + e.getMessage(), e);
+        @Override
+        public String authorName() {
+            return msg.getAuthor().getName();
         }
-        return out;
-    }
 
-    private record Parsed(long number, long authorId) {}
+        @Override
+        public String content() {
+            return msg.getContentRaw();
+        }
+    }
     public record ResyncResult(boolean found, long number, long userId, long messageId) {}
 }
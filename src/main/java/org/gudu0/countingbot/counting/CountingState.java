@@ -1,17 +1,48 @@
 package org.gudu0.countingbot.counting;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class CountingState {
     public long lastNumber = -1;
     public long lastUserId = 0;
     public long lastMessageId = 0;
+    // Newest counting-channel message already judged (live or replayed); offline catch-up resumes after it.
+    public long lastProcessedMessageId = 0;
     public long globalStreakCurrent = 0;
     public long globalStreakBest = 0;
 
+    // Last state.journal record folded into this snapshot (see CountJournal).
+    public long journalSeq = 0;
 
-    // userId -> last time (millis) they made a VALID count
+    // userId -> last time (millis) they made a VALID count, only while still inside the cooldown
+    // (field name kept for state.json compatibility)
     @SuppressWarnings("CanBeFinal")
-    public Map<Long, Long> userLastValidCountAt = new HashMap<>();
+    public CooldownTable userLastValidCountAt = new CooldownTable();
+
+    // ----------------------------
+    // Mutations (shared by the live path and journal replay)
+    // ----------------------------
+
+    public void applyCount(long number, long userId, long messageId, long atMillis) {
+        lastNumber = number;
+        lastUserId = userId;
+        lastMessageId = messageId;
+        lastProcessedMessageId = Math.max(lastProcessedMessageId, messageId);
+        userLastValidCountAt.record(userId, atMillis);
+
+        globalStreakCurrent++;
+        if (globalStreakCurrent > globalStreakBest) globalStreakBest = globalStreakCurrent;
+    }
+
+    /** {@code messageId} is the invalid count that broke the streak (0 if none); it advances the catch-up cursor. */
+    public void resetStreak(long messageId) {
+        globalStreakCurrent = 0;
+        lastProcessedMessageId = Math.max(lastProcessedMessageId, messageId);
+    }
+
+    /** Resync result; number=-1 means "no valid count found". */
+    public void applyResync(long number, long userId, long messageId) {
+        lastNumber = number;
+        lastUserId = userId;
+        lastMessageId = messageId;
+        lastProcessedMessageId = Math.max(lastProcessedMessageId, messageId);
+    }
 }
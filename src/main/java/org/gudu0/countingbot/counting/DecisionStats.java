@@ -0,0 +1,70 @@
+package org.gudu0.countingbot.counting;
+
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.util.LatencyHistogram;
+
+/**
+ * Count decision latency, one {@link LatencyHistogram} (in µs) per {@link Stage}.
+ * <p>
+ * Each guild has its own (see GuildContext#decisionStats), and {@link #BOT} aggregates all guilds and
+ * is exported on the metrics endpoint. Filled by {@link DecisionTrace}; read by /latency.
+ * DECISION, DELETE and DELETED see every live message; the other stages only a {@link Metrics#sampled()} subset.
+ */
+public final class DecisionStats {
+
+    public enum Stage {
+        QUEUE("queue", "gateway receive -> guild mailbox"),
+        PARSE("parse", "strict integer parse"),
+        SNAPSHOT("snapshot", "state snapshot (incl. lock wait)"),
+        RULES("rules", "rule checks"),
+        COMMIT("commit", "state + stats update"),
+        ACHIEVEMENTS("achievements", "achievement triggers"),
+        GOALS("goals", "goal dirtying"),
+        DECISION("decision", "receive -> decision committed"),
+        DELETE("delete", "delete enqueue -> Discord confirmed"),
+        DELETED("deleted", "receive -> invalid count gone");
+
+        public final String label;
+        public final String description;
+
+        Stage(String label, String description) {
+            this.label = label;
+            this.description = description;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    /** All guilds together (also served as countingbot_decision_stage_seconds{stage}). */
+    public static final DecisionStats BOT = exported();
+
+    private final LatencyHistogram[] byStage;
+
+    public DecisionStats() {
+        this.byStage = new LatencyHistogram[STAGES.length];
+        for (int i = 0; i < byStage.length; i++) byStage[i] = new LatencyHistogram();
+    }
+
+    private static DecisionStats exported() {
+        DecisionStats s = new DecisionStats();
+        for (Stage st : STAGES) {
+            Metrics.histogram("countingbot_decision_stage_seconds",
+                    "Count decision latency by stage, from gateway receive to commit (and delete confirmed)",
+                    "stage", st.label, 1e6, Metrics.MICROS_BUCKETS, s.get(st));
+        }
+        return s;
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return byStage[stage.ordinal()];
+    }
+
+    /** Messages judged (live, not catch-up replays). */
+    public long decisions() {
+        return get(Stage.DECISION).count();
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : byStage) h.reset();
+    }
+}
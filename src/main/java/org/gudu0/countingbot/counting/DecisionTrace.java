@@ -0,0 +1,145 @@
+package org.gudu0.countingbot.counting;
+
+import org.gudu0.countingbot.counting.DecisionStats.Stage;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.util.ConsoleLog;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Timing spans for one counting message: gateway receive -> decision committed, and for deleted
+ * messages, -> Discord confirming the delete.
+ * <p>
+ * One instance per mailbox thread, reused for every message ({@link #begin}). Each {@link #mark}
+ * charges the time since the previous mark to a stage; that bookkeeping is thread-confined and always
+ * on, so the slow log always has the full breakdown. {@link #decided} records into the guild's and the
+ * bot-wide {@link DecisionStats}: the end-to-end DECISION span for every message, the per-stage spans
+ * only for a {@link Metrics#sampled() sample}, since those histograms are shared. The delete spans are
+ * recorded by the callback {@link #deleteQueued} hands out, which outlives the trace's reuse.
+ * <p>
+ * Catch-up replays pass a null {@link SlowLog}: judged the same way, nothing recorded (their "latency"
+ * is the bot's downtime).
+ */
+final class DecisionTrace {
+
+    /** Slow-decision log thresholds in ns; 0 disables that log. */
+    record SlowLog(long decisionNanos, long deleteNanos) {
+        static SlowLog ofMillis(long decisionMs, long deleteMs) {
+            return new SlowLog(Math.max(0, decisionMs) * 1_000_000L, Math.max(0, deleteMs) * 1_000_000L);
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final LongConsumer IGNORE_DELETE = doneNanos -> {};
+
+    private final long[] spent = new long[STAGES.length];
+    private int reached; // bit per stage that ran
+    private long last;
+
+    private long receivedNanos;
+    private SlowLog slow; // null: replay, record nothing
+    private boolean recordStages;
+
+    private GuildContext ctx;
+    private long guildId;
+    private long messageId;
+
+    /** Resets this trace for a new message; {@code slow} null means a catch-up replay. */
+    DecisionTrace begin(long receivedNanos, SlowLog slow) {
+        Arrays.fill(spent, 0);
+        reached = 0;
+        this.receivedNanos = receivedNanos;
+        this.slow = slow;
+        this.recordStages = slow != null && Metrics.sampled();
+        return this;
+    }
+
+    /** Mailbox picked the message up: the wait so far is QUEUE. */
+    void start(GuildContext ctx, long guildId, long messageId) {
+        this.ctx = ctx;
+        this.guildId = guildId;
+        this.messageId = messageId;
+        last = System.nanoTime();
+        charge(Stage.QUEUE, last - receivedNanos);
+    }
+
+    /** Charges the time since the previous mark to {@code stage}. */
+    void mark(Stage stage) {
+        long now = System.nanoTime();
+        charge(stage, now - last);
+        last = now;
+    }
+
+    /**
+     * The delete is being queued. Returns the callback for Discord's confirmation; it captures what it
+     * needs, since this trace is reused for the next message long before the delete completes.
+     */
+    LongConsumer deleteQueued() {
+        if (slow == null) return IGNORE_DELETE;
+        GuildContext c = ctx;
+        long g = guildId;
+        long m = messageId;
+        long received = receivedNanos;
+        long queued = System.nanoTime();
+        SlowLog s = slow;
+        return doneNanos -> deleted(c, g, m, received, queued, doneNanos, s);
+    }
+
+    /** The decision is committed (delete, if any, queued). {@code outcome} is a short tag for the slow log. */
+    void decided(String outcome) {
+        if (slow == null) return;
+        long total = System.nanoTime() - receivedNanos;
+        charge(Stage.DECISION, total);
+
+        DecisionStats guild = ctx.decisionStats();
+        guild.get(Stage.DECISION).record(total / 1_000);
+        DecisionStats.BOT.get(Stage.DECISION).record(total / 1_000);
+        if (recordStages) {
+            for (Stage s : STAGES) {
+                if (s == Stage.DECISION || (reached & (1 << s.ordinal())) == 0) continue;
+                long us = spent[s.ordinal()] / 1_000;
+                guild.get(s).record(us);
+                DecisionStats.BOT.get(s).record(us);
+            }
+        }
+
+        if (slow.decisionNanos() > 0 && total >= slow.decisionNanos()) {
+            ConsoleLog.Line line = ConsoleLog.at(ConsoleLog.Level.WARN, "Latency")
+                    .kv("guildId", guildId)
+                    .kv("msgId", messageId)
+                    .kv("outcome", outcome);
+            for (Stage s : STAGES) {
+                if ((reached & (1 << s.ordinal())) != 0) line.kv(s.label + "Us", spent[s.ordinal()] / 1_000);
+            }
+            line.log("Slow count decision: " + total / 1_000_000 + "ms");
+        }
+    }
+
+    /** Discord confirmed the delete (REST callback thread). */
+    private static void deleted(GuildContext ctx, long guildId, long messageId, long receivedNanos,
+                                long queuedNanos, long doneNanos, SlowLog slow) {
+        long deleteUs = (doneNanos - queuedNanos) / 1_000;
+        long totalNanos = doneNanos - receivedNanos;
+
+        DecisionStats guild = ctx.decisionStats();
+        guild.get(Stage.DELETE).record(deleteUs);
+        guild.get(Stage.DELETED).record(totalNanos / 1_000);
+        DecisionStats.BOT.get(Stage.DELETE).record(deleteUs);
+        DecisionStats.BOT.get(Stage.DELETED).record(totalNanos / 1_000);
+
+        if (slow.deleteNanos() > 0 && totalNanos >= slow.deleteNanos()) {
+            ConsoleLog.at(ConsoleLog.Level.WARN, "Latency")
+                    .kv("guildId", guildId)
+                    .kv("msgId", messageId)
+                    .kv("deleteUs", deleteUs)
+                    .log("Slow invalid-count delete: " + totalNanos / 1_000_000 + "ms after receive");
+        }
+    }
+
+    private void charge(Stage stage, long nanos) {
+        spent[stage.ordinal()] += nanos;
+        reached |= 1 << stage.ordinal();
+    }
+}
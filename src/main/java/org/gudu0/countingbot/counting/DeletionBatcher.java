@@ -0,0 +1,231 @@
+package org.gudu0.countingbot.counting;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.TimeUtil;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Per-channel batching of invalid-count deletes.
+ * <p>
+ * Deletes are collected for a short window, then sent as one bulk delete per 100 ids (Discord only
+ * allows bulk deletes of 2..100 messages younger than 14 days); anything older, or a lone message,
+ * falls back to a single delete. A channel has at most one batch in flight; ids that arrive meanwhile
+ * go into the next batch. During a spam burst that is a couple of requests instead of one per message.
+ * <p>
+ * Failures go to the {@link FailureHandler} (CountingListener auto-disables enforceDelete), except
+ * UNKNOWN_MESSAGE: the author deleting their own message first is expected and harmless.
+ * <p>
+ * Latency (queued -> Discord confirmed) is logged as percentiles every few minutes.
+ */
+public final class DeletionBatcher {
+
+    /** Called once per failed request (not per message). */
+    public interface FailureHandler {
+        void onDeleteFailed(GuildContext ctx, long guildId, Throwable err);
+    }
+
+    private static final int MAX_BULK = 100;
+    // Bulk delete cutoff is 14 days; keep a margin for clock skew and the batch window.
+    private static final long BULK_MAX_AGE_MS = TimeUnit.DAYS.toMillis(14) - TimeUnit.MINUTES.toMillis(5);
+    private static final long REPORT_EVERY_MINUTES = 5;
+
+    private record Pending(long messageId, GuildContext ctx, long guildId, long queuedNanos, LongConsumer onDeleted) {}
+
+    private static final class ChannelQueue {
+        final long channelId;
+        GuildMessageChannel channel;
+        final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>(); // dedupes ids (bulk delete rejects duplicates)
+        boolean armed = false;
+        boolean inFlight = false;
+
+        ChannelQueue(long channelId) {
+            this.channelId = channelId;
+        }
+    }
+
+    private final long windowMs;
+    private final FailureHandler onFailure;
+    private final ConcurrentHashMap<Long, ChannelQueue> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService exec;
+
+    private final LatencyHistogram latencyTotal = new LatencyHistogram();
+    private final LatencyHistogram latencyInterval = new LatencyHistogram();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong singleRequests = new AtomicLong();
+
+    public DeletionBatcher(long windowMs, FailureHandler onFailure) {
+        this.windowMs = Math.max(0, windowMs);
+        this.onFailure = onFailure;
+        this.exec = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "delete-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        exec.scheduleAtFixedRate(this::report, REPORT_EVERY_MINUTES, REPORT_EVERY_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /** Queues {@code msg} for deletion in its channel's next batch. */
+    public void delete(GuildContext ctx, long guildId, Message msg) {
+        delete(ctx, guildId, msg, null);
+    }
+
+    /**
+     * Same, and {@code onDeleted} (nullable) gets the System.nanoTime() at which Discord confirmed the
+     * delete. Not called if the delete fails or the id was already queued.
+     */
+    public void delete(GuildContext ctx, long guildId, Message msg, LongConsumer onDeleted) {
+        GuildMessageChannel channel = msg.getGuildChannel();
+        ChannelQueue q = channels.computeIfAbsent(channel.getIdLong(), ChannelQueue::new);
+        synchronized (q) {
+            q.channel = channel;
+            q.pending.putIfAbsent(msg.getIdLong(), new Pending(msg.getIdLong(), ctx, guildId, System.nanoTime(), onDeleted));
+            arm(q);
+        }
+    }
+
+    /** Queued -> confirmed latency (ms) since start. */
+    public LatencyHistogram latency() {
+        return latencyTotal;
+    }
+
+    public long bulkRequests() {
+        return bulkRequests.get();
+    }
+
+    public long singleRequests() {
+        return singleRequests.get();
+    }
+
+    public int queueDepth() {
+        int n = 0;
+        for (ChannelQueue q : channels.values()) {
+            synchronized (q) {
+                n += q.pending.size();
+            }
+        }
+        return n;
+    }
+
+    // ----------------------------
+    // Batching
+    // ----------------------------
+
+    // Caller holds the queue monitor.
+    private void arm(ChannelQueue q) {
+        if (q.armed || q.inFlight) return;
+        q.armed = true;
+        exec.schedule(() -> flush(q), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(ChannelQueue q) {
+        GuildMessageChannel channel;
+        List<Pending> batch;
+        synchronized (q) {
+            q.armed = false;
+            if (q.inFlight || q.pending.isEmpty()) return;
+            channel = q.channel;
+            batch = new ArrayList<>(q.pending.values());
+            q.pending.clear();
+            q.inFlight = true;
+        }
+
+        try {
+            long nowMs = System.currentTimeMillis();
+            List<Pending> young = new ArrayList<>();
+            List<Pending> old = new ArrayList<>();
+            for (Pending p : batch) {
+                (nowMs - createdAt(p.messageId) < BULK_MAX_AGE_MS ? young : old).add(p);
+            }
+
+            List<List<Pending>> requests = new ArrayList<>();
+            for (int i = 0; i < young.size(); i += MAX_BULK) {
+                requests.add(young.subList(i, Math.min(young.size(), i + MAX_BULK)));
+            }
+            for (Pending p : old) requests.add(List.of(p));
+
+            AtomicInteger outstanding = new AtomicInteger(requests.size());
+            for (List<Pending> r : requests) send(q, channel, r, outstanding);
+        } catch (Exception e) {
+            ConsoleLog.error("Deletes", "channelId=" + q.channelId + " delete batch failed: " + e.getMessage(), e);
+            batchDone(q);
+        }
+    }
+
+    private void send(ChannelQueue q, GuildMessageChannel channel, List<Pending> r, AtomicInteger outstanding) {
+        RestAction<Void> action;
+        if (r.size() >= 2) {
+            List<String> ids = new ArrayList<>(r.size());
+            for (Pending p : r) ids.add(Long.toUnsignedString(p.messageId));
+            action = channel.deleteMessagesByIds(ids);
+            bulkRequests.incrementAndGet();
+        } else {
+            action = channel.deleteMessageById(r.get(0).messageId);
+            singleRequests.incrementAndGet();
+        }
+
+        Pending first = r.get(0);
+        action.queue(
+                ok -> {
+                    long doneNanos = System.nanoTime();
+                    for (Pending p : r) {
+                        long ms = (doneNanos - p.queuedNanos) / 1_000_000;
+                        latencyTotal.record(ms);
+                        latencyInterval.record(ms);
+                        if (p.onDeleted != null) {
+                            try {
+                                p.onDeleted.accept(doneNanos);
+                            } catch (Exception e) {
+                                ConsoleLog.warn("Deletes", "guildId=" + p.guildId + " delete callback failed: " + e.getMessage());
+                            }
+                        }
+                    }
+                    if (outstanding.decrementAndGet() == 0) batchDone(q);
+                },
+                err -> {
+                    boolean alreadyGone = err instanceof ErrorResponseException ere
+                            && ere.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE;
+                    if (!alreadyGone) {
+                        ConsoleLog.error("Deletes", "guildId=" + first.guildId + " delete failed ("
+                                + r.size() + " message(s)): " + err.getMessage(), err);
+                        onFailure.onDeleteFailed(first.ctx, first.guildId, err);
+                    }
+                    if (outstanding.decrementAndGet() == 0) batchDone(q);
+                }
+        );
+    }
+
+    private void batchDone(ChannelQueue q) {
+        synchronized (q) {
+            q.inFlight = false;
+            if (!q.pending.isEmpty()) arm(q);
+        }
+    }
+
+    private static long createdAt(long messageId) {
+        return (messageId >>> TimeUtil.TIMESTAMP_OFFSET) + TimeUtil.DISCORD_EPOCH;
+    }
+
+    private void report() {
+        if (latencyInterval.count() == 0) return;
+        ConsoleLog.info("Deletes", "Delete latency (last " + REPORT_EVERY_MINUTES + "m): " + latencyInterval.summary("ms")
+                + " | requests bulk=" + bulkRequests.get() + " single=" + singleRequests.get());
+        latencyInterval.reset();
+    }
+}
@@ -0,0 +1,187 @@
+package org.gudu0.countingbot.counting;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import org.gudu0.countingbot.util.ConsoleLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Deep resync: walks a counting channel backward, 100 messages per REST call, until it finds the
+ * last valid count.
+ * <p>
+ * - One {@link MessageHistory} is paged with retrievePast(100), so each page continues where the
+ *   previous one stopped; pages are requested one at a time (never more than one call in flight)
+ * - With {@code verifyDepth > 0} the answer is the newest count n whose next older counts are
+ *   n-1 .. n-verifyDepth (chatter in between is skipped). That steps over stray wrong numbers left in
+ *   the channel when enforceDelete is off. If no run verifies within the first
+ *   {@link #MAX_CANDIDATES} counts, or the channel/page cap runs out first, the newest count is used
+ *   and the result says how much of it was verified.
+ * - Stops after {@code maxPages} REST calls, and between pages once {@link #cancel()} is called.
+ * <p>
+ * The scan itself never touches guild state; the caller applies {@link Result} (on the guild mailbox).
+ */
+public final class HistoryScan {
+
+    public static final int PAGE_SIZE = 100;
+    /** Counts (newest first) that may start a verified run before we give up and take the newest. */
+    public static final int MAX_CANDIDATES = 16;
+
+    public record Options(int maxPages, int verifyDepth) {
+        public Options {
+            maxPages = Math.max(1, maxPages);
+            verifyDepth = Math.max(0, verifyDepth);
+        }
+    }
+
+    public record Progress(int pages, int maxPages, int messages, int counts) {}
+
+    public enum Status {
+        FOUND,      // number/userId/messageId are set
+        NOT_FOUND,  // reached the start of the channel without a single count
+        CAPPED,     // page cap hit without a count
+        CANCELLED,
+        FAILED,
+        SUPERSEDED, // set by the caller: a live count landed while scanning, so the result wasn't applied
+        BUSY        // set by the caller: another scan was already running for the guild, nothing started
+    }
+
+    /**
+     * @param verified how many predecessors (n-1, n-2, ...) were confirmed; equals the requested depth
+     *                 unless the scan fell back to an unverified newest count
+     */
+    public record Result(Status status, long number, long userId, long messageId, int verified, int pages, int messages) {
+        public boolean found() {
+            return status == Status.FOUND;
+        }
+    }
+
+    private record Count(long number, long userId, long messageId) {}
+
+    private final long guildId;
+    private final MessageHistory history;
+    private final Options opts;
+    private final Consumer<Progress> onProgress;
+    private final Consumer<Result> onDone;
+
+    private volatile boolean cancelled = false;
+
+    // Scan state: only touched by the page callback (pages are sequential).
+    private final List<Count> counts = new ArrayList<>(); // newest first
+    private int runStart = 0; // index in counts where the current descending run starts
+    private int pages = 0;
+    private int messages = 0;
+
+    /** {@code onDone} is called exactly once, after {@link #start()}. */
+    public HistoryScan(long guildId, MessageChannel channel, Options opts, Consumer<Progress> onProgress, Consumer<Result> onDone) {
+        this.guildId = guildId;
+        this.history = channel.getHistory();
+        this.opts = opts;
+        this.onProgress = onProgress;
+        this.onDone = onDone;
+    }
+
+    public void start() {
+        fetchNext();
+    }
+
+    /** Stops before the next page; the result reports CANCELLED. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // ----------------------------
+    // Paging
+    // ----------------------------
+
+    private void fetchNext() {
+        if (cancelled) {
+            finish(Status.CANCELLED);
+            return;
+        }
+        if (pages >= opts.maxPages()) {
+            finish(Status.CAPPED);
+            return;
+        }
+
+        pages++;
+        try {
+            history.retrievePast(PAGE_SIZE).queue(this::onPage, err -> {
+                ConsoleLog.error("Resync", "guildId=" + guildId + " history page " + pages + " failed: " + err.getMessage(), err);
+                finish(Status.FAILED);
+            });
+        } catch (Exception e) {
+            ConsoleLog.error("Resync", "guildId=" + guildId + " history page " + pages + " failed: " + e.getMessage(), e);
+            finish(Status.FAILED);
+        }
+    }
+
+    private void onPage(List<Message> page) {
+        try {
+            messages += page.size();
+            for (Message m : page) { // newest first
+                long n = CountParser.parse(m.getContentRaw());
+                if (n < 0) continue;
+
+                Count c = new Count(n, m.getAuthor().getIdLong(), m.getIdLong());
+                int i = counts.size();
+                counts.add(c);
+                if (i > 0 && counts.get(i - 1).number - 1 != n) runStart = i;
+
+                if (i - runStart == opts.verifyDepth()) {
+                    finish(Status.FOUND); // counts[runStart] has its full verified tail
+                    return;
+                }
+                if (runStart >= MAX_CANDIDATES) {
+                    finish(Status.FOUND); // falls back to the newest count
+                    return;
+                }
+            }
+
+            if (onProgress != null) {
+                try {
+                    onProgress.accept(new Progress(pages, opts.maxPages(), messages, counts.size()));
+                } catch (Exception e) {
+                    ConsoleLog.warn("Resync", "guildId=" + guildId + " progress callback failed: " + e.getMessage());
+                }
+            }
+
+            if (page.size() < PAGE_SIZE) {
+                finish(Status.NOT_FOUND); // start of channel
+                return;
+            }
+            fetchNext();
+        } catch (Exception e) {
+            ConsoleLog.error("Resync", "guildId=" + guildId + " history scan failed: " + e.getMessage(), e);
+            finish(Status.FAILED);
+        }
+    }
+
+    // Picks the answer from what we have: cancel/failure wins; otherwise any count found beats running out of pages.
+    private void finish(Status stoppedWith) {
+        Result r;
+        if (stoppedWith == Status.CANCELLED || stoppedWith == Status.FAILED || counts.isEmpty()) {
+            r = new Result(stoppedWith, -1, 0, 0, 0, pages, messages);
+        } else {
+            boolean verified = counts.size() - 1 - runStart >= opts.verifyDepth();
+            int start = verified ? runStart : 0;
+            int tail = verified ? opts.verifyDepth() : runLength(0) - 1;
+            Count c = counts.get(start);
+            r = new Result(Status.FOUND, c.number, c.userId, c.messageId, tail, pages, messages);
+        }
+        onDone.accept(r);
+    }
+
+    private int runLength(int from) {
+        int len = 1;
+        while (from + len < counts.size() && counts.get(from + len).number == counts.get(from + len - 1).number - 1) len++;
+        return len;
+    }
+}
@@ -0,0 +1,115 @@
+package org.gudu0.countingbot.counting;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import org.gudu0.countingbot.guild.GuildContext;
+import org.gudu0.countingbot.guild.GuildManager;
+import org.gudu0.countingbot.util.ConsoleLog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Replays counting-channel messages the bot missed while it was down (or while a gateway session
+ * was being recreated).
+ * <p>
+ * Pages forward from the guild's last processed message id with getHistoryAfter, 100 messages per
+ * REST call, one call at a time. Each page is replayed oldest-first as one action on the guild's
+ * mailbox, through the same validation live messages get. The caller holds back live messages until
+ * {@code onDone}, so nothing is judged out of order.
+ * <p>
+ * Stops after {@code maxPages}; the caller then falls back to a resync (the gap is too big to replay).
+ * <p>
+ * A failed page fetch reports FAILED straight from the REST callback, not through the mailbox: the
+ * failure report must reach the caller (which is holding live messages) even if the guild's context
+ * is gone, and it touches no guild state.
+ */
+final class OfflineCatchUp {
+
+    static final int PAGE_SIZE = 100;
+
+    /** Replays one message; runs on the guild mailbox. */
+    interface Replayer {
+        void replay(GuildContext ctx, Message msg);
+    }
+
+    enum Status { DONE, CAPPED, FAILED }
+
+    record Result(Status status, int pages, int replayed) {}
+
+    private final GuildManager guilds;
+    private final long guildId;
+    private final MessageChannel channel;
+    private final int maxPages;
+    private final Replayer replayer;
+    private final Consumer<Result> onDone;
+
+    // Mailbox-confined (pages are applied on the guild's mailbox, one after another).
+    private int pages = 0;
+    private int replayed = 0;
+
+    OfflineCatchUp(GuildManager guilds, long guildId, MessageChannel channel, int maxPages,
+                   Replayer replayer, Consumer<Result> onDone) {
+        this.guilds = guilds;
+        this.guildId = guildId;
+        this.channel = channel;
+        this.maxPages = Math.max(1, maxPages);
+        this.replayer = replayer;
+        this.onDone = onDone;
+    }
+
+    void start(long afterMessageId) {
+        fetch(afterMessageId);
+    }
+
+    private void fetch(long afterMessageId) {
+        pages++;
+        try {
+            MessageHistory.getHistoryAfter(channel, Long.toUnsignedString(afterMessageId))
+                    .limit(PAGE_SIZE)
+                    .queue(h -> guilds.withContext(guildId, ctx -> onPage(ctx, h.getRetrievedHistory())),
+                            err -> {
+                                ConsoleLog.error("CatchUp", "guildId=" + guildId + " history page " + pages + " failed: " + err.getMessage(), err);
+                                finish(Status.FAILED);
+                            });
+        } catch (Exception e) {
+            ConsoleLog.error("CatchUp", "guildId=" + guildId + " history page " + pages + " failed: " + e.getMessage(), e);
+            finish(Status.FAILED);
+        }
+    }
+
+    // Runs on the guild mailbox: one page is one batch.
+    private void onPage(GuildContext ctx, List<Message> page) {
+        if (page.isEmpty()) {
+            finish(Status.DONE);
+            return;
+        }
+
+        List<Message> ordered = new ArrayList<>(page);
+        ordered.sort(Comparator.comparingLong(Message::getIdLong)); // oldest first (ids are time-ordered)
+
+        for (Message m : ordered) {
+            try {
+                replayer.replay(ctx, m);
+                replayed++;
+            } catch (Exception e) {
+                ConsoleLog.error("CatchUp", "guildId=" + guildId + " replay failed msgId=" + m.getId() + ": " + e.getMessage(), e);
+            }
+        }
+
+        if (page.size() < PAGE_SIZE) {
+            finish(Status.DONE);
+        } else if (pages >= maxPages) {
+            finish(Status.CAPPED);
+        } else {
+            fetch(ordered.get(ordered.size() - 1).getIdLong());
+        }
+    }
+
+    private void finish(Status status) {
+        onDone.accept(new Result(status, pages, replayed));
+    }
+}
@@ -1,17 +1,37 @@
 package org.gudu0.countingbot.counting;
 
+import org.gudu0.countingbot.util.ConsoleLog;
 import org.gudu0.countingbot.util.JsonStore;
 
 import java.nio.file.Path;
 
+/**
+ * Per-guild counting state: state.json snapshot + state.journal write-ahead log.
+ * <p>
+ * Use the record* methods (under {@link #lock}) for anything that changes counting progress;
+ * they apply the change and journal it in one step. The periodic state.json flush is the
+ * compaction step: once the snapshot is on disk the journal is truncated.
+ */
 @SuppressWarnings("unused")
 public class StateStore {
     public final Object lock;
     private final JsonStore<CountingState> store;
+    private final CountJournal journal;
 
     public StateStore(Path path) {
         this.store = new JsonStore<>(path, CountingState.class, CountingState::new, "state.json");
         this.lock = store.lock;
+        this.journal = new CountJournal(path.resolveSibling("state.journal"), "state.journal (" + path.getParent() + ")");
+
+        synchronized (lock) {
+            int replayed = journal.replayInto(store.get());
+            if (replayed > 0) {
+                ConsoleLog.info("StateStore", "Replayed " + replayed + " journal record(s) for " + path);
+                store.markDirty(); // fold them into state.json on the next compaction
+            }
+        }
+
+        store.onFlushed(journal::truncate);
     }
 
     public CountingState state() { return store.get(); }
@@ -20,4 +40,57 @@ public class StateStore {
     public void tryFlush() { store.tryFlush(); }
 
     public void flushNow() throws java.io.IOException { store.flushNow(); }
+
+    /** Applies the guild's countingDelaySeconds as the cooldown TTL (call on load and whenever it changes). */
+    public void setCooldownSeconds(int seconds) {
+        synchronized (lock) {
+            CountingState st = store.get();
+            st.userLastValidCountAt.setTtlMillis(seconds * 1000L);
+            st.userLastValidCountAt.evict(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Advances the catch-up cursor (caller holds lock). Not journaled on its own: accepted and invalid
+     * counts carry their message id in their journal record (recordCount / recordStreakReset), so after a
+     * crash catch-up never judges them twice. Only messages without state side effects (skipped, cooldown)
+     * may be re-judged, which at most repeats a delete.
+     */
+    public void markProcessed(long messageId) {
+        CountingState st = store.get();
+        if (messageId > st.lastProcessedMessageId) {
+            st.lastProcessedMessageId = messageId;
+            store.markDirty();
+        }
+    }
+
+    // ----------------------------
+    // Journaled mutations (caller holds lock)
+    // ----------------------------
+
+    public void recordCount(long number, long userId, long messageId, long atMillis) {
+        CountingState st = store.get();
+        st.applyCount(number, userId, messageId, atMillis);
+        journal.append(CountJournal.COUNT, ++st.journalSeq, number, userId, messageId, atMillis);
+        store.markDirty();
+    }
+
+    public void recordStreakReset() {
+        recordStreakReset(0);
+    }
+
+    /** Streak broken by the invalid count {@code messageId}; journals it as the catch-up cursor too. */
+    public void recordStreakReset(long messageId) {
+        CountingState st = store.get();
+        st.resetStreak(messageId);
+        journal.append(CountJournal.STREAK_RESET, ++st.journalSeq, 0, 0, messageId, System.currentTimeMillis());
+        store.markDirty();
+    }
+
+    public void recordResync(long number, long userId, long messageId) {
+        CountingState st = store.get();
+        st.applyResync(number, userId, messageId);
+        journal.append(CountJournal.RESYNC, ++st.journalSeq, number, userId, messageId, System.currentTimeMillis());
+        store.markDirty();
+    }
 }
@@ -2,53 +2,89 @@ package org.gudu0.countingbot.goals;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.EmbedBuilder;
-import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 import org.gudu0.countingbot.counting.StateStore;
 import org.gudu0.countingbot.config.GuildConfig;
 import org.gudu0.countingbot.util.ConsoleLog;
-
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-
+import org.gudu0.countingbot.util.TimerWheel;
+
+/**
+ * One guild's goal embed (pinned in the counting channel).
+ * <p>
+ * Rendering is dirty-driven: {@link #markDirty()} schedules one render on the registry's timer wheel
+ * after a short debounce (and no sooner than {@link #MIN_EDIT_INTERVAL_MS} after the previous edit),
+ * and the render is skipped if lastNumber hasn't moved since the last edit (or, with no active goal,
+ * if the "No active goal" embed is already up). Edits go straight to the stored message id; the
+ * message is only re-created when Discord says it is gone (UNKNOWN_MESSAGE).
+ * So goal REST traffic follows actual progress, not a fixed poll.
+ * <p>
+ * Progress renders land on this guild's phase within each edit interval (derived from the guild id),
+ * so guilds counting at the same time edit on different ticks instead of all at once.
+ * Goal commands skip the alignment and render on the next tick.
+ */
 @SuppressWarnings("unused")
 public class GoalsService {
+    private static final long DEBOUNCE_MS = 2_000;
+    private static final long MIN_EDIT_INTERVAL_MS = 5_000;
+
+    private final long guildId;
     private final GuildConfig cfg;
     private final GoalsStore goalsStore;
     private final StateStore stateStore;
 
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean dirty = new AtomicBoolean(true); // true so we render once at boot
+    // Shared by every GoalsService (owned by GuildGoalsServiceRegistry).
+    private final TimerWheel wheel;
+    private final int phase;       // this guild's tick within each edit interval
+    private final int phaseTicks;  // edit interval in ticks
 
     private volatile JDA jda;
 
-    // Throttle: only edit at most once every N seconds (when dirty).
-    @SuppressWarnings("FieldCanBeLocal")
-    private final long updatePeriodSeconds = 15;
+    // Render bookkeeping, guarded by "this".
+    private boolean dirty = true; // true so we render once at boot
+    private boolean force = false; // goal definition changed: render even if lastNumber didn't move
+    private boolean scheduled = false;
+    private boolean inFlight = false;
+    private long lastEditAtMs = 0;
+    private long lastActivityAtMs = System.currentTimeMillis();
 
-    public GoalsService(GuildConfig cfg, GoalsStore goalsStore, StateStore stateStore) {
+    public GoalsService(long guildId, GuildConfig cfg, GoalsStore goalsStore, StateStore stateStore, TimerWheel wheel) {
+        this.guildId = guildId;
         this.cfg = cfg;
         this.goalsStore = goalsStore;
         this.stateStore = stateStore;
+        this.wheel = wheel;
+        this.phaseTicks = (int) Math.max(1, MIN_EDIT_INTERVAL_MS / wheel.tickMs());
+        this.phase = (int) Math.floorMod(guildId * 0x9E3779B97F4A7C15L >>> 32, (long) phaseTicks);
     }
 
+    /** Renders once if the stored embed is out of date (not forced: a restart alone doesn't edit). */
     public void attach(JDA jda) {
         this.jda = jda;
-        ensureMessageExistsAndRender(true);
-
-        ConsoleLog.info("Goals - attach","Starting scheduler");
-        scheduler.scheduleAtFixedRate(() -> {
-            if (!dirty.get()) return;
-            ensureMessageExistsAndRender(false);
-        }, updatePeriodSeconds, updatePeriodSeconds, TimeUnit.SECONDS);
-
-        Runtime.getRuntime().addShutdownHook(new Thread(scheduler::shutdown));
+        requestRender(false);
     }
 
     /** Call this when progress *might* have changed (valid count, resync, etc.) */
     public void markDirty() {
-        dirty.set(true);
+        synchronized (this) {
+            dirty = true;
+            lastActivityAtMs = System.currentTimeMillis();
+            scheduleLocked(DEBOUNCE_MS);
+        }
+    }
+
+    /**
+     * True if the registry can drop this service: no active goal, nothing pending, and no
+     * {@link #markDirty()} for {@code idleMs}. A later count just creates a fresh one.
+     */
+    public boolean isEvictable(long nowMs, long idleMs) {
+        synchronized (this) {
+            if (dirty || scheduled || inFlight) return false;
+            if (nowMs - lastActivityAtMs < idleMs) return false;
+        }
+        return !goalsStore.state().active;
     }
 
     /** Updates goal definition and forces an immediate render. */
@@ -64,8 +100,7 @@ public class GoalsService {
         gs.lastRenderedNumber = Long.MIN_VALUE;
 
         goalsStore.markDirty();
-        markDirty();
-        ensureMessageExistsAndRender(true);
+        requestRender(true);
     }
 
     public void clearGoal() {
@@ -78,71 +113,133 @@ public class GoalsService {
         gs.lastRenderedNumber = Long.MIN_VALUE;
 
         goalsStore.markDirty();
-        markDirty();
-        ensureMessageExistsAndRender(true);
+        requestRender(true);
     }
 
-    private void ensureMessageExistsAndRender(boolean immediate) {
-        JDA j = this.jda;
-        if (j == null) return;
+    // ----------------------------
+    // Render scheduling
+    // ----------------------------
 
-        TextChannel ch = j.getTextChannelById(cfg.countingChannelId);
-        if (ch == null) return;
+    private void requestRender(boolean forced) {
+        synchronized (this) {
+            dirty = true;
+            lastActivityAtMs = System.currentTimeMillis();
+            if (forced) force = true;
+            scheduleLocked(0);
+        }
+    }
 
+    // Caller holds "this". At most one render queued or in flight.
+    private void scheduleLocked(long debounceMs) {
+        if (scheduled || inFlight || jda == null) return;
+
+        long tick;
+        if (force) {
+            tick = wheel.tickFor(0); // goal commands answer right away
+        } else {
+            long now = System.currentTimeMillis();
+            long delay = Math.max(debounceMs, lastEditAtMs + MIN_EDIT_INTERVAL_MS - now);
+            tick = wheel.tickFor(delay);
+            tick += Math.floorMod(phase - tick, (long) phaseTicks); // next tick on our phase
+        }
+
+        scheduled = true;
+        wheel.scheduleAt(tick, this::render);
+    }
+
+    private void render() {
+        JDA j = this.jda;
         GoalState gs = goalsStore.state();
+        long lastNumber = stateStore.state().lastNumber;
+        long messageId;
+
+        synchronized (this) {
+            scheduled = false;
+            if (!dirty || j == null) return;
+
+            // De-dupe: don’t edit if nothing meaningful changed.
+            // With no active goal the embed doesn't show progress, so any completed render is current
+            // (clearGoal resets lastRenderedNumber to force one).
+            boolean current = gs.lastRenderedNumber == lastNumber
+                    || (!gs.active && gs.lastRenderedNumber != Long.MIN_VALUE);
+            if (!force && gs.goalMessageId != 0 && current) {
+                dirty = false;
+                return;
+            }
+
+            dirty = false;
+            force = false;
+            inFlight = true;
+            messageId = gs.goalMessageId;
+        }
 
-        // Ensure message exists (or re-create if deleted)
-        if (gs.goalMessageId != 0) {
-            ch.retrieveMessageById(gs.goalMessageId).queue(
-                    msg -> renderTo(msg, gs),
-                    err -> {
-                        // Message was likely deleted. Recreate.
-                        gs.goalMessageId = 0;
+        try {
+            TextChannel ch = j.getTextChannelById(cfg.countingChannelId);
+            if (ch == null) {
+                renderDone(false);
+                return;
+            }
+
+            // If active goal, but bad target, treat as inactive.
+            if (gs.active && gs.target <= 0) gs.active = false;
+
+            if (messageId == 0) {
+                createMessage(ch, gs, lastNumber);
+                return;
+            }
+
+            ch.editMessageEmbedsById(messageId, buildEmbed().build()).queue(
+                    ok -> {
+                        gs.lastRenderedNumber = lastNumber;
                         goalsStore.markDirty();
-                        createMessage(ch, gs);
+                        if (ConsoleLog.DEBUG) {
+                            ConsoleLog.debug("Goals", "Edited goal message id=" + messageId + " lastNumber=" + lastNumber);
+                        }
+                        renderDone(true);
+                    },
+                    err -> {
+                        if (err instanceof ErrorResponseException ere && ere.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+                            // Message was deleted. Recreate.
+                            gs.goalMessageId = 0;
+                            goalsStore.markDirty();
+                            createMessage(ch, gs, lastNumber);
+                            return;
+                        }
+                        ConsoleLog.error("Goals", "guildId=" + guildId + " failed to edit goals message: " + err.getMessage());
+                        renderDone(false);
                     }
             );
-            return;
+        } catch (Exception e) {
+            ConsoleLog.error("Goals", "Goal render failed: " + e.getMessage(), e);
+            renderDone(false);
         }
-
-        createMessage(ch, gs);
     }
 
-    private void createMessage(TextChannel ch, GoalState gs) {
-
+    private void createMessage(TextChannel ch, GoalState gs, long lastNumber) {
         ch.sendMessageEmbeds(buildEmbed().build()).queue(
                 msg -> {
                     gs.goalMessageId = msg.getIdLong();
+                    gs.lastRenderedNumber = lastNumber;
                     goalsStore.markDirty();
                     // Try pin (optional; ignore failures)
                     msg.pin().queue(ok -> {}, err -> ConsoleLog.warn("Goals", "Goal pinning failed."));
-                    renderTo(msg, gs); // render actual contents right away
                     ConsoleLog.info("Goals", "Created goal message id=" + msg.getId());
+                    renderDone(true);
                 },
-                err -> ConsoleLog.error("Goals", "Failed to create goal message")
+                err -> {
+                    ConsoleLog.error("Goals", "Failed to create goal message");
+                    renderDone(false);
+                }
         );
     }
 
-    private void renderTo(Message msg, GoalState gs) {
-        long lastNumber = stateStore.state().lastNumber;
-
-        // De-dupe: don’t edit if nothing meaningful changed.
-        if (gs.lastRenderedNumber == lastNumber && !dirty.get()) return;
-
-        // If active goal, but bad target, treat as inactive.
-        if (gs.active && gs.target <= 0) gs.active = false;
-
-        msg.editMessageEmbeds(buildEmbed().build()).queue(
-                ok -> {
-                    gs.lastRenderedNumber = lastNumber;
-                    goalsStore.markDirty();
-                    dirty.set(false);
-                    if (ConsoleLog.DEBUG) {
-                        ConsoleLog.debug("Goals", "Edited goal message id=" + msg.getId() + " lastNumber=" + lastNumber);
-                    }
-                },
-                err -> ConsoleLog.error("Goals","Failed to edit goals message.")
-        );
+    private void renderDone(boolean ok) {
+        synchronized (this) {
+            inFlight = false;
+            lastEditAtMs = System.currentTimeMillis();
+            if (!ok) dirty = true; // retry on the next slot
+            if (dirty) scheduleLocked(DEBOUNCE_MS);
+        }
     }
 
     private EmbedBuilder buildEmbed() {
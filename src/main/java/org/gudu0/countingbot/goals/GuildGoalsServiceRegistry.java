@@ -4,6 +4,7 @@ import net.dv8tion.jda.api.JDA;
 import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildManager;
 import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.TimerWheel;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,19 +13,30 @@ import java.util.concurrent.ConcurrentHashMap;
  * Lazy per-guild GoalsService registry.
  * <p>
  * - Goals are per guild (stored under data/guilds/<guildId>/goals.json)
- * - Each guild gets its own scheduler + pinned/edited goal embed
- * - We only create a GoalsService when we actually need it (command / goal progress / resync).
+ * - Each guild gets its own pinned/edited goal embed; all of them render off one timer wheel
+ *   (one thread total, each guild's renders spread onto its own tick phase)
+ * - We only create a GoalsService when we actually need it (command / goal progress / resync),
+ *   and drop it again once the guild has no active goal and no activity for {@link #IDLE_EVICT_MS}.
  */
 public final class GuildGoalsServiceRegistry {
 
+    private static final long TICK_MS = 500;
+    private static final int WHEEL_SIZE = 128; // 64s per revolution; longer delays just wait extra laps
+    private static final long IDLE_EVICT_MS = 15 * 60_000L;
+    private static final long SWEEP_EVERY_MS = 60_000L;
+
     private final GuildManager guilds;
     private final ConcurrentHashMap<Long, GoalsService> map = new ConcurrentHashMap<>();
 
+    // One render thread for every guild's goal embed (renders are short; the REST call is async).
+    private final TimerWheel wheel = new TimerWheel("goal-render", TICK_MS, WHEEL_SIZE);
+
     // Attached at runtime once JDA is ready
     private volatile JDA jda;
 
     public GuildGoalsServiceRegistry(GuildManager guilds) {
         this.guilds = guilds;
+        wheel.schedule(SWEEP_EVERY_MS, this::sweep);
     }
 
     /**
@@ -49,7 +61,7 @@ public final class GuildGoalsServiceRegistry {
                 ConsoleLog.debug("GoalsRegistry", "Creating GoalsService for guildId=" + gid);
             }
             GuildContext ctx = guilds.get(gid);
-            GoalsService gs = new GoalsService(ctx.cfg, ctx.goalsStore, ctx.stateStore);
+            GoalsService gs = new GoalsService(gid, ctx.cfg, ctx.goalsStore, ctx.stateStore, wheel);
 
             JDA j = this.jda;
             if (j != null) {
@@ -70,4 +82,35 @@ public final class GuildGoalsServiceRegistry {
     public void markDirtyOrCreate(long guildId) {
         getOrCreate(guildId).markDirty();
     }
+
+    public int size() {
+        return map.size();
+    }
+
+    /** Renders (and the sweep) waiting on the timer wheel. */
+    public int pendingRenders() {
+        return wheel.pending();
+    }
+
+    // Runs on the wheel thread; reschedules itself.
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            int evicted = 0;
+            for (Map.Entry<Long, GoalsService> e : map.entrySet()) {
+                // remove(key, value): a service swapped in concurrently is left alone. A markDirty that
+                // races the eviction still renders through the dropped instance; the next count re-creates it.
+                if (e.getValue().isEvictable(now, IDLE_EVICT_MS) && map.remove(e.getKey(), e.getValue())) {
+                    evicted++;
+                }
+            }
+            if (evicted > 0 && ConsoleLog.DEBUG) {
+                ConsoleLog.debug("GoalsRegistry", "Evicted " + evicted + " idle GoalsService(s), " + map.size() + " left");
+            }
+        } catch (Exception e) {
+            ConsoleLog.error("GoalsRegistry", "Goal service sweep failed: " + e.getMessage(), e);
+        } finally {
+            wheel.schedule(SWEEP_EVERY_MS, this::sweep);
+        }
+    }
 }
@@ -2,8 +2,10 @@ package org.gudu0.countingbot.guild;
 
 import org.gudu0.countingbot.config.GuildConfig;
 import org.gudu0.countingbot.config.TypedConfigStore;
+import org.gudu0.countingbot.counting.DecisionStats;
 import org.gudu0.countingbot.counting.StateStore;
 import org.gudu0.countingbot.goals.GoalsStore;
+import org.gudu0.countingbot.stats.StatsStore;
 import org.gudu0.countingbot.util.BotPaths;
 import org.gudu0.countingbot.util.ConsoleLog;
 
@@ -27,6 +29,16 @@ public final class GuildContext {
     public final StateStore stateStore;
     public final GoalsStore goalsStore;
 
+    // Per-guild attribution of user stats (the global StatsStore still holds bot-wide totals)
+    public final StatsStore statsStore;
+
+    // Load timings (boot report)
+    public final long configLoadNanos;
+    public final long stateLoadNanos;
+
+    // Count decision latency (created on the first traced counting message)
+    private volatile DecisionStats decisionStats;
+
 
     public GuildContext(long guildId) {
         this.guildId = guildId;
@@ -37,28 +49,48 @@ public final class GuildContext {
         }
 
         // Load per-guild config
+        long t0 = System.nanoTime();
         Path cfgPath = dir.resolve("config.json");
         this.configStore = new TypedConfigStore<>(cfgPath, GuildConfig.class, GuildConfig::new);
         this.cfg = configStore.cfg();
+        long t1 = System.nanoTime();
 
         // Initialize per-guild state stores
         this.stateStore = new StateStore(dir.resolve("state.json"));
         this.goalsStore = new GoalsStore(dir.resolve("goals.json"));
+        this.statsStore = new StatsStore(dir.resolve("stats.json"));
+        this.stateStore.setCooldownSeconds(cfg.countingDelaySeconds);
+        long t2 = System.nanoTime();
+
+        this.configLoadNanos = t1 - t0;
+        this.stateLoadNanos = t2 - t1;
 
-        // Start autoflush on the per-guild stores (same cadence as before for now)
-        this.stateStore.startAutoFlush(5);
+        // Start autoflush on the per-guild stores.
+        // state.json is only a compaction point now (counts are durable via state.journal).
+        this.stateStore.startAutoFlush(60);
         this.goalsStore.startAutoFlush(10);
+        this.statsStore.startAutoFlush(10);
 
 
         // Helpful log for sanity
-        ConsoleLog.info(
-                "GuildContext",
-                "Loaded guild cfg guildId=" + guildId
-                        + " countingChannelId=" + cfg.countingChannelId
-                        + " delay=" + cfg.countingDelaySeconds
-                        + " enforceDelete=" + cfg.enforceDelete
-                        + " enableLogs=" + cfg.enableLogs
-                        + " logThreadId=" + cfg.logThreadId
-        );
+        ConsoleLog.at(ConsoleLog.Level.INFO, "GuildContext")
+                .kv("guildId", guildId)
+                .kv("countingChannelId", cfg.countingChannelId)
+                .kv("delay", cfg.countingDelaySeconds)
+                .kv("enforceDelete", String.valueOf(cfg.enforceDelete))
+                .kv("enableLogs", String.valueOf(cfg.enableLogs))
+                .kv("logThreadId", cfg.logThreadId)
+                .log("Loaded guild cfg");
+    }
+
+    public DecisionStats decisionStats() {
+        DecisionStats s = decisionStats;
+        if (s == null) {
+            synchronized (this) {
+                s = decisionStats;
+                if (s == null) decisionStats = s = new DecisionStats();
+            }
+        }
+        return s;
     }
 }
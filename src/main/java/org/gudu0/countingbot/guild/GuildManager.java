@@ -2,49 +2,223 @@ package org.gudu0.countingbot.guild;
 
 import org.gudu0.countingbot.util.ConsoleLog;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 /**
  * Caches and serves GuildContext objects.
  * <p>
- * This is the main "router" dependency you'll inject into listeners later.
+ * Loading is asynchronous and single-flight: the first caller for a guild starts one load on the
+ * bounded guild I/O pool (config.json/state.json/goals.json reads), everyone else shares that future.
+ * <p>
+ * Each guild is also an actor: {@link #withContext(long, Consumer)} appends to the guild's mailbox, and
+ * at most one drain per guild runs at a time (on a shared actor pool). So everything a guild does
+ * through its mailbox (count decisions, deletes, resync results) is serialized without holding a
+ * monitor across the read-decide-write, while different guilds run in parallel.
+ * <p>
+ * The actor pool is a small fixed set of platform threads, not virtual threads: mailbox actions can
+ * block inside {@code synchronized} sections that do file I/O and fsync (JsonStore/StateStore flushes,
+ * DeltaLog appends), which on Java 21 would pin the carrier threads and let a few slow disks stall
+ * every guild. A fixed pool bounds that to its own threads; drains yield after {@link #DRAIN_BATCH}
+ * actions so one busy guild cannot hold a thread for long.
  */
 public final class GuildManager {
 
-    private final ConcurrentHashMap<Long, GuildContext> contexts = new ConcurrentHashMap<>();
+    private static final int DEFAULT_IO_THREADS = 4;
+    private static final int ACTOR_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    // Actions per drain before yielding the thread to other guilds (re-submits itself if more are queued).
+    private static final int DRAIN_BATCH = 64;
+
+    /** One per guild: the load future plus the guild's mailbox. */
+    private static final class Slot {
+        final long guildId;
+        final CompletableFuture<GuildContext> future = new CompletableFuture<>();
+        final ArrayDeque<Consumer<GuildContext>> mailbox = new ArrayDeque<>();
+        boolean scheduled = false; // a drain is queued or running
+        boolean failed = false;    // the load failed; the slot is dead and takes no more actions
+
+        Slot(long guildId) {
+            this.guildId = guildId;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final ExecutorService io;
+    private final ExecutorService actors;
+    private final LongFunction<GuildContext> loader;
+
+    public GuildManager() {
+        this(DEFAULT_IO_THREADS);
+    }
+
+    public GuildManager(int ioThreads) {
+        this(ioThreads, GuildContext::new);
+    }
+
+    /** {@code loader} builds a guild's context on the I/O pool (tests wrap it to count or delay loads). */
+    GuildManager(int ioThreads, LongFunction<GuildContext> loader) {
+        this.loader = loader;
+        AtomicInteger n = new AtomicInteger();
+        this.io = Executors.newFixedThreadPool(Math.max(1, ioThreads), r -> {
+            Thread t = new Thread(r, "guild-io-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        AtomicInteger a = new AtomicInteger();
+        this.actors = Executors.newFixedThreadPool(ACTOR_THREADS, r -> {
+            Thread t = new Thread(r, "guild-actor-" + a.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
     /**
-     * Load or retrieve a cached GuildContext.
-     * Logs cache hits/misses for easy debugging.
+     * Starts (or joins) the async load of a guild. Never blocks.
      */
-    public GuildContext get(long guildId) {
-        GuildContext existing = contexts.get(guildId);
+    public CompletableFuture<GuildContext> load(long guildId) {
+        Slot existing = slots.get(guildId);
         if (existing != null) {
-            if (ConsoleLog.DEBUG) {
-                ConsoleLog.debug("GuildManager", "Cache hit guildId=" + guildId);
+            ConsoleLog.at(ConsoleLog.Level.DEBUG, "GuildManager").kv("guildId", guildId).log("Cache hit");
+            return existing.future;
+        }
+
+        Slot created = new Slot(guildId);
+        Slot raced = slots.putIfAbsent(guildId, created);
+        if (raced != null) return raced.future; // someone else is already loading it (nothing built, nothing leaked)
+
+        ConsoleLog.at(ConsoleLog.Level.INFO, "GuildManager").kv("guildId", guildId).log("Cache miss (loading context)");
+        io.execute(() -> {
+            try {
+                GuildContext ctx = loader.apply(guildId);
+                ConsoleLog.at(ConsoleLog.Level.DEBUG, "GuildManager").kv("guildId", guildId).log("Context ready");
+                created.future.complete(ctx);
+                synchronized (created) {
+                    scheduleDrain(created);
+                }
+            } catch (Throwable t) {
+                ConsoleLog.error("GuildManager", "Failed to load context guildId=" + guildId + ": " + t.getMessage(), t);
+                // Mark dead before emptying the mailbox: withContext checks the flag under the same
+                // monitor, so nothing can be queued after the clear and sit here forever.
+                int dropped;
+                synchronized (created) {
+                    created.failed = true;
+                    dropped = created.mailbox.size();
+                    created.mailbox.clear();
+                }
+                slots.remove(guildId, created); // allow a retry on the next event
+                if (dropped > 0) {
+                    ConsoleLog.warn("GuildManager", "Dropped " + dropped + " queued event(s) for guildId=" + guildId);
+                }
+                created.future.completeExceptionally(t);
             }
-            return existing;
+        });
+        return created.future;
+    }
+
+    /**
+     * Load or retrieve a cached GuildContext, blocking until it is ready.
+     * Fine for slash commands; gateway hot paths should use {@link #withContext(long, Consumer)}.
+     */
+    public GuildContext get(long guildId) {
+        return load(guildId).join();
+    }
+
+    /** Returns the context if it is already loaded, otherwise null (does not start a load). */
+    public GuildContext getIfLoaded(long guildId) {
+        Slot s = slots.get(guildId);
+        return s != null ? s.future.getNow(null) : null;
+    }
+
+    /**
+     * Queues {@code action} on the guild's mailbox. Actions for one guild run one at a time, in arrival
+     * order, once the context is loaded; the caller never blocks and never runs the action itself.
+     * <p>
+     * If the load fails, queued actions are dropped (and logged). An action that arrives after the
+     * failure starts one fresh load instead of joining the dead slot.
+     */
+    public void withContext(long guildId, Consumer<GuildContext> action) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            load(guildId);
+            Slot slot = slots.get(guildId);
+            if (slot == null) continue; // failed and removed in between; try a fresh slot
+
+            synchronized (slot) {
+                if (slot.failed) {
+                    slots.remove(guildId, slot); // the loader may not have removed it yet
+                    continue;
+                }
+                slot.mailbox.add(action);
+                if (slot.future.isDone()) scheduleDrain(slot);
+            }
+            return;
         }
+        ConsoleLog.warn("GuildManager", "Dropped event for guildId=" + guildId + " (context failed to load)");
+    }
 
-        ConsoleLog.info("GuildManager", "Cache miss guildId=" + guildId + " (creating context)");
-        GuildContext created = new GuildContext(guildId);
+    // Caller holds the slot monitor.
+    private void scheduleDrain(Slot slot) {
+        if (slot.scheduled || slot.mailbox.isEmpty()) return;
+        slot.scheduled = true;
+        actors.execute(() -> drain(slot));
+    }
+
+    private void drain(Slot slot) {
+        GuildContext ctx = slot.future.getNow(null);
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            Consumer<GuildContext> next;
+            synchronized (slot) {
+                next = slot.mailbox.poll();
+                if (next == null) {
+                    slot.scheduled = false;
+                    return;
+                }
+            }
+            try {
+                next.accept(ctx);
+            } catch (Exception e) {
+                ConsoleLog.error("GuildManager", "Guild action failed guildId=" + slot.guildId + ": " + e.getMessage(), e);
+            }
+        }
 
-        GuildContext raced = contexts.putIfAbsent(guildId, created);
-        if (raced != null) {
-            ConsoleLog.warn("GuildManager", "Race: another thread created context first guildId=" + guildId);
-            return raced;
+        // Batch used up: go to the back of the executor so one busy guild can't starve the rest.
+        synchronized (slot) {
+            slot.scheduled = false;
+            scheduleDrain(slot);
         }
+    }
 
-        if (ConsoleLog.DEBUG) {
-            ConsoleLog.debug("GuildManager", "Context ready guildId=" + guildId);
+    /** Actions waiting in this guild's mailbox (0 if not loaded). */
+    public int mailboxDepth(long guildId) {
+        Slot s = slots.get(guildId);
+        if (s == null) return 0;
+        synchronized (s) {
+            return s.mailbox.size();
+        }
+    }
+
+    /** Actions waiting across every guild's mailbox. */
+    public int mailboxDepthTotal() {
+        int n = 0;
+        for (Slot s : slots.values()) {
+            synchronized (s) {
+                n += s.mailbox.size();
+            }
         }
-        return created;
+        return n;
     }
 
     /**
      * Optional helper for debugging.
      */
     public int cachedCount() {
-        return contexts.size();
+        return slots.size();
     }
 }
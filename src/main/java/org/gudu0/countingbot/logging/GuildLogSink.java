@@ -0,0 +1,98 @@
+package org.gudu0.countingbot.logging;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Buffered log lines for one guild's log thread.
+ * <p>
+ * Lines queue up (bounded) and are drained once per window into a single message of at most
+ * {@link #MAX_MESSAGE_CHARS}. Lines that arrive while the queue is full are not kept; they are
+ * counted per {@link LogService.Kind} and turned into one summary line ("+37 more deletions").
+ * <p>
+ * All methods are called with the sink's monitor held by LogService.
+ */
+final class GuildLogSink {
+
+    static final int MAX_MESSAGE_CHARS = 2000;
+    private static final int SUMMARY_RESERVE = 160; // room for the "+N more ..." line
+
+    private record Line(LogService.Kind kind, String text) {}
+
+    final long guildId;
+    private final int capacity;
+
+    private final ArrayDeque<Line> queue = new ArrayDeque<>();
+    private final EnumMap<LogService.Kind, Integer> overflow = new EnumMap<>(LogService.Kind.class);
+
+    // A flush is scheduled (window running) / a send is on its way to Discord.
+    boolean armed = false;
+    boolean inFlight = false;
+
+    GuildLogSink(long guildId, int capacity) {
+        this.guildId = guildId;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /** Queues a line; returns false if it was dropped (counted into the overflow summary). */
+    boolean add(LogService.Kind kind, String text) {
+        if (queue.size() >= capacity) {
+            overflow.merge(kind, 1, Integer::sum);
+            return false;
+        }
+        queue.add(new Line(kind, text));
+        return true;
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty() && overflow.isEmpty();
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Takes as many queued lines as fit in one message, plus the overflow summary if there is one.
+     * Returns null if there is nothing to send.
+     */
+    String drainMessage() {
+        if (isEmpty()) return null;
+
+        int budget = MAX_MESSAGE_CHARS - (overflow.isEmpty() ? 0 : SUMMARY_RESERVE);
+        StringBuilder sb = new StringBuilder();
+
+        while (!queue.isEmpty()) {
+            String text = clip(queue.peek().text(), budget);
+            int needed = (sb.isEmpty() ? 0 : 1) + text.length();
+            if (sb.length() + needed > budget) break;
+
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(text);
+            queue.poll();
+        }
+
+        if (!overflow.isEmpty()) {
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(summary());
+            overflow.clear();
+        }
+        return sb.toString();
+    }
+
+    private String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<LogService.Kind, Integer> e : overflow.entrySet()) {
+            if (!sb.isEmpty()) sb.append(", ");
+            int n = e.getValue();
+            sb.append('+').append(n).append(" more ").append(n == 1 ? e.getKey().singular : e.getKey().plural);
+        }
+        return clip(sb.toString(), SUMMARY_RESERVE);
+    }
+
+    private static String clip(String s, int max) {
+        if (s.length() <= max) return s;
+        return s.substring(0, Math.max(0, max - 3)) + "...";
+    }
+}
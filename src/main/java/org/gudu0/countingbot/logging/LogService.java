@@ -5,20 +5,77 @@ import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import org.gudu0.countingbot.guild.GuildContext;
 import org.gudu0.countingbot.guild.GuildManager;
 import org.gudu0.countingbot.util.ConsoleLog;
+import org.gudu0.countingbot.util.LatencyHistogram;
 
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Guild log thread output.
+ * <p>
+ * {@link #log} never talks to Discord directly: lines go into a small per-guild buffer and one shared
+ * "log-sink" thread turns each guild's buffer into at most one message per window (up to 2000 chars).
+ * A guild has at most one send in flight; while Discord is slow or rate limiting us, lines keep
+ * queueing, and once the buffer is full they are only counted and show up as "+N more deletions".
+ * So a burst of trolling costs a couple of log messages instead of one REST call per deleted count,
+ * and leaves the bucket to the deletes themselves.
+ * <p>
+ * Everything is still written to the console immediately.
+ */
 public class LogService {
 
     public static final ZoneId ZONE = ZoneId.of("America/Los_Angeles");
     public static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    private static final long DEFAULT_WINDOW_MS = 2000;
+    private static final int DEFAULT_QUEUE_CAPACITY = 50;
+
+    /** What a line is about; only used to word the overflow summary. */
+    public enum Kind {
+        DELETION("deletion", "deletions"),
+        ACHIEVEMENT("achievement unlock", "achievement unlocks"),
+        RESYNC("resync", "resyncs"),
+        OTHER("log line", "log lines");
+
+        final String singular;
+        final String plural;
+
+        Kind(String singular, String plural) {
+            this.singular = singular;
+            this.plural = plural;
+        }
+    }
+
     private final GuildManager guilds;
     private volatile JDA jda;
 
+    private final long windowMs;
+    private final int queueCapacity;
+    private final ConcurrentHashMap<Long, GuildLogSink> sinks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sinkExec;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final LatencyHistogram sendLatency = new LatencyHistogram(); // ms, send -> Discord answered
+
     public LogService(GuildManager guilds) {
+        this(guilds, DEFAULT_WINDOW_MS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public LogService(GuildManager guilds, long windowMs, int queueCapacity) {
         this.guilds = guilds;
+        this.windowMs = Math.max(100, windowMs);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.sinkExec = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-sink");
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public void attach(JDA jda) {
@@ -30,25 +87,130 @@ public class LogService {
     }
 
     public void log(long guildId, String message) {
+        log(guildId, Kind.OTHER, message);
+    }
+
+    public void log(long guildId, Kind kind, String message) {
         // Always console-log
         ConsoleLog.info("LogService", "guildId=" + guildId + " | " + message);
 
-        JDA j = this.jda;
-        if (j == null) return;
+        if (this.jda == null) return;
 
         GuildContext ctx = guilds.get(guildId);
         if (!ctx.cfg.enableLogs) return;
         if (ctx.cfg.logThreadId == null || ctx.cfg.logThreadId.isBlank()) return;
 
+        GuildLogSink sink = sinks.computeIfAbsent(guildId, id -> new GuildLogSink(id, queueCapacity));
+        synchronized (sink) {
+            if (!sink.add(kind, message)) dropped.incrementAndGet();
+            arm(sink);
+        }
+    }
+
+    // ----------------------------
+    // Metrics
+    // ----------------------------
+
+    /** Lines waiting across all guilds. */
+    public int queueDepth() {
+        int n = 0;
+        for (GuildLogSink s : sinks.values()) {
+            synchronized (s) {
+                n += s.depth();
+            }
+        }
+        return n;
+    }
+
+    public int queueDepth(long guildId) {
+        GuildLogSink s = sinks.get(guildId);
+        if (s == null) return 0;
+        synchronized (s) {
+            return s.depth();
+        }
+    }
+
+    /** Lines that never got their own row in a log message (summarized instead). */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /** Log message send round trips (ms), successful or not. */
+    public LatencyHistogram sendLatency() {
+        return sendLatency;
+    }
+
+    /** Coalesced messages handed to Discord. */
+    public long sentMessages() {
+        return sent.get();
+    }
+
+    // ----------------------------
+    // Flushing (log-sink thread)
+    // ----------------------------
+
+    // Caller holds the sink monitor.
+    private void arm(GuildLogSink sink) {
+        if (sink.armed || sink.inFlight) return; // the running window / completion will pick it up
+        sink.armed = true;
+        sinkExec.schedule(() -> flush(sink), windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(GuildLogSink sink) {
+        long guildId = sink.guildId;
+        try {
+            String message;
+            synchronized (sink) {
+                sink.armed = false;
+                if (sink.inFlight) return;
+                message = sink.drainMessage();
+                if (message == null) return;
+                sink.inFlight = true;
+            }
+
+            MessageChannel ch = resolveChannel(guildId);
+            if (ch == null) {
+                sendDone(sink);
+                return;
+            }
+
+            sent.incrementAndGet();
+            long t0 = System.nanoTime();
+            ch.sendMessage(message).queue(
+                    ok -> {
+                        sendLatency.record((System.nanoTime() - t0) / 1_000_000);
+                        sendDone(sink);
+                    },
+                    err -> {
+                        sendLatency.record((System.nanoTime() - t0) / 1_000_000);
+                        ConsoleLog.error("LogService", "guildId=" + guildId + " failed sending log: " + err.getMessage(), err);
+                        sendDone(sink);
+                    }
+            );
+        } catch (Exception e) {
+            ConsoleLog.error("LogService", "guildId=" + guildId + " log flush failed: " + e.getMessage(), e);
+            sendDone(sink);
+        }
+    }
+
+    private void sendDone(GuildLogSink sink) {
+        synchronized (sink) {
+            sink.inFlight = false;
+            if (!sink.isEmpty()) arm(sink);
+        }
+    }
+
+    private MessageChannel resolveChannel(long guildId) {
+        JDA j = this.jda;
+        GuildContext ctx = guilds.getIfLoaded(guildId);
+        if (j == null || ctx == null) return null;
+        if (!ctx.cfg.enableLogs) return null;
+        if (ctx.cfg.logThreadId == null || ctx.cfg.logThreadId.isBlank()) return null;
+
         MessageChannel ch = j.getChannelById(MessageChannel.class, ctx.cfg.logThreadId);
         if (ch == null) {
             ConsoleLog.warn("LogService", "guildId=" + guildId + " logThreadId not found: " + ctx.cfg.logThreadId);
-            return;
         }
-
-        ch.sendMessage(message).queue(
-                ok -> {},
-                err -> ConsoleLog.error("LogService", "guildId=" + guildId + " failed sending log: " + err.getMessage(), err)
-        );
+        return ch;
     }
 }
@@ -0,0 +1,22 @@
+package org.gudu0.countingbot.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic counter (LongAdder: cheap under contention). Get one from {@link Metrics#counter}. */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {}
+
+    public void inc() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
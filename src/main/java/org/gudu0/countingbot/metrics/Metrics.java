@@ -0,0 +1,167 @@
+package org.gudu0.countingbot.metrics;
+
+import org.gudu0.countingbot.util.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide metrics registry, rendered in the Prometheus text format by {@link #scrape()}
+ * (served by {@link MetricsServer}).
+ * <p>
+ * - counters: {@link Counter} owned by the registry, or a function over a counter a component already keeps
+ * - gauges: functions, sampled at scrape time (queue depths, loaded guilds, ...)
+ * - histograms: {@link LatencyHistogram}s, exported with fixed cumulative buckets; values are recorded in
+ *   the histogram's own unit (ms, ns) and converted to seconds on export
+ * <p>
+ * Every series may carry one label (e.g. reason="cooldown"). Registering the same name + label again
+ * returns the existing counter/histogram, or replaces a function (last registration wins).
+ * Hot paths should look their counters up once (static final) and only call inc(). Histograms shared by
+ * every guild cost a few contended atomics per record, so per-event hot paths time only a
+ * {@link #sampled()} subset.
+ */
+public final class Metrics {
+    private Metrics() {}
+
+    /** Bucket bounds (in ms) for REST round trips. */
+    public static final long[] MILLIS_BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000};
+    /** Bucket bounds (in µs) for spans that mix in-process work and REST round trips. */
+    public static final long[] MICROS_BUCKETS = {10, 50, 100, 500, 1_000, 5_000, 10_000, 50_000, 100_000,
+            250_000, 500_000, 1_000_000, 2_500_000, 10_000_000};
+    /** Bucket bounds (in ns) for lock waits and in-process work. */
+    public static final long[] NANOS_BUCKETS = {1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+    /** One in this many {@link #sampled()} calls answers true. */
+    public static final int SAMPLE_EVERY = 64;
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    private record Histo(LatencyHistogram h, double unitsPerSecond, long[] bounds) {}
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final ConcurrentHashMap<String, Object> series = new ConcurrentHashMap<>(); // label text -> value source
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    /** True for about 1 in {@link #SAMPLE_EVERY} calls; thread-local, touches no shared state. */
+    public static boolean sampled() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0;
+    }
+
+    // ----------------------------
+    // Registration
+    // ----------------------------
+
+    public static Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    public static Counter counter(String name, String help, String label, String value) {
+        return (Counter) family(name, help, Type.COUNTER).series.computeIfAbsent(labels(label, value), k -> new Counter());
+    }
+
+    /** A counter whose value lives elsewhere (e.g. an AtomicLong a component already keeps). */
+    public static void counterFn(String name, String help, String label, String value, LongSupplier fn) {
+        family(name, help, Type.COUNTER).series.put(labels(label, value), fn);
+    }
+
+    public static void gauge(String name, String help, LongSupplier fn) {
+        gauge(name, help, null, null, fn);
+    }
+
+    public static void gauge(String name, String help, String label, String value, LongSupplier fn) {
+        family(name, help, Type.GAUGE).series.put(labels(label, value), fn);
+    }
+
+    /** New (or existing) histogram recording in a unit with {@code unitsPerSecond} (1000 for ms). */
+    public static LatencyHistogram histogram(String name, String help, String label, String value,
+                                             double unitsPerSecond, long[] bounds) {
+        Histo h = (Histo) family(name, help, Type.HISTOGRAM).series.computeIfAbsent(labels(label, value),
+                k -> new Histo(new LatencyHistogram(), unitsPerSecond, bounds));
+        return h.h;
+    }
+
+    /** Exports a histogram a component already keeps. */
+    public static void histogram(String name, String help, String label, String value,
+                                 double unitsPerSecond, long[] bounds, LatencyHistogram existing) {
+        family(name, help, Type.HISTOGRAM).series.put(labels(label, value), new Histo(existing, unitsPerSecond, bounds));
+    }
+
+    private static Family family(String name, String help, Type type) {
+        Family f = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (f.type != type) throw new IllegalArgumentException("Metric " + name + " already registered as " + f.type);
+        return f;
+    }
+
+    private static String labels(String label, String value) {
+        if (label == null) return "";
+        return "{" + label + "=\"" + escape(value) + "\"}";
+    }
+
+    // ----------------------------
+    // Exposition
+    // ----------------------------
+
+    /** Prometheus text exposition format 0.0.4, families sorted by name. */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family f : new TreeMap<>(FAMILIES).values()) {
+            sb.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(f.name).append(' ').append(f.type.name().toLowerCase()).append('\n');
+
+            for (Map.Entry<String, Object> e : new TreeMap<>(f.series).entrySet()) {
+                String labels = e.getKey();
+                switch (e.getValue()) {
+                    case Counter c -> sample(sb, f.name, labels, c.get());
+                    case LongSupplier fn -> sample(sb, f.name, labels, safe(fn));
+                    case Histo h -> histogramSamples(sb, f.name, labels, h);
+                    default -> {}
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void histogramSamples(StringBuilder sb, String name, String labels, Histo h) {
+        // Inner label list without braces, so "le" can be appended.
+        String inner = labels.isEmpty() ? "" : labels.substring(1, labels.length() - 1) + ",";
+        for (long bound : h.bounds) {
+            sb.append(name).append("_bucket{").append(inner).append("le=\"")
+                    .append(bound / h.unitsPerSecond).append("\"} ").append(h.h.countAtOrBelow(bound)).append('\n');
+        }
+        long count = h.h.count();
+        sb.append(name).append("_bucket{").append(inner).append("le=\"+Inf\"} ").append(count).append('\n');
+        sb.append(name).append("_sum").append(labels).append(' ').append(h.h.sum() / h.unitsPerSecond).append('\n');
+        sb.append(name).append("_count").append(labels).append(' ').append(count).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static long safe(LongSupplier fn) {
+        try {
+            return fn.getAsLong();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static String escape(String v) {
+        if (v == null) return "";
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
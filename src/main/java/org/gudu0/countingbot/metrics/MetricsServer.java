@@ -0,0 +1,66 @@
+package org.gudu0.countingbot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.gudu0.countingbot.util.ConsoleLog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link Metrics#scrape()} at GET /metrics (JDK HttpServer, one daemon thread).
+ * Meant for a local scraper; bind it to 127.0.0.1 unless something else fronts it.
+ */
+public final class MetricsServer {
+
+    private final HttpServer server;
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts the endpoint, or returns null if {@code port} is 0 (disabled) or the port can't be bound
+     * (the bot keeps running without metrics).
+     */
+    public static MetricsServer start(String bindAddress, int port) {
+        if (port <= 0) return null;
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+            server.createContext("/metrics", MetricsServer::handle);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            ConsoleLog.info("Metrics", "Serving metrics on http://" + bindAddress + ":" + port + "/metrics");
+            return new MetricsServer(server);
+        } catch (IOException | RuntimeException e) {
+            ConsoleLog.error("Metrics", "Failed to start metrics endpoint on " + bindAddress + ":" + port + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            if (!"GET".equals(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package org.gudu0.countingbot.stats;
+
+import org.gudu0.countingbot.util.LongLongMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Incrementally maintained leaderboards for one {@link StatsData}.
+ * <p>
+ * /leaderboard never copies or sorts the user map:
+ * - top(n):  first n entries of a score-ordered tree, O(log U + n)
+ * - rank(u): order-statistic treap of "users per distinct score", O(log D) with D <= U
+ * <p>
+ * The count path only {@link #record records} a changed score: an array append into one of
+ * {@link #STRIPES} buffers, picked by userId like the StatsData shards, so different users' counts
+ * never meet on a shared lock. The trees have a single writer: whoever holds {@link #writer} drains
+ * every buffer and applies the batch. Readers drain before they read (so they see every recorded
+ * change), and a counting thread whose buffer filled up drains if nobody else is ({@link #drainIfIdle}).
+ */
+public final class LeaderboardIndex {
+
+    public enum Metric { CORRECT, INCORRECT }
+
+    public record Entry(long userId, long score) {}
+
+    /** Passed to {@link #record} for a metric that did not change. */
+    static final long UNCHANGED = -1;
+
+    static final int STRIPES = 64; // power of two
+    static final int DRAIN_AT = 256; // buffered changes per stripe before a counting thread drains
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    // Guards the boards and the drain scratch space.
+    private final ReentrantLock writer = new ReentrantLock();
+    private final Board correct = new Board();
+    private final Board incorrect = new Board();
+    private final Stripe batch = new Stripe();
+
+    public LeaderboardIndex() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    /**
+     * Buffers one user's new scores ({@link #UNCHANGED} for a metric that did not move).
+     * StatsData calls this under the user's shard lock, so one user's changes are buffered in the
+     * order they happened; the call itself is an append under an uncontended stripe monitor.
+     *
+     * @return true once the stripe holds {@link #DRAIN_AT} changes; the caller should
+     *         {@link #drainIfIdle()} after releasing its own lock
+     */
+    boolean record(long userId, long correctScore, long incorrectScore) {
+        if (correctScore == UNCHANGED && incorrectScore == UNCHANGED) return false;
+        Stripe s = stripes[(int) ((userId * 0x9E3779B97F4A7C15L) >>> 58) & (STRIPES - 1)];
+        synchronized (s) {
+            s.add(userId, correctScore, incorrectScore);
+            return s.count >= DRAIN_AT;
+        }
+    }
+
+    /** Applies buffered changes unless another thread is already doing so. */
+    void drainIfIdle() {
+        if (!writer.tryLock()) return;
+        try {
+            drain();
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    public List<Entry> top(Metric metric, int n) {
+        writer.lock();
+        try {
+            drain();
+            return board(metric).top(n);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /** 1-based competition rank (ties share a rank), or 0 if the user has no stats. */
+    public long rank(Metric metric, long userId) {
+        writer.lock();
+        try {
+            drain();
+            return board(metric).rank(userId);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    public int size() {
+        writer.lock();
+        try {
+            drain();
+            return correct.size();
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private Board board(Metric metric) {
+        return metric == Metric.CORRECT ? correct : incorrect;
+    }
+
+    // Caller holds writer. Stripe monitors are held only to copy the buffer out.
+    private void drain() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                if (s.count == 0) continue;
+                batch.copyFrom(s);
+                s.count = 0;
+            }
+            for (int k = 0; k < batch.count; k++) {
+                if (batch.correct[k] != UNCHANGED) correct.set(batch.ids[k], batch.correct[k]);
+                if (batch.incorrect[k] != UNCHANGED) incorrect.set(batch.ids[k], batch.incorrect[k]);
+            }
+            batch.count = 0;
+        }
+    }
+
+    // ----------------------------
+    // Pending changes
+    // ----------------------------
+
+    private static final class Stripe {
+        long[] ids = new long[16];
+        long[] correct = new long[16];
+        long[] incorrect = new long[16];
+        int count;
+
+        void add(long userId, long correctScore, long incorrectScore) {
+            if (count == ids.length) grow(count * 2);
+            ids[count] = userId;
+            correct[count] = correctScore;
+            incorrect[count] = incorrectScore;
+            count++;
+        }
+
+        void copyFrom(Stripe s) {
+            if (ids.length < s.count) grow(s.count);
+            System.arraycopy(s.ids, 0, ids, 0, s.count);
+            System.arraycopy(s.correct, 0, correct, 0, s.count);
+            System.arraycopy(s.incorrect, 0, incorrect, 0, s.count);
+            count = s.count;
+        }
+
+        private void grow(int cap) {
+            ids = Arrays.copyOf(ids, cap);
+            correct = Arrays.copyOf(correct, cap);
+            incorrect = Arrays.copyOf(incorrect, cap);
+        }
+    }
+
+    // ----------------------------
+    // One metric (guarded by writer)
+    // ----------------------------
+
+    private static final class Board {
+        // Highest score first, then lowest userId for a stable order.
+        private final TreeSet<Entry> ordered = new TreeSet<>((a, b) -> {
+            int c = Long.compare(b.score, a.score);
+            return c != 0 ? c : Long.compare(a.userId, b.userId);
+        });
+        private final LongLongMap scoreOf = new LongLongMap();
+        private final ScoreCounts counts = new ScoreCounts();
+
+        void set(long userId, long score) {
+            long old = scoreOf.get(userId, -1);
+            if (old == score) return;
+            scoreOf.put(userId, score);
+            if (old >= 0) {
+                ordered.remove(new Entry(userId, old));
+                counts.add(old, -1);
+            }
+            ordered.add(new Entry(userId, score));
+            counts.add(score, +1);
+        }
+
+        List<Entry> top(int n) {
+            List<Entry> out = new ArrayList<>(Math.min(n, ordered.size()));
+            for (Entry e : ordered) {
+                if (out.size() >= n) break;
+                out.add(e);
+            }
+            return out;
+        }
+
+        long rank(long userId) {
+            long score = scoreOf.get(userId, -1);
+            if (score < 0) return 0;
+            return counts.countAbove(score) + 1;
+        }
+
+        int size() {
+            return scoreOf.size();
+        }
+    }
+
+    /**
+     * Users per distinct score: a treap keyed by score, each node holding its user count and the
+     * user total of its subtree. Memory is O(distinct scores) and a score whose last user leaves is
+     * removed, so neither grows with the size of the best score.
+     */
+    private static final class ScoreCounts {
+        private static final class Node {
+            final long score;
+            final int priority;
+            long count; // users at exactly this score
+            long sum;   // users in this subtree
+            Node left, right;
+
+            Node(long score, int priority) {
+                this.score = score;
+                this.priority = priority;
+            }
+        }
+
+        private final SplittableRandom priorities = new SplittableRandom(0x5EED);
+        private Node root;
+
+        void add(long score, long delta) {
+            root = add(root, score, delta);
+        }
+
+        /** Number of users with a strictly higher score. */
+        long countAbove(long score) {
+            long above = 0;
+            Node n = root;
+            while (n != null) {
+                if (score < n.score) {
+                    above += n.count + sum(n.right);
+                    n = n.left;
+                } else if (score > n.score) {
+                    n = n.right;
+                } else {
+                    return above + sum(n.right);
+                }
+            }
+            return above;
+        }
+
+        private Node add(Node n, long score, long delta) {
+            if (n == null) {
+                if (delta <= 0) return null;
+                n = new Node(score, priorities.nextInt());
+                n.count = delta;
+                n.sum = delta;
+                return n;
+            }
+            if (score == n.score) {
+                n.count += delta;
+                if (n.count <= 0) return merge(n.left, n.right);
+            } else if (score < n.score) {
+                n.left = add(n.left, score, delta);
+                if (n.left != null && n.left.priority > n.priority) n = rotateRight(n);
+            } else {
+                n.right = add(n.right, score, delta);
+                if (n.right != null && n.right.priority > n.priority) n = rotateLeft(n);
+            }
+            pull(n);
+            return n;
+        }
+
+        // Joins two treaps where every score in a is below every score in b.
+        private static Node merge(Node a, Node b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (a.priority > b.priority) {
+                a.right = merge(a.right, b);
+                pull(a);
+                return a;
+            }
+            b.left = merge(a, b.left);
+            pull(b);
+            return b;
+        }
+
+        private static Node rotateRight(Node n) {
+            Node l = n.left;
+            n.left = l.right;
+            l.right = n;
+            pull(n);
+            pull(l);
+            return l;
+        }
+
+        private static Node rotateLeft(Node n) {
+            Node r = n.right;
+            n.right = r.left;
+            r.left = n;
+            pull(n);
+            pull(r);
+            return r;
+        }
+
+        private static void pull(Node n) {
+            n.sum = n.count + sum(n.left) + sum(n.right);
+        }
+
+        private static long sum(Node n) {
+            return n == null ? 0 : n.sum;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.gudu0.countingbot.stats;
+
+import org.gudu0.countingbot.util.SnapshotCodec;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.gudu0.countingbot.util.VarInts.readVarInt;
+import static org.gudu0.countingbot.util.VarInts.readVarLong;
+import static org.gudu0.countingbot.util.VarInts.writeVarLong;
+
+/**
+ * Compact columnar encoding of {@link StatsData} (stats.bin).
+ * <p>
+ * Layout:
+ * magic "CBST", version(2), deltaSeq(varint), userCount(varint),
+ * userIds (sorted, delta varints),
+ * then one fixed-width int64 column per UserStats field, in {@link #COLUMNS} order.
+ * <p>
+ * Version 1 files (no deltaSeq) still load. Delta log entries use {@link #writeRow} instead.
+ */
+public final class StatsBinaryCodec implements SnapshotCodec<StatsData> {
+
+    private static final int MAGIC = 0x43425354; // "CBST"
+    private static final byte VERSION = 2;
+
+    private static final int COLUMNS = 8; // correct, incorrect, currentStreak, bestStreak, lastCorrectAtMs, lastIncorrectAtMs, posCounts, negCounts
+
+    @Override
+    public void write(OutputStream os, StatsData data) throws IOException {
+        Map<Long, UserStats> users = data.getUsers();
+
+        long[] ids = new long[users.size()];
+        int n = 0;
+        for (long id : users.keySet()) ids[n++] = id;
+        Arrays.sort(ids);
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(out, data.getDeltaSeq());
+        writeVarLong(out, n);
+
+        long prev = 0;
+        for (long id : ids) {
+            writeVarLong(out, id - prev);
+            prev = id;
+        }
+
+        for (int col = 0; col < COLUMNS; col++) {
+            for (long id : ids) out.writeLong(column(users.get(id), col));
+        }
+        out.flush();
+    }
+
+    @Override
+    public StatsData read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("Not a stats snapshot (bad magic)");
+        byte version = in.readByte();
+        if (version != 1 && version != VERSION) throw new IOException("Unsupported stats snapshot version " + version);
+        long deltaSeq = version >= 2 ? readVarLong(in) : 0;
+
+        int n = readVarInt(in);
+        long[] ids = new long[n];
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            prev += readVarLong(in);
+            ids[i] = prev;
+        }
+
+        UserStats[] rows = new UserStats[n];
+        for (int i = 0; i < n; i++) rows[i] = new UserStats();
+
+        for (int col = 0; col < COLUMNS; col++) {
+            for (int i = 0; i < n; i++) setColumn(rows[i], col, in.readLong());
+        }
+
+        Map<Long, UserStats> users = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) users.put(ids[i], rows[i]);
+
+        StatsData data = new StatsData();
+        data.setUsers(users);
+        data.setDeltaSeq(deltaSeq);
+        return data;
+    }
+
+    /** One user's fields as varints, in column order (delta log entries). */
+    static void writeRow(DataOutput out, UserStats u) throws IOException {
+        for (int col = 0; col < COLUMNS; col++) writeVarLong(out, column(u, col));
+    }
+
+    static UserStats readRow(DataInput in) throws IOException {
+        UserStats u = new UserStats();
+        for (int col = 0; col < COLUMNS; col++) setColumn(u, col, readVarLong(in));
+        return u;
+    }
+
+    private static long column(UserStats u, int col) {
+        return switch (col) {
+            case 0 -> u.correct;
+            case 1 -> u.incorrect;
+            case 2 -> u.currentStreak;
+            case 3 -> u.bestStreak;
+            case 4 -> u.lastCorrectAtMs;
+            case 5 -> u.lastIncorrectAtMs;
+            case 6 -> u.posCounts;
+            case 7 -> u.negCounts;
+            default -> throw new IllegalArgumentException("column " + col);
+        };
+    }
+
+    private static void setColumn(UserStats u, int col, long v) {
+        switch (col) {
+            case 0 -> u.correct = v;
+            case 1 -> u.incorrect = v;
+            case 2 -> u.currentStreak = v;
+            case 3 -> u.bestStreak = v;
+            case 4 -> u.lastCorrectAtMs = v;
+            case 5 -> u.lastIncorrectAtMs = v;
+            case 6 -> u.posCounts = v;
+            case 7 -> u.negCounts = v;
+            default -> throw new IllegalArgumentException("column " + col);
+        }
+    }
+}
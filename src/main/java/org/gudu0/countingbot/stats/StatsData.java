@@ -1,22 +1,244 @@
 package org.gudu0.countingbot.stats;
 
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonSetter;
+
+import org.gudu0.countingbot.metrics.Metrics;
+import org.gudu0.countingbot.util.IncrementalStore;
+import org.gudu0.countingbot.util.LatencyHistogram;
+import org.gudu0.countingbot.util.LongObjectMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.gudu0.countingbot.util.VarInts.readVarInt;
+import static org.gudu0.countingbot.util.VarInts.writeVarLong;
+
+/**
+ * Global per-user stats, lock-striped by userId.
+ * <p>
+ * There is no global stats lock: every update takes only the monitor of the shard that owns the user,
+ * so counts from different users (and different guilds) do not serialize on each other.
+ * <p>
+ * On disk this is still {@code {"users": {"<id>": {...}}}}. Serialization goes through {@link #getUsers()},
+ * which copies shard by shard, so a flush never holds a shard lock while Jackson writes.
+ * <p>
+ * Every update also hands the scores that changed to the {@link LeaderboardIndex} (a buffered append;
+ * the index re-sorts in batches, outside the shard locks), so leaderboards never need a full copy.
+ * <p>
+ * Updates also list the user in its shard's dirty set, so {@link StatsStore} flushes only the users
+ * that changed since the last flush (see {@link IncrementalStore}).
+ */
+public class StatsData implements IncrementalStore.Tracked {
+    static final int SHARDS = 64; // power of two
+
+    private static final LatencyHistogram LOCK_WAIT = Metrics.histogram("countingbot_lock_wait_seconds",
+            "Time spent waiting to enter a lock on the counting path (sampled)", "lock", "stats", 1e9, Metrics.NANOS_BUCKETS);
+
+    private static final class Shard {
+        final LongObjectMap<UserStats> users = new LongObjectMap<>();
+
+        // Users changed since the last delta write; each listed once (see UserStats#dirty).
+        long[] dirty = new long[16];
+        int dirtyCount;
+
+        void markDirty(long userId, UserStats u) {
+            if (u.dirty) return;
+            u.dirty = true;
+            if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+            dirty[dirtyCount++] = userId;
+        }
+    }
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final LeaderboardIndex leaderboard = new LeaderboardIndex();
 
-public class StatsData {
-    // userId -> stats
-    @SuppressWarnings("CanBeFinal")
-    public Map<Long, UserStats> users = new HashMap<>();
+    private volatile long deltaSeq;
 
-    /** Creates a stats entry if missing. Use for mutation. */
-    public UserStats getOrCreate(long userId) {
-        return users.computeIfAbsent(userId, k -> new UserStats());
+    public StatsData() {
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard();
     }
 
-    /** Returns an existing stats entry if present, otherwise returns a new zeroed stats object (not stored). */
+    private Shard shardFor(long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return shards[(int) (h >>> 58) & (SHARDS - 1)];
+    }
+
+    /**
+     * Atomically mutates one user's stats (creates the entry if missing).
+     * Only a {@link Metrics#sampled() sample} of lock waits is timed, so the shared histogram does not
+     * become the contention point the striping removed.
+     */
+    public void update(long userId, Consumer<UserStats> fn) {
+        Shard s = shardFor(userId);
+        boolean drain;
+        if (Metrics.sampled()) {
+            long waitStart = System.nanoTime();
+            synchronized (s) {
+                LOCK_WAIT.record(System.nanoTime() - waitStart);
+                drain = apply(s, userId, fn);
+            }
+        } else {
+            synchronized (s) {
+                drain = apply(s, userId, fn);
+            }
+        }
+        if (drain) leaderboard.drainIfIdle();
+    }
+
+    // Caller holds the shard lock. Returns true if the leaderboard wants a drain.
+    private boolean apply(Shard s, long userId, Consumer<UserStats> fn) {
+        UserStats u = s.users.get(userId);
+        boolean created = u == null;
+        if (created) {
+            u = new UserStats();
+            s.users.put(userId, u);
+        }
+        long correct = u.correct;
+        long incorrect = u.incorrect;
+        fn.accept(u);
+        s.markDirty(userId, u);
+        // A new user goes on both boards; otherwise only the metrics that moved are re-ranked.
+        return leaderboard.record(userId,
+                created || u.correct != correct ? u.correct : LeaderboardIndex.UNCHANGED,
+                created || u.incorrect != incorrect ? u.incorrect : LeaderboardIndex.UNCHANGED);
+    }
+
+    /** Reads one user's stats under its shard lock; missing users read as zeroed stats (not stored). */
+    public <R> R read(long userId, Function<UserStats, R> fn) {
+        Shard s = shardFor(userId);
+        synchronized (s) {
+            UserStats u = s.users.get(userId);
+            return fn.apply(u != null ? u : new UserStats());
+        }
+    }
+
+    /** Returns a detached copy of an existing stats entry if present, otherwise a new zeroed stats object (not stored). */
     public UserStats getOrDefault(long userId) {
-        UserStats s = users.get(userId);
-        return s != null ? s : new UserStats();
+        return read(userId, UserStats::copy);
+    }
+
+    public LeaderboardIndex leaderboard() {
+        return leaderboard;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                n += s.users.size();
+            }
+        }
+        return n;
+    }
+
+    // ----------------------------
+    // Incremental flushing (StatsStore lock; shard locks are taken one at a time)
+    // ----------------------------
+
+    @Override
+    public long getDeltaSeq() {
+        return deltaSeq;
+    }
+
+    @Override
+    public void setDeltaSeq(long seq) {
+        this.deltaSeq = seq;
     }
 
+    /** Payload: count(varint), then per user: userId(int64) + {@link StatsBinaryCodec#writeRow row}. */
+    @Override
+    public int writeDirty(DataOutput out) throws IOException {
+        long[] ids = new long[64];
+        UserStats[] rows = new UserStats[64];
+        int n = 0;
+        for (Shard s : shards) {
+            synchronized (s) {
+                if (s.dirtyCount == 0) continue;
+                if (n + s.dirtyCount > ids.length) {
+                    int cap = Math.max(ids.length * 2, n + s.dirtyCount);
+                    ids = Arrays.copyOf(ids, cap);
+                    rows = Arrays.copyOf(rows, cap);
+                }
+                for (int k = 0; k < s.dirtyCount; k++) {
+                    UserStats u = s.users.get(s.dirty[k]);
+                    u.dirty = false;
+                    ids[n] = s.dirty[k];
+                    rows[n++] = u.copy();
+                }
+                s.dirtyCount = 0;
+            }
+        }
+        if (n == 0) return 0;
+
+        // Encoded outside the shard locks.
+        writeVarLong(out, n);
+        for (int k = 0; k < n; k++) {
+            out.writeLong(ids[k]);
+            StatsBinaryCodec.writeRow(out, rows[k]);
+        }
+        return n;
+    }
+
+    @Override
+    public void clearDirty() {
+        for (Shard s : shards) {
+            synchronized (s) {
+                for (int k = 0; k < s.dirtyCount; k++) s.users.get(s.dirty[k]).dirty = false;
+                s.dirtyCount = 0;
+            }
+        }
+    }
+
+    @Override
+    public void applyDelta(DataInput in) throws IOException {
+        int n = readVarInt(in);
+        for (int k = 0; k < n; k++) {
+            long userId = in.readLong();
+            UserStats u = StatsBinaryCodec.readRow(in);
+            Shard s = shardFor(userId);
+            boolean drain;
+            synchronized (s) {
+                s.users.put(userId, u);
+                drain = leaderboard.record(userId, u.correct, u.incorrect);
+            }
+            if (drain) leaderboard.drainIfIdle();
+        }
+    }
+
+    // ----------------------------
+    // Jackson (keeps the old {"users": {...}} layout)
+    // ----------------------------
+
+    /** Detached snapshot of every user, copied one shard at a time. */
+    @JsonGetter("users")
+    public Map<Long, UserStats> getUsers() {
+        Map<Long, UserStats> out = new HashMap<>();
+        for (Shard s : shards) {
+            synchronized (s) {
+                s.users.forEach((id, u) -> out.put(id, u.copy()));
+            }
+        }
+        return out;
+    }
+
+    @JsonSetter("users")
+    public void setUsers(Map<Long, UserStats> users) {
+        if (users == null) return;
+        for (Map.Entry<Long, UserStats> e : users.entrySet()) {
+            Shard s = shardFor(e.getKey());
+            boolean drain;
+            synchronized (s) {
+                s.users.put(e.getKey(), e.getValue());
+                drain = leaderboard.record(e.getKey(), e.getValue().correct, e.getValue().incorrect);
+            }
+            if (drain) leaderboard.drainIfIdle();
+        }
+    }
 }
@@ -1,17 +1,43 @@
 package org.gudu0.countingbot.stats;
 
+import org.gudu0.countingbot.util.IncrementalStore;
+import org.gudu0.countingbot.util.JsonCodec;
 import org.gudu0.countingbot.util.JsonStore;
+import org.gudu0.countingbot.util.SnapshotFormat;
 
 import java.nio.file.Path;
 
+/**
+ * Global stats store (data/global/stats.json or stats.bin, plus the stats.log delta log).
+ * <p>
+ * No store-wide lock is exposed on purpose: {@link StatsData} is lock-striped per user,
+ * and flushing serializes a shard-by-shard copy.
+ * <p>
+ * A flush appends only the users changed since the previous flush to stats.log; the full snapshot is
+ * rewritten only when the log has grown past it (see {@link IncrementalStore}).
+ */
 @SuppressWarnings("unused")
 public class StatsStore {
-    public final Object lock;
-    private final JsonStore<StatsData> store;
+    private final IncrementalStore<StatsData> store;
 
     public StatsStore(Path path) {
-        this.store = new JsonStore<>(path, StatsData.class, StatsData::new, "stats.json");
-        this.lock = store.lock;
+        this.store = new IncrementalStore<>(new JsonStore<>(path, StatsData.class, StatsData::new, "stats.json"),
+                path.resolveSibling("stats.log"), "stats.log");
+    }
+
+    /**
+     * @param jsonPath the stats.json path; the binary snapshot lives next to it as stats.bin.
+     *                 The other format's file is migrated from if it is newer, then renamed to *.migrated.
+     */
+    public StatsStore(Path jsonPath, SnapshotFormat format) {
+        Path binPath = jsonPath.resolveSibling("stats." + SnapshotFormat.BINARY.extension);
+        JsonCodec<StatsData> json = new JsonCodec<>(StatsData.class);
+        StatsBinaryCodec bin = new StatsBinaryCodec();
+
+        JsonStore<StatsData> snapshot = format == SnapshotFormat.BINARY
+                ? new JsonStore<>(binPath, bin, StatsData::new, "stats.bin", jsonPath, json, StatsData::getDeltaSeq)
+                : new JsonStore<>(jsonPath, json, StatsData::new, "stats.json", binPath, bin, StatsData::getDeltaSeq);
+        this.store = new IncrementalStore<>(snapshot, jsonPath.resolveSibling("stats.log"), "stats.log");
     }
 
     public StatsData data() { return store.get(); }
@@ -1,5 +1,7 @@
 package org.gudu0.countingbot.stats;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 @SuppressWarnings("unused")
 public class UserStats {
     public long correct = 0;
@@ -16,6 +18,10 @@ public class UserStats {
     public long posCounts = 0;
     public long negCounts = 0;
 
+    // Listed in its StatsData shard's dirty set; guarded by the shard lock, never copied.
+    @JsonIgnore
+    boolean dirty;
+
     public void onCorrect(long nowMs) {
         correct++;
         currentStreak++;
@@ -28,4 +34,17 @@ public class UserStats {
         currentStreak = 0;
         lastIncorrectAtMs = nowMs;
     }
+
+    public UserStats copy() {
+        UserStats c = new UserStats();
+        c.correct = correct;
+        c.incorrect = incorrect;
+        c.currentStreak = currentStreak;
+        c.bestStreak = bestStreak;
+        c.lastCorrectAtMs = lastCorrectAtMs;
+        c.lastIncorrectAtMs = lastIncorrectAtMs;
+        c.posCounts = posCounts;
+        c.negCounts = negCounts;
+        return c;
+    }
 }
@@ -1,9 +1,32 @@
 package org.gudu0.countingbot.util;
 
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Console logger.
+ * <p>
+ * Callers never touch stdout/stderr: a log call copies its arguments into a slot of a pre-allocated
+ * ring and returns; one daemon "console-log" thread formats and writes the lines in order. So the
+ * gateway and guild threads don't serialize on System.out, and the formatting (timestamp, string
+ * building, stack traces) happens off the hot path.
+ * <p>
+ * - {@code Supplier} overloads are evaluated on the log thread (and not at all if the level is off);
+ *   capture values, not objects that may change before the line is written
+ * - key/value fields ({@code guildId=...}) are carried as primitives and rendered at the end of the
+ *   line, or as JSON fields in {@link #setJsonLines JSON-lines mode} (for the log shipper)
+ * - timestamps are taken as epoch millis; the formatted date prefix is cached per second
+ * - if the ring is full, non-error lines are dropped and counted (reported when it drains);
+ *   errors are written synchronously instead. During JVM shutdown everything is synchronous.
+ */
 public final class ConsoleLog {
     private ConsoleLog() {}
 
@@ -11,35 +34,428 @@ public final class ConsoleLog {
     @SuppressWarnings("CanBeFinal")
     public static volatile boolean DEBUG = false;
 
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
     private static final String ESC = "\u001B[";
+    private static final int CAPACITY = 8192; // power of two
+    private static final int MAX_FIELDS = 6;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SHUTDOWN_DRAIN_MS = 2_000;
 
-    private static final DateTimeFormatter TS =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+    private static final DateTimeFormatter TS_SECOND =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.")
                     .withZone(ZoneId.systemDefault());
 
-    private static String fmt(String level, String tag, String msg) {
-        return "[" + TS.format(Instant.now()) + "] [" + level + "] [" + tag + "] " + msg;
+    private static volatile boolean jsonLines = false;
+
+    /** One ring entry; filled by the producer that claimed it, read and cleared by the log thread. */
+    private static final class Slot {
+        volatile long seq = -1; // == claimed sequence once published
+        Level level;
+        String tag;
+        long atMillis;
+        String msg;
+        Supplier<String> msgSupplier;
+        Throwable error;
+        int fields;
+        final String[] keys = new String[MAX_FIELDS];
+        final long[] longs = new long[MAX_FIELDS];
+        final String[] strings = new String[MAX_FIELDS]; // null -> numeric field
+
+        void clear() {
+            tag = null;
+            msg = null;
+            msgSupplier = null;
+            error = null;
+            for (int i = 0; i < fields; i++) {
+                keys[i] = null;
+                strings[i] = null;
+            }
+            fields = 0;
+        }
+    }
+
+    private static final Slot[] RING = new Slot[CAPACITY];
+    private static final AtomicLong HEAD = new AtomicLong(); // next sequence to claim
+    private static volatile long tail = 0;                  // next sequence the log thread reads
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static volatile boolean writerSleeping = false;
+    private static volatile boolean shuttingDown = false;
+    private static long droppedReported = 0; // log thread only
+    private static final Thread WRITER;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) RING[i] = new Slot();
+        WRITER = new Thread(ConsoleLog::writerLoop, "console-log");
+        WRITER.setDaemon(true);
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(ConsoleLog::shutdownDrain, "console-log-shutdown"));
+    }
+
+    /** Switches between the classic colored text lines (default) and one JSON object per line. */
+    public static void setJsonLines(boolean enabled) {
+        jsonLines = enabled;
     }
 
+    public static boolean isEnabled(Level level) {
+        return level != Level.DEBUG || DEBUG;
+    }
+
+    /** Lines lost to a full ring since start. */
+    public static long droppedCount() {
+        return DROPPED.get();
+    }
+
+    // ----------------------------
+    // Plain API
+    // ----------------------------
+
     public static void info(String tag, String msg) {
-        System.out.println(fmt("INFO", tag, msg));
+        publish(Level.INFO, tag, msg, null, null, null);
+    }
+
+    public static void info(String tag, Supplier<String> msg) {
+        publish(Level.INFO, tag, null, msg, null, null);
     }
 
     public static void warn(String tag, String msg) {
-        System.out.println(fmt(ESC + "93m" + "WARN" + ESC + "0m", tag, msg));
+        publish(Level.WARN, tag, msg, null, null, null);
+    }
+
+    public static void warn(String tag, Supplier<String> msg) {
+        publish(Level.WARN, tag, null, msg, null, null);
     }
 
     public static void debug(String tag, String msg) {
         if (!DEBUG) return;
-        System.out.println(fmt(ESC + "32m" + "DEBUG" + ESC + "0m", tag, msg));
+        publish(Level.DEBUG, tag, msg, null, null, null);
+    }
+
+    public static void debug(String tag, Supplier<String> msg) {
+        if (!DEBUG) return;
+        publish(Level.DEBUG, tag, null, msg, null, null);
     }
 
     public static void error(String tag, String msg) {
-        System.err.println(fmt(ESC + "31m" + "ERROR" + ESC + "0m", tag, msg));
+        publish(Level.ERROR, tag, msg, null, null, null);
     }
 
     public static void error(String tag, String msg, Throwable t) {
-        System.err.println(fmt(ESC + "31m" + "ERROR" + ESC + "0m", tag, msg));
-        if (t != null) t.printStackTrace(System.err);
+        publish(Level.ERROR, tag, msg, null, t, null);
+    }
+
+    // ----------------------------
+    // Structured API
+    // ----------------------------
+
+    /**
+     * Starts a line with key/value fields, e.g.
+     * {@code ConsoleLog.at(Level.INFO, "GuildManager").kv("guildId", id).log("Cache miss")}.
+     * The builder is per thread and reused (no allocation); finish it with log(...) before starting another.
+     * Returns a no-op builder when the level is off.
+     */
+    public static Line at(Level level, String tag) {
+        if (!isEnabled(level)) return Line.NOOP;
+        Line line = LINES.get();
+        line.reset(level, tag);
+        return line;
+    }
+
+    private static final ThreadLocal<Line> LINES = ThreadLocal.withInitial(Line::new);
+
+    /** Per-thread line builder; see {@link #at}. */
+    public static final class Line {
+        static final Line NOOP = new Line();
+
+        private Level level;
+        private String tag;
+        private Throwable error;
+        private int fields;
+        private final String[] keys = new String[MAX_FIELDS];
+        private final long[] longs = new long[MAX_FIELDS];
+        private final String[] strings = new String[MAX_FIELDS];
+
+        private Line() {}
+
+        void reset(Level level, String tag) {
+            this.level = level;
+            this.tag = tag;
+            this.error = null;
+            for (int i = 0; i < fields; i++) {
+                keys[i] = null;
+                strings[i] = null;
+            }
+            this.fields = 0;
+        }
+
+        public Line kv(String key, long value) {
+            if (this == NOOP || fields == MAX_FIELDS) return this;
+            keys[fields] = key;
+            longs[fields] = value;
+            strings[fields] = null;
+            fields++;
+            return this;
+        }
+
+        public Line kv(String key, String value) {
+            if (this == NOOP || fields == MAX_FIELDS) return this;
+            keys[fields] = key;
+            strings[fields] = value != null ? value : "null";
+            fields++;
+            return this;
+        }
+
+        public Line error(Throwable t) {
+            if (this != NOOP) error = t;
+            return this;
+        }
+
+        public void log(String msg) {
+            if (this != NOOP) publish(level, tag, msg, null, error, this);
+        }
+
+        public void log(Supplier<String> msg) {
+            if (this != NOOP) publish(level, tag, null, msg, error, this);
+        }
+    }
+
+    // ----------------------------
+    // Producer side
+    // ----------------------------
+
+    private static void publish(Level level, String tag, String msg, Supplier<String> supplier, Throwable error, Line fields) {
+        long at = System.currentTimeMillis();
+
+        if (shuttingDown) {
+            writeDirect(level, tag, at, msg, supplier, error, fields);
+            return;
+        }
+
+        long seq = claim();
+        if (seq < 0) {
+            if (level == Level.ERROR) {
+                writeDirect(level, tag, at, msg, supplier, error, fields);
+            } else {
+                DROPPED.incrementAndGet();
+            }
+            return;
+        }
+
+        Slot s = RING[(int) (seq & (CAPACITY - 1))];
+        s.level = level;
+        s.tag = tag;
+        s.atMillis = at;
+        s.msg = msg;
+        s.msgSupplier = supplier;
+        s.error = error;
+        if (fields != null) {
+            int n = fields.fields;
+            System.arraycopy(fields.keys, 0, s.keys, 0, n);
+            System.arraycopy(fields.longs, 0, s.longs, 0, n);
+            System.arraycopy(fields.strings, 0, s.strings, 0, n);
+            s.fields = n;
+        }
+        s.seq = seq; // publish
+
+        if (writerSleeping) LockSupport.unpark(WRITER);
+    }
+
+    /** Claims the next sequence, or -1 if the ring is full. */
+    private static long claim() {
+        while (true) {
+            long h = HEAD.get();
+            if (h - tail >= CAPACITY) return -1;
+            if (HEAD.compareAndSet(h, h + 1)) return h;
+        }
+    }
+
+    // Ring full (errors) or shutting down: format on the caller, like the old logger did.
+    private static void writeDirect(Level level, String tag, long at, String msg, Supplier<String> supplier, Throwable error, Line fields) {
+        Slot tmp = new Slot();
+        tmp.level = level;
+        tmp.tag = tag;
+        tmp.atMillis = at;
+        tmp.msg = msg;
+        tmp.msgSupplier = supplier;
+        tmp.error = error;
+        if (fields != null) {
+            int n = fields.fields;
+            System.arraycopy(fields.keys, 0, tmp.keys, 0, n);
+            System.arraycopy(fields.longs, 0, tmp.longs, 0, n);
+            System.arraycopy(fields.strings, 0, tmp.strings, 0, n);
+            tmp.fields = n;
+        }
+        Formatter f = new Formatter();
+        f.format(tmp);
+        f.write(tmp.level);
+    }
+
+    // ----------------------------
+    // Log thread
+    // ----------------------------
+
+    private static void writerLoop() {
+        Formatter f = new Formatter();
+        while (true) {
+            long pos = tail;
+            Slot s = RING[(int) (pos & (CAPACITY - 1))];
+            if (s.seq != pos) {
+                reportDropped(f);
+                writerSleeping = true;
+                if (s.seq != pos) LockSupport.parkNanos(IDLE_PARK_NANOS); // re-check after announcing
+                writerSleeping = false;
+                continue;
+            }
+
+            try {
+                f.format(s);
+                f.write(s.level);
+            } catch (Throwable t) {
+                System.err.println("[ConsoleLog] failed to write a log line: " + t);
+            } finally {
+                s.clear();
+                tail = pos + 1; // frees the slot for producers
+            }
+        }
+    }
+
+    private static void reportDropped(Formatter f) {
+        long total = DROPPED.get();
+        long dropped = total - droppedReported;
+        if (dropped == 0) return;
+        droppedReported = total;
+        Slot tmp = new Slot();
+        tmp.level = Level.WARN;
+        tmp.tag = "ConsoleLog";
+        tmp.atMillis = System.currentTimeMillis();
+        tmp.msg = "Log buffer full; dropped " + dropped + " line(s)";
+        f.format(tmp);
+        f.write(tmp.level);
+    }
+
+    private static void shutdownDrain() {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MS;
+        LockSupport.unpark(WRITER);
+        while (tail < HEAD.get() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        shuttingDown = true; // later lines (other shutdown hooks) are written directly
+    }
+
+    /** Formats one line into a reusable buffer. Timestamp prefix cached per second. */
+    private static final class Formatter {
+        private final StringBuilder sb = new StringBuilder(256);
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedPrefix = "";
+
+        void format(Slot s) {
+            sb.setLength(0);
+            String msg = s.msg;
+            if (msg == null && s.msgSupplier != null) {
+                try {
+                    msg = s.msgSupplier.get();
+                } catch (Exception e) {
+                    msg = "<message supplier failed: " + e + ">";
+                }
+            }
+            if (msg == null) msg = "";
+
+            if (jsonLines) {
+                formatJson(s, msg);
+            } else {
+                formatText(s, msg);
+            }
+        }
+
+        void write(Level level) {
+            PrintStream out = level == Level.ERROR ? System.err : System.out;
+            out.println(sb);
+        }
+
+        private void formatText(Slot s, String msg) {
+            sb.append('[');
+            appendTimestamp(s.atMillis);
+            sb.append("] [").append(levelText(s.level)).append("] [").append(s.tag).append("] ").append(msg);
+            for (int i = 0; i < s.fields; i++) {
+                sb.append(' ').append(s.keys[i]).append('=');
+                if (s.strings[i] != null) sb.append(s.strings[i]); else sb.append(s.longs[i]);
+            }
+            if (s.error != null) {
+                sb.append(System.lineSeparator()).append(stackTrace(s.error).stripTrailing());
+            }
+        }
+
+        private void formatJson(Slot s, String msg) {
+            sb.append("{\"ts\":\"");
+            appendTimestamp(s.atMillis);
+            sb.append("\",\"epochMs\":").append(s.atMillis)
+                    .append(",\"level\":\"").append(s.level.name())
+                    .append("\",\"tag\":");
+            appendJsonString(s.tag);
+            sb.append(",\"msg\":");
+            appendJsonString(msg);
+            for (int i = 0; i < s.fields; i++) {
+                sb.append(',');
+                appendJsonString(s.keys[i]);
+                sb.append(':');
+                if (s.strings[i] != null) appendJsonString(s.strings[i]); else sb.append(s.longs[i]);
+            }
+            if (s.error != null) {
+                sb.append(",\"error\":");
+                appendJsonString(stackTrace(s.error));
+            }
+            sb.append('}');
+        }
+
+        private void appendTimestamp(long atMillis) {
+            long second = Math.floorDiv(atMillis, 1000);
+            if (second != cachedSecond) {
+                cachedSecond = second;
+                cachedPrefix = TS_SECOND.format(Instant.ofEpochSecond(second));
+            }
+            int ms = (int) Math.floorMod(atMillis, 1000);
+            sb.append(cachedPrefix);
+            if (ms < 100) sb.append('0');
+            if (ms < 10) sb.append('0');
+            sb.append(ms);
+        }
+
+        private void appendJsonString(String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            sb.append("\\u00");
+                            sb.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            sb.append('"');
+        }
+
+        private static String levelText(Level level) {
+            return switch (level) {
+                case INFO -> "INFO";
+                case WARN -> ESC + "93m" + "WARN" + ESC + "0m";
+                case DEBUG -> ESC + "32m" + "DEBUG" + ESC + "0m";
+                case ERROR -> ESC + "31m" + "ERROR" + ESC + "0m";
+            };
+        }
+
+        private static String stackTrace(Throwable t) {
+            StringWriter w = new StringWriter();
+            t.printStackTrace(new PrintWriter(w));
+            return w.toString();
+        }
     }
 }
@@ -0,0 +1,156 @@
+package org.gudu0.countingbot.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of delta batches for an {@link IncrementalStore} (e.g. data/global/stats.log).
+ * <p>
+ * Each flush appends one batch holding only the entries that changed since the previous one; the
+ * payload encoding belongs to the stored value. Appends are synchronous (write + force) and happen on
+ * the flush thread under the store lock, so unlike {@link org.gudu0.countingbot.counting.CountJournal}
+ * there is no group committer.
+ * <p>
+ * Batch layout (big endian): seq(8) length(4) payload(length) crc32(4), the crc covering seq..payload.
+ * <p>
+ * The snapshot stores the last folded seq; replay skips anything at or below it, so a crash between
+ * "snapshot written" and "log truncated" is harmless.
+ */
+public final class DeltaLog {
+
+    /** Decodes one batch payload into the stored value. */
+    public interface Applier {
+        void apply(DataInput in) throws IOException;
+    }
+
+    private static final int HEADER_BYTES = 8 + 4;
+    private static final int CRC_BYTES = 4;
+
+    private final Path path;
+    private final String nameForLogs;
+
+    private FileChannel channel;
+    private long size;
+
+    public DeltaLog(Path path, String nameForLogs) {
+        this.path = path;
+        this.nameForLogs = nameForLogs;
+    }
+
+    /** Bytes currently in the log (drives compaction). */
+    public long size() {
+        return size;
+    }
+
+    // ----------------------------
+    // Replay
+    // ----------------------------
+
+    /**
+     * Applies every batch newer than {@code afterSeq}, in file order.
+     * Stops at the first torn/corrupt batch and cuts the file back to the last good one,
+     * so later appends are not hidden behind garbage.
+     *
+     * @return the highest seq found in the log, or {@code afterSeq} if there is nothing newer
+     */
+    public long replay(long afterSeq, Applier applier) {
+        long lastSeq = afterSeq;
+        if (!Files.exists(path)) return lastSeq;
+
+        int good = 0;
+        int applied = 0;
+        try {
+            byte[] all = Files.readAllBytes(path);
+            ByteBuffer in = ByteBuffer.wrap(all);
+            CRC32 crc = new CRC32();
+
+            while (in.remaining() >= HEADER_BYTES + CRC_BYTES) {
+                int start = in.position();
+                long seq = in.getLong();
+                int len = in.getInt();
+                if (len < 0 || in.remaining() < len + CRC_BYTES) break;
+
+                crc.reset();
+                crc.update(all, start, HEADER_BYTES + len);
+                in.position(start + HEADER_BYTES + len);
+                if ((int) crc.getValue() != in.getInt()) {
+                    ConsoleLog.warn("DeltaLog", nameForLogs + " corrupt batch at offset " + start + "; ignoring tail.");
+                    break;
+                }
+                good = in.position();
+
+                if (seq <= afterSeq) continue;
+                applier.apply(new DataInputStream(new ByteArrayInputStream(all, start + HEADER_BYTES, len)));
+                lastSeq = Math.max(lastSeq, seq);
+                applied++;
+            }
+
+            if (good < all.length) {
+                ConsoleLog.warn("DeltaLog", nameForLogs + " dropping " + (all.length - good) + " byte(s) of torn tail");
+                openChannel().truncate(good);
+            }
+            size = good;
+        } catch (Exception e) {
+            ConsoleLog.error("DeltaLog", "Failed to replay " + nameForLogs + ": " + e.getMessage(), e);
+        }
+
+        if (applied > 0) {
+            ConsoleLog.info("DeltaLog", "Replayed " + applied + " batch(es) from " + nameForLogs);
+        }
+        return lastSeq;
+    }
+
+    // ----------------------------
+    // Append / compaction (caller holds the store lock)
+    // ----------------------------
+
+    /** Writes and forces one batch. */
+    public void append(long seq, byte[] payload, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + len + CRC_BYTES);
+        buf.putLong(seq);
+        buf.putInt(len);
+        buf.put(payload, 0, len);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, HEADER_BYTES + len);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        FileChannel ch = openChannel();
+        while (buf.hasRemaining()) ch.write(buf);
+        ch.force(false);
+        size += HEADER_BYTES + len + CRC_BYTES;
+    }
+
+    /** Drops every batch. Only call once a snapshot containing them is on disk. */
+    public void truncate() {
+        try {
+            if (channel == null && !Files.exists(path)) return;
+            FileChannel ch = openChannel();
+            ch.truncate(0);
+            ch.force(false);
+            size = 0;
+        } catch (IOException e) {
+            ConsoleLog.error("DeltaLog", nameForLogs + " truncate failed: " + e.getMessage(), e);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
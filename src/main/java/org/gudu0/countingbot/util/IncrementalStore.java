@@ -0,0 +1,191 @@
+package org.gudu0.countingbot.util;
+
+import org.gudu0.countingbot.metrics.Counter;
+import org.gudu0.countingbot.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A {@link JsonStore} snapshot plus a {@link DeltaLog}, for big maps where only a few entries change
+ * between flushes (global stats, achievements).
+ * <p>
+ * The value tracks which entries changed. A normal flush appends just those entries to the log, so
+ * flush I/O and CPU follow the number of active users per interval, not the number of users ever seen.
+ * Once the log outgrows the snapshot (or {@link #COMPACT_MIN_BYTES}) the next flush is a compaction:
+ * a full snapshot write, after which the log is truncated. That keeps full rewrites amortized to at
+ * most one per snapshot-size worth of deltas, and bounds replay work on startup.
+ */
+public class IncrementalStore<T extends IncrementalStore.Tracked> implements PersistenceScheduler.Flushable {
+
+    /** A snapshot value with per-entry dirty tracking. */
+    public interface Tracked {
+        /** Seq of the last delta batch folded into this value; persisted with the snapshot. */
+        long getDeltaSeq();
+
+        void setDeltaSeq(long seq);
+
+        /**
+         * Writes every entry changed since the previous call (full entry values, not increments)
+         * and clears their dirty marks.
+         *
+         * @return number of entries written; 0 means nothing changed and the output is discarded
+         */
+        int writeDirty(DataOutput out) throws IOException;
+
+        /** Forgets every dirty mark; a full snapshot is about to be written. */
+        void clearDirty();
+
+        /** Applies one payload written by {@link #writeDirty} (on load, before anything else runs). */
+        void applyDelta(DataInput in) throws IOException;
+    }
+
+    static final long COMPACT_MIN_BYTES = 1 << 20;
+
+    public final Object lock;
+
+    private final JsonStore<T> snapshot;
+    private final DeltaLog log;
+    private final String nameForLogs;
+
+    private final LatencyHistogram flushTime;
+    private final Counter flushBytes;
+
+    // Guarded by lock.
+    private long lastSeq;
+    private long compactAtBytes;
+
+    private volatile boolean dirty = false;
+    private volatile boolean compactPending = false;
+    private PersistenceScheduler.Registration flushRegistration;
+
+    /**
+     * @param snapshot the full snapshot store; must not be auto-flushed on its own
+     * @param logPath  the delta log, shared by every snapshot format of this value
+     */
+    public IncrementalStore(JsonStore<T> snapshot, Path logPath, String nameForLogs) {
+        this.snapshot = snapshot;
+        this.lock = snapshot.lock;
+        this.nameForLogs = nameForLogs;
+        this.log = new DeltaLog(logPath, nameForLogs);
+        this.flushTime = Metrics.histogram("countingbot_store_flush_seconds", "Snapshot flush duration (write + move)",
+                "store", nameForLogs, 1e9, Metrics.NANOS_BUCKETS);
+        this.flushBytes = Metrics.counter("countingbot_store_flush_bytes_total", "Snapshot bytes written",
+                "store", nameForLogs);
+
+        synchronized (lock) {
+            T value = snapshot.get();
+            lastSeq = log.replay(value.getDeltaSeq(), value::applyDelta);
+            // A snapshot migrated from the other format is only in memory so far.
+            compactPending = snapshot.isDirty();
+            compactAtBytes = compactThreshold();
+        }
+
+        snapshot.onFlushed(log::truncate);
+    }
+
+    public T get() {
+        return snapshot.get();
+    }
+
+    /** Some entries changed; the value itself knows which. */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /** Everything may have changed: the next flush rewrites the full snapshot. */
+    public void requestCompaction() {
+        compactPending = true;
+    }
+
+    public synchronized void startAutoFlush(long periodSeconds) {
+        if (flushRegistration != null) return;
+        flushRegistration = PersistenceScheduler.get().register(nameForLogs + " (" + snapshot.path() + ")", this, periodSeconds);
+    }
+
+    @Override
+    public void tryFlush() {
+        if (!dirty && !compactPending) return;
+        try {
+            flushNow();
+        } catch (Exception e) {
+            ConsoleLog.error("IncrementalStore", nameForLogs + " flush failed: " + e.getMessage(), e);
+        }
+    }
+
+    public void flushNow() throws IOException {
+        synchronized (lock) {
+            if (compactPending || log.size() >= compactAtBytes) {
+                compact();
+                return;
+            }
+            if (!dirty) return;
+            long t0 = System.nanoTime();
+
+            // Clear before draining: entries changed mid-drain mark both again for the next flush.
+            dirty = false;
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(1 << 12);
+            int entries;
+            try {
+                DataOutputStream out = new DataOutputStream(buf);
+                entries = snapshot.get().writeDirty(out);
+                out.flush();
+                if (entries == 0) return;
+                log.append(lastSeq + 1, buf.toByteArray(), buf.size());
+            } catch (IOException | RuntimeException e) {
+                // The drained dirty marks are gone; only a full snapshot is sure to contain them now.
+                compactPending = true;
+                throw e;
+            }
+            lastSeq++;
+            flushBytes.add(buf.size());
+            flushTime.record(System.nanoTime() - t0);
+
+            if (ConsoleLog.DEBUG) {
+                ConsoleLog.debug("IncrementalStore", nameForLogs + " logged " + entries + " entries (seq " + lastSeq
+                        + ", log " + log.size() + " bytes)");
+            }
+        }
+    }
+
+    /** Full snapshot write; the snapshot's onFlushed hook truncates the log. Caller holds lock. */
+    private void compact() throws IOException {
+        dirty = false;
+        compactPending = false;
+
+        // Clear marks before the snapshot copies the value: anything changed after this point is
+        // marked again and logged by a later flush (possibly twice, which replay tolerates).
+        T value = snapshot.get();
+        value.clearDirty();
+        value.setDeltaSeq(lastSeq);
+
+        snapshot.markDirty();
+        try {
+            snapshot.flushNow();
+        } catch (IOException | RuntimeException e) {
+            compactPending = true;
+            throw e;
+        }
+        compactAtBytes = compactThreshold();
+
+        if (ConsoleLog.DEBUG) {
+            ConsoleLog.debug("IncrementalStore", nameForLogs + " compacted at seq " + lastSeq
+                    + "; next compaction after " + compactAtBytes + " log bytes");
+        }
+    }
+
+    private long compactThreshold() {
+        long snapshotBytes = 0;
+        try {
+            if (Files.exists(snapshot.path())) snapshotBytes = Files.size(snapshot.path());
+        } catch (IOException ignored) {
+            // Fall back to the minimum.
+        }
+        return Math.max(COMPACT_MIN_BYTES, snapshotBytes);
+    }
+}
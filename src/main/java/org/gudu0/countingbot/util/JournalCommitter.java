@@ -0,0 +1,68 @@
+package org.gudu0.countingbot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Process-wide group committer for append-only journals.
+ * <p>
+ * Journals buffer records in memory and call {@link #requestCommit(Committable)}.
+ * One daemon thread drains every pending journal per pass, so appends that arrive while a
+ * write+fsync is in progress are folded into the next batch (group commit).
+ * Like {@link PersistenceScheduler}, this is one thread total, not one per guild.
+ */
+public final class JournalCommitter {
+
+    public interface Committable {
+        /** Writes and forces everything buffered so far. Called only from the committer thread. */
+        void commit();
+
+        /** Set by the journal before enqueueing so a journal is queued at most once per batch. */
+        boolean markQueued();
+
+        void clearQueued();
+    }
+
+    private static final JournalCommitter INSTANCE = new JournalCommitter();
+
+    public static JournalCommitter get() {
+        return INSTANCE;
+    }
+
+    private final LinkedBlockingQueue<Committable> pending = new LinkedBlockingQueue<>();
+
+    private JournalCommitter() {
+        Thread t = new Thread(this::run, "journal-commit");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void requestCommit(Committable c) {
+        if (c.markQueued()) pending.add(c);
+    }
+
+    private void run() {
+        List<Committable> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(pending.take());
+                pending.drainTo(batch);
+
+                for (Committable c : batch) {
+                    // Clear first: anything appended after this point re-queues for the next pass.
+                    c.clearQueued();
+                    try {
+                        c.commit();
+                    } catch (Exception e) {
+                        ConsoleLog.error("JournalCommitter", "Journal commit failed: " + e.getMessage(), e);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.gudu0.countingbot.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Pretty-printed Jackson codec (the original JsonStore format).
+ */
+public final class JsonCodec<T> implements SnapshotCodec<T> {
+    private final ObjectMapper om;
+    private final Class<T> type;
+
+    public JsonCodec(Class<T> type) {
+        this.type = type;
+        this.om = new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public T read(InputStream in) throws IOException {
+        return om.readValue(in, type);
+    }
+
+    @Override
+    public void write(OutputStream out, T value) throws IOException {
+        om.writeValue(out, value);
+    }
+}
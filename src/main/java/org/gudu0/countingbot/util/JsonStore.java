@@ -1,34 +1,71 @@
 package org.gudu0.countingbot.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import org.gudu0.countingbot.metrics.Counter;
+import org.gudu0.countingbot.metrics.Metrics;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.*;
-import java.util.concurrent.*;
-
-public class JsonStore<T> {
+import java.util.function.ToLongFunction;
+
+/**
+ * One persisted value with atomic (tmp + move) snapshot writes.
+ * <p>
+ * JSON by default; a {@link SnapshotCodec} can be plugged in, optionally with a legacy file/codec
+ * (the other snapshot format). On load the newer of the two files wins: the primary if only it exists,
+ * the legacy file if only it exists, and otherwise the higher {@code versionOf} (then the later
+ * modification time). Once the primary has been written successfully the legacy file is renamed to
+ * {@code *.migrated}, so switching formats back later can never load it as a stale primary.
+ */
+public class JsonStore<T> implements PersistenceScheduler.Flushable {
     public final Object lock = new Object();
 
     private final Path path;
-    private final ObjectMapper om;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final SnapshotCodec<T> codec;
+
+    private final Path legacyPath;
+    private final SnapshotCodec<T> legacyCodec;
+    private final ToLongFunction<T> versionOf;
+    private boolean legacyPending; // guarded by lock
 
-    private final Class<T> type;
     private final java.util.function.Supplier<T> defaultSupplier;
     private final String nameForLogs;
 
+    // Shared per store kind (every guild's state.json feeds the same series).
+    private final LatencyHistogram flushTime;
+    private final Counter flushBytes;
+
     private volatile boolean dirty = false;
+    private PersistenceScheduler.Registration flushRegistration;
+    private volatile Runnable afterFlush;
     @SuppressWarnings({"FieldMayBeFinal", "CanBeFinal"})
     private T value;
 
     public JsonStore(Path path, Class<T> type, java.util.function.Supplier<T> defaultSupplier, String nameForLogs) {
+        this(path, new JsonCodec<>(type), defaultSupplier, nameForLogs, null, null, null);
+    }
+
+    /**
+     * @param versionOf orders two loaded snapshots when both files exist (higher is newer); may be null,
+     *                  then only the modification time decides
+     */
+    public JsonStore(Path path, SnapshotCodec<T> codec, java.util.function.Supplier<T> defaultSupplier, String nameForLogs,
+                     Path legacyPath, SnapshotCodec<T> legacyCodec, ToLongFunction<T> versionOf) {
         this.path = path;
-        this.type = type;
+        this.codec = codec;
+        this.legacyPath = legacyPath;
+        this.legacyCodec = legacyCodec;
+        this.versionOf = versionOf;
         this.defaultSupplier = defaultSupplier;
         this.nameForLogs = nameForLogs;
+        this.flushTime = Metrics.histogram("countingbot_store_flush_seconds", "Snapshot flush duration (write + move)",
+                "store", nameForLogs, 1e9, Metrics.NANOS_BUCKETS);
+        this.flushBytes = Metrics.counter("countingbot_store_flush_bytes_total", "Snapshot bytes written",
+                "store", nameForLogs);
 
-        this.om = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
         this.value = loadOrNew();
 
         if (ConsoleLog.DEBUG) {
@@ -44,15 +81,32 @@ public class JsonStore<T> {
         dirty = true;
     }
 
-    public void startAutoFlush(long periodSeconds) {
-        scheduler.scheduleAtFixedRate(this::tryFlush, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    public boolean isDirty() {
+        return dirty;
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            try { flushNow(); } catch (Exception ignored) {}
-            scheduler.shutdown();
-        }));
+    public Path path() {
+        return path;
     }
 
+    /**
+     * Runs after every successful flush, still under {@link #lock}.
+     * Used by StateStore to truncate its journal once the snapshot is on disk.
+     */
+    public void onFlushed(Runnable afterFlush) {
+        this.afterFlush = afterFlush;
+    }
+
+    /**
+     * Registers this store with the shared {@link PersistenceScheduler}.
+     * The scheduler also flushes it once on shutdown.
+     */
+    public synchronized void startAutoFlush(long periodSeconds) {
+        if (flushRegistration != null) return;
+        flushRegistration = PersistenceScheduler.get().register(nameForLogs + " (" + path + ")", this, periodSeconds);
+    }
+
+    @Override
     public void tryFlush() {
         if (!dirty) return;
         try {
@@ -65,18 +119,33 @@ public class JsonStore<T> {
     public void flushNow() throws IOException {
         synchronized (lock) {
             if (!dirty) return;
+            long t0 = System.nanoTime();
 
             if (ConsoleLog.DEBUG) {
                 ConsoleLog.debug("JsonStore", "Flushing " + nameForLogs + " -> " + path);
             }
 
-            Files.createDirectories(path.getParent());
-            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
-
-            om.writeValue(tmp.toFile(), value);
-            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-
+            // Clear before writing: stores that mutate without this lock (e.g. StatsData)
+            // may mark dirty again mid-write, and that must survive into the next flush.
             dirty = false;
+            try {
+                Files.createDirectories(path.getParent());
+                Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+                    codec.write(out, value);
+                }
+                flushBytes.add(Files.size(tmp));
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                dirty = true;
+                throw e;
+            }
+            if (legacyPending) retireLegacy();
+
+            Runnable hook = afterFlush;
+            if (hook != null) hook.run();
+            flushTime.record(System.nanoTime() - t0);
 
             if (ConsoleLog.DEBUG) {
                 ConsoleLog.debug("JsonStore", "Flushed " + nameForLogs);
@@ -86,8 +155,24 @@ public class JsonStore<T> {
 
     private T loadOrNew() {
         try {
-            if (Files.exists(path)) {
-                return om.readValue(path.toFile(), type);
+            boolean primary = Files.exists(path);
+            boolean legacy = legacyPath != null && Files.exists(legacyPath);
+            if (primary && legacy) {
+                legacyPending = true; // one of them is stale; retire the legacy file after the next write
+                T current = read(path, codec);
+                T other = read(legacyPath, legacyCodec);
+                if (!isNewer(other, legacyPath, current, path)) return current;
+                dirty = true; // next flush writes it in the new format
+                ConsoleLog.warn("JsonStore", nameForLogs + " " + legacyPath + " is newer than " + path + "; migrating it");
+                return other;
+            } else if (primary) {
+                return read(path, codec);
+            } else if (legacy) {
+                T migrated = read(legacyPath, legacyCodec);
+                dirty = true; // next flush writes the new format
+                legacyPending = true;
+                ConsoleLog.warn("JsonStore", nameForLogs + " migrating " + legacyPath + " -> " + path);
+                return migrated;
             } else {
                 ConsoleLog.warn("JsonStore", nameForLogs + " missing, creating default at " + path);
             }
@@ -96,4 +181,32 @@ public class JsonStore<T> {
         }
         return defaultSupplier.get();
     }
+
+    private boolean isNewer(T a, Path aPath, T b, Path bPath) throws IOException {
+        if (versionOf != null) {
+            int c = Long.compare(versionOf.applyAsLong(a), versionOf.applyAsLong(b));
+            if (c != 0) return c > 0;
+        }
+        return Files.getLastModifiedTime(aPath).compareTo(Files.getLastModifiedTime(bPath)) > 0;
+    }
+
+    // Caller holds lock; the primary was just written.
+    private void retireLegacy() {
+        Path retired = legacyPath.resolveSibling(legacyPath.getFileName() + ".migrated");
+        try {
+            if (Files.exists(legacyPath)) {
+                Files.move(legacyPath, retired, StandardCopyOption.REPLACE_EXISTING);
+                ConsoleLog.info("JsonStore", nameForLogs + " renamed " + legacyPath + " -> " + retired);
+            }
+            legacyPending = false;
+        } catch (IOException e) {
+            ConsoleLog.error("JsonStore", nameForLogs + " could not rename " + legacyPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> T read(Path p, SnapshotCodec<T> c) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(p), 1 << 16)) {
+            return c.read(in);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package org.gudu0.countingbot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Small lock-free histogram for latency percentiles.
+ * <p>
+ * Values are non-negative longs in whatever unit the caller picks (ms, µs, ...).
+ * 0..15 get exact buckets, larger values get 8 sub-buckets per power of two, so a reported
+ * percentile is at most ~12.5% above the true value. Fixed 496 buckets, no allocation per record.
+ */
+public final class LatencyHistogram {
+
+    private static final int EXACT = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUBS = 1 << SUB_BITS;
+    private static final int BUCKETS = EXACT + (63 - 4) * SUBS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /** Upper bound of the bucket holding the q-th quantile (q in [0, 1]); 0 if empty. */
+    public long percentile(double q) {
+        long n = count.get();
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** Cumulative count of values <= {@code bound} (rounded to bucket edges), for Prometheus-style buckets. */
+    public long countAtOrBelow(long bound) {
+        if (bound < 0) return 0;
+        int last = bucketOf(bound);
+        long seen = 0;
+        for (int i = 0; i <= last; i++) seen += counts.get(i);
+        return seen;
+    }
+
+    /** "n=.. p50=.. p90=.. p99=.. max=.." with the given unit suffix. */
+    public String summary(String unit) {
+        return "n=" + count() +
+                " p50=" + percentile(0.50) + unit +
+                " p90=" + percentile(0.90) + unit +
+                " p99=" + percentile(0.99) + unit +
+                " max=" + max() + unit;
+    }
+
+    /** Clears everything (for interval reporting). Not atomic with concurrent records; good enough for logs. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // ----------------------------
+    // Buckets
+    // ----------------------------
+
+    static int bucketOf(long v) {
+        if (v < EXACT) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v); // >= 4
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUBS - 1);
+        return EXACT + (exp - 4) * SUBS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < EXACT) return bucket;
+        int exp = 4 + (bucket - EXACT) / SUBS;
+        int sub = (bucket - EXACT) % SUBS;
+        long base = 1L << exp;
+        long step = 1L << (exp - SUB_BITS);
+        return base + (sub + 1) * step - 1;
+    }
+}
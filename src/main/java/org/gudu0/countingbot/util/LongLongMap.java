@@ -0,0 +1,217 @@
+package org.gudu0.countingbot.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> long map (linear probing, no boxing, no entry objects).
+ * <p>
+ * Key 0 is the empty-slot marker in the table, so it is stored on the side.
+ * JSON form is the same as a {@code Map<Long, Long>}: {@code {"123": 456, ...}}.
+ * Not thread-safe; callers guard it like the HashMap it replaces.
+ */
+@JsonSerialize(using = LongLongMap.Serializer.class)
+@JsonDeserialize(using = LongLongMap.Deserializer.class)
+public final class LongLongMap {
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long key, long value);
+    }
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    public LongLongMap(int expected) {
+        int cap = tableSizeFor(Math.max(4, (int) (expected / LOAD_FACTOR) + 1));
+        allocate(cap);
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) return hasZeroKey;
+        return keys[slot(key)] == key;
+    }
+
+    /** Returns the value for {@code key}, or {@code missing} if absent. */
+    public long get(long key, long missing) {
+        if (key == 0) return hasZeroKey ? zeroValue : missing;
+        int i = slot(key);
+        return keys[i] == key ? values[i] : missing;
+    }
+
+    public void put(long key, long value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) rehash(keys.length << 1);
+    }
+
+    /** Removes {@code key}; returns true if it was present. */
+    public boolean remove(long key) {
+        if (key == 0) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return had;
+        }
+        int i = slot(key);
+        if (keys[i] != key) return false;
+        deleteAt(i);
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = 0;
+    }
+
+    public void forEach(Visitor v) {
+        if (hasZeroKey) v.accept(0, zeroValue);
+        long[] k = keys;
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != 0) v.accept(k[i], values[i]);
+        }
+    }
+
+    // ----------------------------
+    // Internals
+    // ----------------------------
+
+    /** Slot holding {@code key}, or the empty slot where it would go. */
+    private int slot(long key) {
+        int i = mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones.
+    private void deleteAt(int hole) {
+        size--;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == 0) break;
+            int home = mix(k) & mask;
+            // Move k into the hole if its home is not in (hole, i] cyclically.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+    }
+
+    private void rehash(int newCap) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCap);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == 0) continue;
+            int j = slot(k);
+            keys[j] = k;
+            values[j] = oldValues[i];
+            size++;
+        }
+    }
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        values = new long[cap];
+        mask = cap - 1;
+        resizeAt = Math.max(1, (int) (cap * LOAD_FACTOR));
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int tableSizeFor(int n) {
+        int cap = Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+        return Math.max(4, cap);
+    }
+
+    // ----------------------------
+    // Jackson (same JSON as Map<Long, Long>)
+    // ----------------------------
+
+    public static final class Serializer extends JsonSerializer<LongLongMap> {
+        @Override
+        public void serialize(LongLongMap map, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            IOException[] failed = new IOException[1];
+            map.forEach((k, v) -> {
+                if (failed[0] != null) return;
+                try {
+                    gen.writeFieldName(Long.toString(k));
+                    gen.writeNumber(v);
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            });
+            if (failed[0] != null) throw failed[0];
+            gen.writeEndObject();
+        }
+    }
+
+    public static final class Deserializer extends JsonDeserializer<LongLongMap> {
+        @Override
+        public LongLongMap deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            LongLongMap map = new LongLongMap();
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.START_OBJECT) t = p.nextToken();
+            for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                long key = Long.parseLong(p.currentName());
+                p.nextToken();
+                map.put(key, p.getValueAsLong());
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.gudu0.countingbot.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Open-addressing long -> V map (linear probing, no boxed keys, no entry objects).
+ * <p>
+ * Same layout rules as {@link LongLongMap}; JSON form matches {@code Map<Long, V>}.
+ * Not thread-safe; callers guard it like the HashMap it replaces.
+ */
+@JsonSerialize(using = LongObjectMap.Serializer.class)
+@JsonDeserialize(using = LongObjectMap.Deserializer.class)
+public final class LongObjectMap<V> {
+
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void accept(long key, V value);
+    }
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expected) {
+        int cap = LongLongMap.tableSizeFor(Math.max(4, (int) (expected / LOAD_FACTOR) + 1));
+        allocate(cap);
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) return hasZeroKey;
+        return keys[slot(key)] == key;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) return hasZeroKey ? zeroValue : null;
+        int i = slot(key);
+        return keys[i] == key ? (V) values[i] : null;
+    }
+
+    public void put(long key, V value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) rehash(keys.length << 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<V> factory) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                zeroValue = factory.apply(key);
+                hasZeroKey = true;
+            }
+            return zeroValue;
+        }
+        int i = slot(key);
+        if (keys[i] == key) return (V) values[i];
+
+        V created = factory.apply(key);
+        keys[i] = key;
+        values[i] = created;
+        if (++size >= resizeAt) rehash(keys.length << 1);
+        return created;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == 0) {
+            V old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            return old;
+        }
+        int i = slot(key);
+        if (keys[i] != key) return null;
+        V old = (V) values[i];
+        deleteAt(i);
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> v) {
+        if (hasZeroKey) v.accept(0, zeroValue);
+        long[] k = keys;
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] != 0) v.accept(k[i], (V) values[i]);
+        }
+    }
+
+    /** Snapshot of all keys (unordered). */
+    public long[] keys() {
+        long[] out = new long[size()];
+        int n = 0;
+        if (hasZeroKey) out[n++] = 0;
+        for (long k : keys) {
+            if (k != 0) out[n++] = k;
+        }
+        return out;
+    }
+
+    // ----------------------------
+    // Internals
+    // ----------------------------
+
+    private int slot(long key) {
+        int i = LongLongMap.mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void deleteAt(int hole) {
+        size--;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == 0) break;
+            int home = LongLongMap.mix(k) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+    }
+
+    private void rehash(int newCap) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCap);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == 0) continue;
+            int j = slot(k);
+            keys[j] = k;
+            values[j] = oldValues[i];
+            size++;
+        }
+    }
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        values = new Object[cap];
+        mask = cap - 1;
+        resizeAt = Math.max(1, (int) (cap * LOAD_FACTOR));
+    }
+
+    // ----------------------------
+    // Jackson (same JSON as Map<Long, V>)
+    // ----------------------------
+
+    public static final class Serializer extends JsonSerializer<LongObjectMap<?>> {
+        @Override
+        public void serialize(LongObjectMap<?> map, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            IOException[] failed = new IOException[1];
+            map.forEach((k, v) -> {
+                if (failed[0] != null) return;
+                try {
+                    gen.writeFieldName(Long.toString(k));
+                    provider.defaultSerializeValue(v, gen);
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            });
+            if (failed[0] != null) throw failed[0];
+            gen.writeEndObject();
+        }
+    }
+
+    /** Needs the declared {@code LongObjectMap<V>} type to know V, hence contextual. */
+    public static final class Deserializer extends JsonDeserializer<LongObjectMap<?>> implements ContextualDeserializer {
+        private final JavaType valueType;
+
+        public Deserializer() {
+            this(null);
+        }
+
+        private Deserializer(JavaType valueType) {
+            this.valueType = valueType;
+        }
+
+        @Override
+        public JsonDeserializer<?> createContextual(DeserializationContext ctxt, BeanProperty property) throws JsonMappingException {
+            JavaType type = property != null ? property.getType() : ctxt.getContextualType();
+            JavaType v = type != null ? type.containedType(0) : null;
+            if (v == null) v = ctxt.constructType(Object.class);
+            return new Deserializer(v);
+        }
+
+        @Override
+        public LongObjectMap<?> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonDeserializer<Object> valueDeser = ctxt.findRootValueDeserializer(valueType);
+            LongObjectMap<Object> map = new LongObjectMap<>();
+            JsonToken t = p.currentToken();
+            if (t == JsonToken.START_OBJECT) t = p.nextToken();
+            for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                long key = Long.parseLong(p.currentName());
+                p.nextToken();
+                map.put(key, valueDeser.deserialize(p, ctxt));
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.gudu0.countingbot.util;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide flush scheduler shared by every store.
+ * <p>
+ * Stores register once with their own cadence (5s state, 10s goals/stats, ...).
+ * One daemon thread ticks every second and does a single pass over all registrations,
+ * flushing only the ones that are due; clean stores return immediately from tryFlush().
+ * <p>
+ * A single shutdown hook stops the ticker and then flushes every store once, in registration order,
+ * so thread count and hook count stay flat no matter how many guilds are loaded.
+ */
+public final class PersistenceScheduler {
+
+    /** Anything that can be flushed by the scheduler (JsonStore, journals, ...). */
+    public interface Flushable {
+        void tryFlush();
+    }
+
+    public static final class Registration {
+        private final String name;
+        private final Flushable target;
+        private final long periodMs;
+        private long nextDueMs;
+
+        private Registration(String name, Flushable target, long periodMs, long nextDueMs) {
+            this.name = name;
+            this.target = target;
+            this.periodMs = periodMs;
+            this.nextDueMs = nextDueMs;
+        }
+    }
+
+    private static final long TICK_MS = 1000;
+
+    private static final PersistenceScheduler INSTANCE = new PersistenceScheduler();
+
+    public static PersistenceScheduler get() {
+        return INSTANCE;
+    }
+
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "persistence-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private PersistenceScheduler() {
+        ticker.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownFlush, "persistence-shutdown"));
+    }
+
+    /**
+     * Registers a store to be flushed every {@code periodSeconds} (only does I/O when dirty).
+     */
+    public Registration register(String name, Flushable target, long periodSeconds) {
+        long periodMs = Math.max(TICK_MS, periodSeconds * 1000L);
+        Registration r = new Registration(name, target, periodMs, System.currentTimeMillis() + periodMs);
+        registrations.add(r);
+
+        if (ConsoleLog.DEBUG) {
+            ConsoleLog.debug("PersistenceScheduler", "Registered " + name + " every " + periodSeconds + "s (total=" + registrations.size() + ")");
+        }
+        return r;
+    }
+
+    /** Stops periodic flushing for a registration. Does not flush; callers flush first if needed. */
+    public void unregister(Registration r) {
+        if (r != null) registrations.remove(r);
+    }
+
+    public int registeredCount() {
+        return registrations.size();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Registration r : registrations) {
+            if (now < r.nextDueMs) continue;
+            r.nextDueMs = now + r.periodMs;
+            try {
+                r.target.tryFlush();
+            } catch (Exception e) {
+                // Never let one store kill the shared ticker.
+                ConsoleLog.error("PersistenceScheduler", r.name + " flush threw: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void shutdownFlush() {
+        ticker.shutdown();
+        try {
+            if (!ticker.awaitTermination(5, TimeUnit.SECONDS)) {
+                ConsoleLog.warn("PersistenceScheduler", "Flush tick still running at shutdown; flushing anyway.");
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Registration r : registrations) {
+            try {
+                r.target.tryFlush();
+            } catch (Exception ignored) {}
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.gudu0.countingbot.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * On-disk encoding used by {@link JsonStore}.
+ * <p>
+ * JSON ({@link JsonCodec}) stays the default and the debugging format; big global stores can plug in
+ * a compact binary codec instead. Streams are opened/closed (and written atomically) by the store.
+ */
+public interface SnapshotCodec<T> {
+    T read(InputStream in) throws IOException;
+
+    void write(OutputStream out, T value) throws IOException;
+}
@@ -0,0 +1,22 @@
+package org.gudu0.countingbot.util;
+
+/**
+ * Which codec the big global stores (stats, achievements) write.
+ * A newer file in the other format is migrated on load (see {@link JsonStore}).
+ */
+public enum SnapshotFormat {
+    JSON("json"),
+    BINARY("bin");
+
+    public final String extension;
+
+    SnapshotFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /** Lenient parse for config values; anything unknown falls back to JSON. */
+    public static SnapshotFormat parse(String s) {
+        if (s != null && s.trim().equalsIgnoreCase("binary")) return BINARY;
+        return JSON;
+    }
+}
@@ -0,0 +1,114 @@
+package org.gudu0.countingbot.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: one daemon thread, fixed tick, O(1) schedule.
+ * <p>
+ * Tasks are bucketed by deadline tick (mod wheel size) and run on the wheel thread when their tick
+ * comes up, so they must be short (queue REST calls, don't wait on them). Precision is one tick.
+ * Used where many owners (e.g. one per guild) each need an occasional delayed callback and a
+ * thread or ScheduledFuture per owner would be wasteful.
+ */
+public final class TimerWheel {
+
+    private record Entry(long deadlineTick, Runnable task) {}
+
+    private final String name;
+    private final long tickMs;
+    private final List<Entry>[] buckets;
+    private final int mask;
+    private final long startMs;
+
+    // Guarded by "this".
+    private long currentTick = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tickMs, int wheelSize) {
+        this.name = name;
+        this.tickMs = Math.max(1, tickMs);
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) buckets[i] = new ArrayList<>();
+        this.mask = size - 1;
+        this.startMs = System.currentTimeMillis();
+
+        Thread t = new Thread(this::run, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public long tickMs() {
+        return tickMs;
+    }
+
+    /** First tick that starts at least {@code delayMs} from now (never the tick currently being processed). */
+    public synchronized long tickFor(long delayMs) {
+        long dueIn = System.currentTimeMillis() + Math.max(0, delayMs) - startMs;
+        long tick = (dueIn + tickMs - 1) / tickMs;
+        return Math.max(tick, currentTick + 1);
+    }
+
+    /** Runs {@code task} on the wheel thread at {@code tick} (or the next tick if that has passed). */
+    public synchronized void scheduleAt(long tick, Runnable task) {
+        long t = Math.max(tick, currentTick + 1);
+        buckets[(int) (t & mask)].add(new Entry(t, task));
+    }
+
+    public void schedule(long delayMs, Runnable task) {
+        scheduleAt(tickFor(delayMs), task);
+    }
+
+    /** Tasks waiting (all buckets). */
+    public synchronized int pending() {
+        int n = 0;
+        for (List<Entry> b : buckets) n += b.size();
+        return n;
+    }
+
+    // ----------------------------
+    // Wheel thread
+    // ----------------------------
+
+    private void run() {
+        List<Runnable> due = new ArrayList<>();
+        long tick = 0;
+        while (true) {
+            tick++;
+            // Sleep to the tick's wall-clock time (no drift from task run time).
+            long wakeAt = startMs + tick * tickMs;
+            long sleep = wakeAt - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            synchronized (this) {
+                currentTick = tick;
+                Iterator<Entry> it = buckets[(int) (tick & mask)].iterator();
+                while (it.hasNext()) {
+                    Entry e = it.next();
+                    if (e.deadlineTick <= tick) {
+                        due.add(e.task);
+                        it.remove();
+                    }
+                }
+            }
+
+            for (Runnable r : due) {
+                try {
+                    r.run();
+                } catch (Exception e) {
+                    ConsoleLog.error("TimerWheel", name + " task failed: " + e.getMessage(), e);
+                }
+            }
+            due.clear();
+        }
+    }
+}
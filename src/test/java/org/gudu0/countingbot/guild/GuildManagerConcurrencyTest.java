@@ -0,0 +1,178 @@
+package org.gudu0.countingbot.guild;
+
+import org.gudu0.countingbot.achievements.AchievementsService;
+import org.gudu0.countingbot.achievements.AchievementsStore;
+import org.gudu0.countingbot.counting.CountMessage;
+import org.gudu0.countingbot.counting.CountingEngine;
+import org.gudu0.countingbot.goals.GuildGoalsServiceRegistry;
+import org.gudu0.countingbot.logging.LogService;
+import org.gudu0.countingbot.stats.StatsStore;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many gateway threads posting the same next number to one guild that isn't loaded yet:
+ * the guild loads once, and its mailbox lets exactly one of the counts through. A failed load
+ * drops what was queued on it, and the next action starts a fresh load.
+ */
+class GuildManagerConcurrencyTest {
+
+    private static final int SENDERS = 32;
+    private static final String CHANNEL = "100";
+    private static final long SEED_NUMBER = 41;
+    private static final long SEED_USER = 1;
+
+    private static final AtomicLong NEXT_GUILD = new AtomicLong(System.currentTimeMillis());
+
+    private record Msg(long messageId, long authorId, String content) implements CountMessage {
+        @Override
+        public String channelId() {
+            return CHANNEL;
+        }
+
+        @Override
+        public String authorName() {
+            return "user" + authorId;
+        }
+    }
+
+    private static final class NoTransport implements CountingEngine.Transport<Msg> {
+        @Override
+        public void delete(GuildContext ctx, long guildId, Msg msg, LongConsumer onDeleted) {
+        }
+
+        @Override
+        public void log(long guildId, LogService.Kind kind, String line) {
+        }
+    }
+
+    @TempDir
+    Path globalDir;
+
+    @RepeatedTest(5)
+    void racingCountsAreAcceptedExactlyOnce() throws Exception {
+        long guildId = NEXT_GUILD.incrementAndGet();
+        AtomicInteger loads = new AtomicInteger();
+
+        GuildManager guilds = new GuildManager(4, id -> {
+            loads.incrementAndGet();
+            sleep(50); // keep the load in flight while every sender arrives
+            GuildContext ctx = new GuildContext(id);
+            ctx.cfg.countingChannelId = CHANNEL;
+            ctx.cfg.enforceDelete = false;
+            synchronized (ctx.stateStore.lock) {
+                ctx.stateStore.recordResync(SEED_NUMBER, SEED_USER, 1);
+            }
+            return ctx;
+        });
+
+        StatsStore stats = new StatsStore(globalDir.resolve("stats.json"));
+        AchievementsService achievements = new AchievementsService(
+                new AchievementsStore(globalDir.resolve("achievements.json")), guilds, stats, null);
+        CountingEngine<Msg> engine = new CountingEngine<>(stats, new GuildGoalsServiceRegistry(guilds), achievements,
+                new NoTransport(), 0, 0);
+
+        ConcurrentHashMap<CountingEngine.Outcome, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+        CountDownLatch judged = new CountDownLatch(SENDERS);
+        CyclicBarrier start = new CyclicBarrier(SENDERS);
+        ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+        try {
+            for (int i = 0; i < SENDERS; i++) {
+                Msg msg = new Msg(1_000 + i, 10 + i, Long.toString(SEED_NUMBER + 1));
+                senders.execute(() -> {
+                    await(start);
+                    guilds.withContext(guildId, ctx -> {
+                        CountingEngine.Outcome o = engine.handle(ctx, msg, System.currentTimeMillis(), CountingEngine.UNTRACED);
+                        outcomes.computeIfAbsent(o, k -> new AtomicInteger()).incrementAndGet();
+                        judged.countDown();
+                    });
+                });
+            }
+            assertTrue(judged.await(30, TimeUnit.SECONDS), "every count was judged");
+        } finally {
+            senders.shutdownNow();
+        }
+
+        assertEquals(1, loads.get(), "guild context loaded once");
+        assertEquals(1, count(outcomes, CountingEngine.Outcome.ACCEPTED), "accepted counts");
+        // The mailbox runs them in arrival order, not id order: ids at or below the cursor are skipped.
+        assertEquals(SENDERS - 1, count(outcomes, CountingEngine.Outcome.WRONG_NUMBER)
+                + count(outcomes, CountingEngine.Outcome.SKIPPED), "rejected counts");
+
+        GuildContext ctx = guilds.getIfLoaded(guildId);
+        synchronized (ctx.stateStore.lock) {
+            assertEquals(SEED_NUMBER + 1, ctx.stateStore.state().lastNumber, "lastNumber moved by one");
+        }
+    }
+
+    @Test
+    void actionAfterFailedLoadStartsAFreshLoad() throws Exception {
+        long guildId = NEXT_GUILD.incrementAndGet();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch failFirst = new CountDownLatch(1);
+
+        GuildManager guilds = new GuildManager(1, id -> {
+            if (loads.incrementAndGet() == 1) {
+                try {
+                    failFirst.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("disk on fire");
+            }
+            return new GuildContext(id);
+        });
+
+        AtomicInteger ran = new AtomicInteger();
+        guilds.withContext(guildId, ctx -> ran.addAndGet(1));   // queued on the load that fails
+        failFirst.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (guilds.cachedCount() > 0 && System.nanoTime() < deadline) Thread.sleep(5);
+        assertEquals(0, guilds.cachedCount(), "failed slot removed");
+
+        CountDownLatch done = new CountDownLatch(1);
+        guilds.withContext(guildId, ctx -> {
+            ran.addAndGet(10);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS), "action after the failure ran");
+        assertEquals(10, ran.get(), "only the action after the failure ran");
+        assertEquals(2, loads.get());
+    }
+
+    private static int count(ConcurrentHashMap<CountingEngine.Outcome, AtomicInteger> outcomes, CountingEngine.Outcome o) {
+        AtomicInteger n = outcomes.get(o);
+        return n == null ? 0 : n.get();
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.gudu0.countingbot.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Snapshot format migration: the newer file wins, and the legacy file is retired once the primary
+ * has been written, so flipping the format back never resurrects stale data.
+ */
+class JsonStoreTest {
+
+    public static class Snap {
+        public long seq;
+        public String value;
+
+        public Snap() {
+        }
+
+        Snap(long seq, String value) {
+            this.seq = seq;
+            this.value = value;
+        }
+    }
+
+    private static final JsonCodec<Snap> CODEC = new JsonCodec<>(Snap.class);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void migratesLegacyOnlyFileAndRetiresIt() throws IOException {
+        Path legacy = write("snap.bin", new Snap(3, "legacy"));
+
+        JsonStore<Snap> store = open();
+        assertEquals("legacy", store.get().value);
+        assertTrue(store.isDirty(), "migrated value is written on the next flush");
+
+        store.flushNow();
+        assertTrue(Files.exists(dir.resolve("snap.json")));
+        assertFalse(Files.exists(legacy), "legacy file renamed after the first write");
+        assertTrue(Files.exists(dir.resolve("snap.bin.migrated")));
+    }
+
+    @Test
+    void newerLegacyFileWinsOverStalePrimary() throws IOException {
+        write("snap.json", new Snap(2, "stale"));
+        write("snap.bin", new Snap(7, "newer"));
+
+        JsonStore<Snap> store = open();
+        assertEquals("newer", store.get().value);
+
+        store.flushNow();
+        assertFalse(Files.exists(dir.resolve("snap.bin")));
+        assertEquals("newer", open().get().value);
+    }
+
+    @Test
+    void stalerLegacyFileIsIgnoredAndRetired() throws IOException {
+        write("snap.json", new Snap(9, "current"));
+        write("snap.bin", new Snap(4, "stale"));
+
+        JsonStore<Snap> store = open();
+        assertEquals("current", store.get().value);
+        assertFalse(store.isDirty(), "nothing to migrate");
+
+        store.markDirty();
+        store.flushNow();
+        assertFalse(Files.exists(dir.resolve("snap.bin")));
+        assertTrue(Files.exists(dir.resolve("snap.bin.migrated")));
+    }
+
+    private JsonStore<Snap> open() {
+        return new JsonStore<>(dir.resolve("snap.json"), CODEC, Snap::new, "snap.json",
+                dir.resolve("snap.bin"), CODEC, s -> s.seq);
+    }
+
+    private Path write(String name, Snap snap) throws IOException {
+        Path p = dir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(p)) {
+            CODEC.write(out, snap);
+        }
+        return p;
+    }
+}